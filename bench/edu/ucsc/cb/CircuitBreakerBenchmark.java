@@ -0,0 +1,131 @@
+package edu.ucsc.cb;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * measures the breaker's hot paths in each of its {@link CircuitBreakerStatus statuses}. Every
+ * benchmark shares one breaker among all benchmark threads, as a breaker guarding a shared
+ * dependency would be. Run it thru the {@code bench} target.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CircuitBreakerBenchmark {
+  private static final long FOREVER = TimeUnit.DAYS.toNanos(365);
+
+  private CircuitBreaker<RuntimeException> closed;
+  private CircuitBreaker<RuntimeException> closedFailing;
+  private CircuitBreaker<RuntimeException> opened;
+  private CircuitBreaker<RuntimeException> halfOpened;
+  private RateLimiter                      unlimited;
+  private RateLimiter                      exhausted;
+  private RuntimeException                 failure;
+  private Callable<String>                 call;
+  private Callable<String>                 decorated;
+
+  @Setup public void setUp() {
+    failure = new IllegalStateException("benchmark");
+    call    = new Callable<String>() {
+      @Override public String call() throws Exception {
+        return "One, two, three, four, etc.";
+      }
+    };
+
+    closed        = CircuitBreakers.newCircuitBreaker(Long.MAX_VALUE, FOREVER, false);
+    closedFailing = CircuitBreakers.newCircuitBreaker(Long.MAX_VALUE, FOREVER, false);
+
+    opened = CircuitBreakers.newCircuitBreaker(1, FOREVER, false);
+    opened.callStarted();
+    opened.callFailed(failure);
+
+    // probes release their permit on success and never gather enough successes to close it.
+    halfOpened = CircuitBreakers.newCircuitBreaker(1, 1L, Integer.MAX_VALUE, Integer.MAX_VALUE, false);
+    halfOpened.callStarted();
+    halfOpened.callFailed(failure);
+    halfOpened.callStarted();
+
+    // a rate no benchmark thread can reach, and one whose only permit is gone.
+    unlimited = CircuitBreakers.newRateLimiter(1e12, 1000);
+    exhausted = CircuitBreakers.newRateLimiter(1e-6, 1);
+    exhausted.tryAcquire();
+
+    decorated = Decorators.of(call)
+        .withCircuitBreaker(closed)
+        .withRetry(RetryPolicy.builder().build())
+        .withRateLimiter(unlimited)
+        .withBulkhead(CircuitBreakers.newBulkhead(Integer.MAX_VALUE))
+        .build();
+  }
+
+  @Benchmark public void closedCallSucceeded() {
+    closed.callStarted();
+    closed.callSucceeded();
+  }
+
+  /**
+   * a pipelined batch of 64 calls, admitted and recorded at once; compare with 64 times
+   * {@link #closedCallSucceeded()}.
+   */
+  @Benchmark public int closedBatchSucceeded() {
+    final int calls = closed.callsStarted(64);
+    closed.callsCompleted(calls, 0, null);
+    return calls;
+  }
+
+  @Benchmark public void closedCallFailed() {
+    closedFailing.callStarted();
+    closedFailing.callFailed(failure);
+  }
+
+  @Benchmark public Object closedSafeguard() {
+    return CircuitBreakers.safeguard(call, "Error has occurred!", closed);
+  }
+
+  @Benchmark public Object closedDecorated() throws Exception {
+    return decorated.call();
+  }
+
+  @Benchmark public Object openedCallRejected() {
+    try {
+      opened.callStarted();
+      return null;
+    } catch (CallNotPermittedException rejected) {
+      return rejected;
+    }
+  }
+
+  @Benchmark public Object halfOpenedProbe() {
+    try {
+      halfOpened.callStarted();
+    } catch (CallNotPermittedException rejected) {
+      return rejected;
+    }
+
+    halfOpened.callSucceeded();
+    return null;
+  }
+
+  @Benchmark public boolean rateLimiterAcquired() {
+    return unlimited.tryAcquire();
+  }
+
+  @Benchmark public boolean rateLimiterRejected() {
+    return exhausted.tryAcquire();
+  }
+}
@@ -0,0 +1,84 @@
+package edu.ucsc.cb;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * measures how long it takes to get thousands of concurrent, blocking calls thru one shared
+ * breaker, with a thread per call: either platform or virtual threads. Each operation starts
+ * every call at once and waits for all of them. Virtual threads need Java 21 or later; on
+ * older runtimes, their runs fail at setup. Run it thru the {@code bench.concurrency} target.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrencyBenchmark {
+  private static final long FOREVER = TimeUnit.DAYS.toNanos(365);
+
+  @Param({"10000", "50000"})
+  private int calls;
+
+  @Param({"platform", "virtual"})
+  private String threads;
+
+  private ExecutorService                   executor;
+  private CircuitBreaker<RuntimeException>  breaker;
+  private Callable<String>                  call;
+
+  @Setup public void setUp() {
+    executor = "virtual".equals(threads)
+        ? CallExecutor.newVirtualThreadPerTaskExecutor()
+        : CallExecutor.newPlatformThreadPerTaskExecutor();
+    if(executor == null) throw new IllegalStateException("virtual threads need Java 21 or later");
+
+    breaker = CircuitBreakers.newCircuitBreaker(Long.MAX_VALUE, FOREVER, false);
+    call    = new Callable<String>() {
+      @Override public String call() throws Exception {
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1)); // e.g., a remote call.
+        return "One, two, three, four, etc.";
+      }
+    };
+  }
+
+  @TearDown public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Benchmark public long concurrentSafeguards() throws InterruptedException {
+    final CountDownLatch done = new CountDownLatch(calls);
+    for(int idx = 0; idx < calls; idx++){
+      executor.execute(new Runnable() {
+        @Override public void run() {
+          try {
+            CircuitBreakers.safeguard(call, "Error has occurred!", breaker);
+          } finally {
+            done.countDown();
+          }
+        }
+      });
+    }
+
+    done.await();
+    return breaker.getStatistics().getSuccessfulCalls();
+  }
+}
@@ -0,0 +1,732 @@
+package edu.ucsc.cb;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * skeletal circuit breaker. it implements the {@link CircuitBreakerStatus status} transitions
+ * (CLOSED -> OPENED -> HALF_OPENED -> CLOSED or OPENED) and leaves the decision of when a
+ * CLOSED breaker must open to its subclasses.
+ *
+ * <p>
+ * The breaker's status, the time at which it may retry, the error that opened it and its
+ * half-open probe counters are kept together in one immutable {@link State snapshot}. Every
+ * transition is a single compare-and-set of that snapshot; hence, no thread may ever see,
+ * for instance, an OPENED breaker with a stale retry time.
+ * </p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public abstract class AbstractCircuitBreaker<E extends Exception> implements CircuitBreaker<E> {
+  private static final String REJECTION_MESSAGE   = "Circuit breaker is OPENED; call not permitted.";
+  private static final long   UNKNOWN_PERMIT      = -2L; // outcome recorded without the call's permit.
+
+  private final BreakerStatistics statistics = new BreakerStatistics(); // handed out by getStatistics().
+
+  private final PaddedAtomicReference<State<E>> state; // cb's current state
+
+  private final Supplier<CircuitBreakerConfig> settings;
+  private volatile SlidingWindow               slowCalls; // timed calls; 'failed' means slow. NULL until slow calls are tracked.
+
+  private final CallNotPermittedException rejection; // shared by every blocked call, unless in debug mode.
+  private final CircuitBreakerEventBus    events;
+
+  protected AbstractCircuitBreaker(long retryThreshold, boolean debug){
+    this(retryThreshold, 1, 1, debug);
+  }
+
+  /**
+   * @param retryThreshold how long the circuit breaker will wait until letting the call go thru.
+   * @param halfOpenPermits how many trial calls may be in flight at once while HALF_OPENED.
+   * @param successfulProbeThreshold how many trial calls must succeed before the breaker closes.
+   * @param debug {@code true} if the breaker will display its activity messages. {@code false} otherwise.
+   */
+  protected AbstractCircuitBreaker(long retryThreshold, int halfOpenPermits,
+      int successfulProbeThreshold, boolean debug){
+    this(CircuitBreakerConfig.builder()
+        .retryThreshold(retryThreshold)
+        .halfOpenPermits(halfOpenPermits)
+        .successfulProbeThreshold(successfulProbeThreshold)
+        .debug(debug)
+        .build());
+  }
+
+  /**
+   * @param settings the breaker's settings; either a {@link CircuitBreakerConfig} or a source of
+   *    settings that may change over time, such as the {@link CircuitBreakerEnvironment}. They
+   *    are read on transitions and failures, never on a CLOSED breaker's call path.
+   */
+  protected AbstractCircuitBreaker(Supplier<CircuitBreakerConfig> settings){
+    this(settings, CircuitBreakerEventBus.getDefault());
+  }
+
+  /**
+   * @param settings the breaker's settings.
+   * @param events where the breaker publishes its status changes and call outcomes.
+   */
+  protected AbstractCircuitBreaker(Supplier<CircuitBreakerConfig> settings, CircuitBreakerEventBus events){
+    this.settings   = settings;
+    this.events     = events;
+    this.rejection  = CallNotPermittedException.stackless(REJECTION_MESSAGE);
+    this.state      = new PaddedAtomicReference<State<E>>(State.<E>initial(nanoTime()));
+  }
+
+  @Override public void callStarted() throws E {
+    callPermitted();
+  }
+
+  /**
+   * acknowledges a call. A trial call's permit is the epoch of the half-open period that let it
+   * thru, so its outcome is never taken for (nor mistaken with) another call's.
+   *
+   * <p>
+   * A half-open period whose permits have all been taken for longer than the retry threshold
+   * is given up on: its trial calls are taken for lost (e.g., their thread died of an
+   * {@link Error}), and a new period starts with this call as its first trial call. The lost
+   * permits belong to the old period, so they go stale.
+   * </p>
+   */
+  @Override public long callPermitted() throws E {
+    State<E> current = state.get();
+    if (current.status == CircuitBreakerStatus.CLOSED) {
+      return NO_PROBE;
+    }
+
+    while (current.status == CircuitBreakerStatus.OPENED) {
+      final long currentTime = nanoTime();
+      if (currentTime < current.nextTryTime){
+        throw rejectCall(current);
+      }
+
+      // this call is the first trial call.
+      final int      permits  = getConfig().getHalfOpenPermits();
+      final State<E> next     = current.halfOpened(permits, permits - 1, currentTime);
+      if(state.compareAndSet(current, next)){
+        notifyStatusChange(current, next);
+        return next.epoch;
+      }
+
+      current = state.get();
+    }
+
+    while (current.status == CircuitBreakerStatus.HALF_OPENED) {
+      if (current.tryAcquireProbePermit()) {
+        return current.epoch;
+      }
+
+      final State<E> next = renewHalfOpen(current, 1);
+      if (next != null) {
+        return next.epoch;
+      }
+
+      current = state.get();
+    }
+
+    if (current.status == CircuitBreakerStatus.CLOSED) {
+      return NO_PROBE;
+    }
+
+    throw rejectCall(current);
+  }
+
+  /**
+   * starts a new half-open period, if the current one has been out of permits for longer than
+   * the retry threshold.
+   *
+   * @param taken how many permits of the new period the caller takes.
+   * @return the new period, or NULL if another thread changed the state first.
+   * @throws E the breaker's rejection, if the current period is not overdue.
+   */
+  private State<E> renewHalfOpen(State<E> current, int taken) throws E {
+    final long currentTime = nanoTime();
+    if (currentTime - current.since <= getRetryThreshold()) {
+      throw rejectCall(current);
+    }
+
+    final int      permits  = getConfig().getHalfOpenPermits();
+    final State<E> next     = current.halfOpened(permits, permits - Math.min(taken, permits), currentTime);
+    if (!state.compareAndSet(current, next)) {
+      return null;
+    }
+
+    notifyStatusChange(current, next);
+    return next;
+  }
+
+  /**
+   * acknowledges a batch of calls with (at most) one compare-and-set: a CLOSED breaker lets
+   * every call go thru, a HALF_OPENED one as many as it has probe permits left.
+   */
+  @Override public int callsStarted(int calls) throws E {
+    if(calls < 1) throw new IllegalArgumentException("calls must be at least 1");
+
+    State<E> current = state.get();
+    if (current.status == CircuitBreakerStatus.CLOSED) {
+      return calls;
+    }
+
+    while (current.status == CircuitBreakerStatus.OPENED) {
+      final long currentTime = nanoTime();
+      if (currentTime < current.nextTryTime){
+        throw rejectCall(current);
+      }
+
+      // these calls are the first trial calls.
+      final int      permits  = getConfig().getHalfOpenPermits();
+      final int      taken    = Math.min(calls, permits);
+      final State<E> next     = current.halfOpened(permits, permits - taken, currentTime);
+      if(state.compareAndSet(current, next)){
+        notifyStatusChange(current, next);
+        return taken;
+      }
+
+      current = state.get();
+    }
+
+    while (current.status == CircuitBreakerStatus.HALF_OPENED) {
+      final int taken = current.tryAcquireProbePermits(calls);
+      if(taken > 0){
+        return taken;
+      }
+
+      final State<E> next = renewHalfOpen(current, calls);
+      if (next != null) {
+        return Math.min(calls, next.probeLimit);
+      }
+
+      current = state.get();
+    }
+
+    if (current.status == CircuitBreakerStatus.CLOSED) {
+      return calls;
+    }
+
+    throw rejectCall(current);
+  }
+
+  @Override public void callSucceeded() {
+    succeeded(UNKNOWN_PERMIT, CircuitBreakerEvent.NO_ELAPSED_TIME);
+  }
+
+  @Override public void callFailed(E error) {
+    failed(UNKNOWN_PERMIT, error, CircuitBreakerEvent.NO_ELAPSED_TIME);
+  }
+
+  @Override public void callSucceeded(long elapsedTime) {
+    succeeded(UNKNOWN_PERMIT, elapsedTime);
+  }
+
+  @Override public void callFailed(E error, long elapsedTime) {
+    failed(UNKNOWN_PERMIT, error, elapsedTime);
+  }
+
+  @Override public void callSucceeded(long permit, long elapsedTime) {
+    succeeded(permit, elapsedTime);
+  }
+
+  @Override public void callFailed(long permit, E error, long elapsedTime) {
+    failed(permit, error, elapsedTime);
+  }
+
+  @Override public void callCancelled() {
+    ignored(UNKNOWN_PERMIT);
+  }
+
+  @Override public void callCancelled(long permit) {
+    ignored(permit);
+  }
+
+  /**
+   * records a batch of outcomes, evaluating whether the breaker must change its status once for
+   * the whole batch. Listeners get (at most) one event per kind of outcome, not one per call.
+   */
+  @Override public void callsCompleted(int succeeded, int failed, E error) {
+    if(succeeded < 0 || failed < 0) throw new IllegalArgumentException("calls cannot be negative");
+    if(failed == 0){
+      completed(succeeded, 0, error);
+      return;
+    }
+
+    // the batch's failures share one error; hence, one classification.
+    switch (getConfig().getExceptionClassifier().classify(error)){
+      case SUCCESS:
+        completed(succeeded + failed, 0, error);
+        break;
+      case IGNORED:
+        callsIgnored(failed);
+        completed(succeeded, 0, error);
+        break;
+      default:
+        completed(succeeded, failed, error);
+    }
+  }
+
+  private void completed(int succeeded, int failed, E error) {
+    if(succeeded + failed == 0) return;
+
+    statistics.completed(succeeded, failed);
+    final State<E> current = state.get();
+    if(succeeded > 0){
+      events.publish(CircuitBreakerEvent.Type.CALL_SUCCEEDED, this, current.status, current.status,
+          CircuitBreakerEvent.NO_ELAPSED_TIME, null);
+    }
+
+    if(failed > 0){
+      events.publish(CircuitBreakerEvent.Type.CALL_FAILED, this, current.status, current.status,
+          CircuitBreakerEvent.NO_ELAPSED_TIME, error);
+    }
+
+    if(CircuitBreakerStatus.CLOSED == current.status){
+      if(onCallsCompleted(succeeded, failed, error)){
+        trip(current, error);
+      }
+    } else if(CircuitBreakerStatus.HALF_OPENED == current.status){
+      // the batch's permits are unknown; its outcomes are taken as trial calls' only as long as
+      // trial calls are in flight.
+      if(failed > 0 && current.isProbe(UNKNOWN_PERMIT)){
+        trip(current, error);
+        return;
+      }
+
+      final int probes = current.releaseProbePermits(succeeded);
+      if(probes > 0 && current.probeSuccesses.addAndGet(probes) >= getConfig().getSuccessfulProbeThreshold()){
+        reset(current);
+      }
+    }
+  }
+
+  private void succeeded(long permit, long elapsedTime) {
+    statistics.succeeded(elapsedTime);
+    final State<E> current = state.get();
+    events.publish(CircuitBreakerEvent.Type.CALL_SUCCEEDED, this, current.status, current.status,
+        elapsedTime, null);
+    if(elapsedTime != CircuitBreakerEvent.NO_ELAPSED_TIME && recordDuration(permit, elapsedTime, null)) return;
+
+    if(CircuitBreakerStatus.CLOSED == current.status){
+      onCallSucceeded();
+    } else if(CircuitBreakerStatus.HALF_OPENED == current.status && current.releaseProbePermit(permit)){
+      // the trial call is over, and another one may go thru, unless the breaker closes.
+      if(current.probeSuccesses.incrementAndGet() >= getConfig().getSuccessfulProbeThreshold()){
+        reset(current);
+      }
+    }
+    // a call that started before the breaker OPENED proves nothing about the recovery.
+  }
+
+  private void failed(long permit, E error, long elapsedTime) {
+    switch (getConfig().getExceptionClassifier().classify(error)){
+      case SUCCESS: succeeded(permit, elapsedTime); return;
+      case IGNORED: ignored(permit);                return;
+      default:      break;
+    }
+
+    statistics.failed(elapsedTime);
+    final State<E> current = state.get();
+    events.publish(CircuitBreakerEvent.Type.CALL_FAILED, this, current.status, current.status,
+        elapsedTime, error);
+    if(elapsedTime != CircuitBreakerEvent.NO_ELAPSED_TIME && recordDuration(permit, elapsedTime, error)) return;
+
+    if(CircuitBreakerStatus.HALF_OPENED == current.status){
+      if(current.isProbe(permit)) trip(current, error);
+    } else if(CircuitBreakerStatus.CLOSED == current.status){
+      if (onCallFailed(error)) {
+        trip(current, error);
+      }
+    }
+  }
+
+  /**
+   * records a batch of calls whose failures do not count; trial calls among them give their
+   * permits back.
+   */
+  private void callsIgnored(int calls) {
+    statistics.ignored(calls);
+    final State<E> current = state.get();
+    if(CircuitBreakerStatus.HALF_OPENED == current.status){
+      current.releaseProbePermits(calls);
+    }
+  }
+
+  /**
+   * records a call whose failure does not count; a trial call gives its permit back.
+   */
+  private void ignored(long permit) {
+    statistics.ignored();
+    final State<E> current = state.get();
+    if(CircuitBreakerStatus.HALF_OPENED == current.status){
+      current.releaseProbePermit(permit);
+    }
+  }
+
+  /**
+   * records how long a call took, if slow calls are tracked. A slow trial call reopens a
+   * HALF_OPENED breaker, and a CLOSED breaker opens once its slow call rate reaches the
+   * threshold.
+   *
+   * @return {@code true} if the call opened the breaker for being slow.
+   */
+  private boolean recordDuration(long permit, long elapsedTime, E error) {
+    final CircuitBreakerConfig config = getConfig();
+    if(!config.tracksSlowCalls()) return false;
+
+    final boolean  slow    = elapsedTime >= config.getSlowCallThreshold();
+    final State<E> current = state.get();
+    if(slow){
+      statistics.slow();
+      events.publish(CircuitBreakerEvent.Type.SLOW_CALL, this, current.status, current.status,
+          elapsedTime, error);
+    }
+
+    if(CircuitBreakerStatus.CLOSED == current.status){
+      final SlidingWindow window = slowCallWindow(config);
+      window.record(slow);
+      if(slow && slowCallRateExceeded(window, config)){
+        trip(current, error);
+        return true;
+      }
+    } else if(CircuitBreakerStatus.HALF_OPENED == current.status && slow && current.isProbe(permit)){
+      trip(current, error);
+      return true;
+    }
+
+    return false;
+  }
+
+  /**
+   * @return the window of slow calls, (re)allocated if it does not match the settings; i.e.,
+   *    slow calls were not tracked until now or the window was resized.
+   */
+  private SlidingWindow slowCallWindow(CircuitBreakerConfig config) {
+    SlidingWindow window = slowCalls;
+    if(window == null || window.size() != config.getSlowCallWindowSize()){
+      window    = new CountBasedSlidingWindow(config.getSlowCallWindowSize());
+      slowCalls = window;
+    }
+
+    return window;
+  }
+
+  private static boolean slowCallRateExceeded(SlidingWindow window, CircuitBreakerConfig config) {
+    final long snapshot = window.snapshot();
+    final int  calls    = SlidingWindow.calls(snapshot);
+    return calls >= config.getSlowCallMinimumCalls()
+        && SlidingWindow.failures(snapshot) * 100.0f >= config.getSlowCallRateThreshold() * calls;
+  }
+
+  /**
+   * opens the breaker, unless another thread has already moved it away from {@code current}.
+   */
+  private void trip(State<E> current, E error) {
+    final long     now        = nanoTime();
+    final long     threshold  = getRetryThreshold();
+    // saturated, so a threshold of Long.MAX_VALUE means never.
+    final long     retryTime  = now > Long.MAX_VALUE - threshold ? Long.MAX_VALUE : now + threshold;
+    final State<E> next       = current.opened(now, retryTime, error);
+    if(state.compareAndSet(current, next)){
+      notifyStatusChange(current, next);
+    }
+  }
+
+  /**
+   * records a successful call made while the breaker was {@link CircuitBreakerStatus#CLOSED}.
+   */
+  protected abstract void onCallSucceeded();
+
+  /**
+   * records a failed call made while the breaker was {@link CircuitBreakerStatus#CLOSED}.
+   *
+   * @param error
+   *      error that made the call fail.
+   * @return {@code true} if the breaker must be opened, {@code false} otherwise.
+   */
+  protected abstract boolean onCallFailed(E error);
+
+  /**
+   * records a batch of calls completed while the breaker was {@link CircuitBreakerStatus#CLOSED}.
+   * By default, its outcomes are recorded one by one; subclasses record them at once.
+   *
+   * @param succeeded the number of calls that succeeded.
+   * @param failed the number of calls that failed; they are the most recent outcomes.
+   * @param error error that made the last failed call fail.
+   * @return {@code true} if the breaker must be opened, {@code false} otherwise.
+   */
+  protected boolean onCallsCompleted(int succeeded, int failed, E error) {
+    for(int idx = 0; idx < succeeded; idx++){
+      onCallSucceeded();
+    }
+
+    boolean open = false;
+    for(int idx = 0; idx < failed; idx++){
+      open |= onCallFailed(error);
+    }
+
+    return open;
+  }
+
+  /**
+   * clears whatever was recorded by {@link #onCallSucceeded()} and {@link #onCallFailed(Exception)},
+   * as the breaker is about to be {@link CircuitBreakerStatus#CLOSED closed}.
+   */
+  protected abstract void onReset();
+
+  @Override public long getRetryThreshold() {
+    return getConfig().getRetryThreshold();
+  }
+
+  /**
+   * @return how many trial calls may be in flight at once while the breaker is HALF_OPENED.
+   */
+  public int getHalfOpenPermits() {
+    return getConfig().getHalfOpenPermits();
+  }
+
+  /**
+   * @return how many trial calls must succeed before a HALF_OPENED breaker closes.
+   */
+  public int getSuccessfulProbeThreshold() {
+    return getConfig().getSuccessfulProbeThreshold();
+  }
+
+  /**
+   * @return the breaker's current settings.
+   */
+  public CircuitBreakerConfig getConfig() {
+    return settings.get();
+  }
+
+  /**
+   * @return the current time, as given by the breaker's {@link Clock clock}.
+   */
+  long nanoTime() {
+    return getConfig().getClock().nanoTime();
+  }
+
+  /**
+   * @return the breaker's statistics. The same object is returned every time, and its values
+   *    are read as they are asked for.
+   */
+  @Override public CircuitBreakerStatistics getStatistics() {
+    return statistics;
+  }
+
+  /**
+   * @return the number of transitions this breaker has gone thru.
+   */
+  long transitions() {
+    return state.get().epoch;
+  }
+
+  /**
+   * @return the exception thrown at a blocked call. In debug mode, every blocked call gets its
+   *    own exception (with stack trace and the error that opened the breaker as its cause);
+   *    otherwise, the breaker's preallocated, stackless exception is reused.
+   */
+  private CallNotPermittedException rejectCall(State<E> current) {
+    statistics.rejected();
+    events.publish(CircuitBreakerEvent.Type.CALL_REJECTED, this, current.status, current.status,
+        CircuitBreakerEvent.NO_ELAPSED_TIME, null);
+    if(!getConfig().inDebugMode()) return rejection;
+    return new CallNotPermittedException(REJECTION_MESSAGE, current.lastException);
+  }
+
+  /**
+   * publishes a status change to the breaker's {@link CircuitBreakerEventBus event bus}. In debug
+   * mode, the change is also displayed, by the thread that made it.
+   * @param oldState
+   *          old state
+   * @param newState
+   *          new state
+   */
+  void notifyStatusChange(State<E> oldState, State<E> newState) {
+    final CircuitBreakerStatus oldStatus = oldState.status;
+    final CircuitBreakerStatus newStatus = newState.status;
+    statistics.transitioned(oldState, newState);
+    if((oldStatus == newStatus) && (newStatus == CircuitBreakerStatus.CLOSED)) return;
+    if(getConfig().inDebugMode()) display(oldStatus, newStatus);
+
+    events.publish(CircuitBreakerEvent.Type.STATUS_CHANGED, this, oldStatus, newStatus,
+        CircuitBreakerEvent.NO_ELAPSED_TIME, newState.lastException);
+  }
+
+  private void display(CircuitBreakerStatus oldStatus, CircuitBreakerStatus newStatus) {
+    System.out.println("Circuit breaker's status has changed from " + oldStatus + " to " + newStatus
+        + ((CircuitBreakerStatus.CLOSED != newStatus)
+        ? ". Blocked calls so far: " + statistics.getRejectedCalls()
+        : "") + ". Average recovery time: "
+        + statistics.getAvgRecoveryTime() + " nanoseconds."
+    );
+  }
+
+  /**
+   * @return the bus this breaker publishes its events to.
+   */
+  public CircuitBreakerEventBus getEventBus() {
+    return events;
+  }
+
+  /**
+   *  reset the circuit breaker.
+   */
+  private void reset(State<E> current) {
+    // cleared ahead of the transition, so that no call recorded right after the breaker
+    // closes is lost. If the transition fails, the breaker is no longer CLOSED and these
+    // records do not matter until it closes again.
+    onReset();
+    final SlidingWindow window = slowCalls;
+    if(window != null) window.reset();
+
+    final State<E> next = current.closed(nanoTime());
+    if(state.compareAndSet(current, next)){
+      notifyStatusChange(current, next);
+    }
+  }
+
+  @Override public CircuitBreakerStatus status() {
+    return state.get().status;
+  }
+
+  /**
+   * an immutable snapshot of the breaker's state. HALF_OPENED snapshots carry their own probe
+   * counters, so a permit is never taken from (nor returned to) an earlier half-open period;
+   * trial calls hold their period's epoch as permit.
+   */
+  static final class State<E extends Exception> {
+    final CircuitBreakerStatus  status;
+    final long                  epoch;          // # of transitions that led to this state.
+    final long                  nextTryTime;    // time at which an OPENED breaker may retry letting an operation to be called.
+    final long                  since;          // time at which the cb moved to this state.
+    final long                  openedAt;       // time at which the cb last OPENED; kept until it closes.
+    final E                     lastException;  // registered exception if the cb's status == Open. Otherwise, it should be NULL.
+    final int                   probeLimit;     // trial calls that may be in flight at once while HALF_OPENED.
+    final AtomicInteger         probePermits;   // trial calls that may still go thru while HALF_OPENED.
+    final AtomicInteger         probeSuccesses; // trial calls that succeeded since the cb HALF_OPENED.
+
+    private State(CircuitBreakerStatus status, long epoch, long nextTryTime, long since,
+        long openedAt, E lastException, int probeLimit, int probePermits){
+      this.status         = status;
+      this.epoch          = epoch;
+      this.nextTryTime    = nextTryTime;
+      this.since          = since;
+      this.openedAt       = openedAt;
+      this.lastException  = lastException;
+      this.probeLimit     = probeLimit;
+      this.probePermits   = status == CircuitBreakerStatus.HALF_OPENED ? new AtomicInteger(probePermits) : null;
+      this.probeSuccesses = status == CircuitBreakerStatus.HALF_OPENED ? new AtomicInteger() : null;
+    }
+
+    static <E extends Exception> State<E> initial(long now){
+      return new State<E>(CircuitBreakerStatus.CLOSED, 0L, 0L, now, 0L, null, 0, 0);
+    }
+
+    State<E> opened(long now, long nextTryTime, E error){
+      // a failed trial call reopens the breaker, but its recovery started when it first opened.
+      return new State<E>(CircuitBreakerStatus.OPENED, epoch + 1, nextTryTime, now,
+          status == CircuitBreakerStatus.CLOSED ? now : openedAt,
+          lastException == null ? error : lastException, 0, 0);
+    }
+
+    /**
+     * @param probeLimit how many trial calls may be in flight at once.
+     * @param probePermits how many more trial calls may go thru; the others are in flight.
+     */
+    State<E> halfOpened(int probeLimit, int probePermits, long now){
+      return new State<E>(CircuitBreakerStatus.HALF_OPENED, epoch + 1, nextTryTime, now, openedAt,
+          lastException, probeLimit, probePermits);
+    }
+
+    State<E> closed(long now){
+      return new State<E>(CircuitBreakerStatus.CLOSED, epoch + 1, 0L, now, openedAt, null, 0, 0);
+    }
+
+    boolean tryAcquireProbePermit(){
+      return tryAcquireProbePermits(1) == 1;
+    }
+
+    /**
+     * @return how many permits were taken; at most {@code max}, zero if there were none left.
+     */
+    int tryAcquireProbePermits(int max){
+      while (true){
+        final int permits = probePermits.get();
+        if(permits <= 0) return 0;
+
+        final int taken = Math.min(max, permits);
+        if(probePermits.compareAndSet(permits, permits - taken)) return taken;
+      }
+    }
+
+    /**
+     * @return {@code true} if the call holding the permit is one of this period's trial calls;
+     *    a call whose permit is unknown is, as long as any trial call is in flight.
+     */
+    boolean isProbe(long permit){
+      return permit == epoch || (permit == UNKNOWN_PERMIT && probePermits.get() < probeLimit);
+    }
+
+    /**
+     * gives a trial call's permit back.
+     *
+     * @return {@code false} if the call holding the permit is not one of this period's trial
+     *    calls (see {@link #isProbe(long)}); nothing is given back then.
+     */
+    boolean releaseProbePermit(long permit){
+      if(permit == epoch){
+        probePermits.incrementAndGet();
+        return true;
+      }
+
+      return permit == UNKNOWN_PERMIT && releaseProbePermits(1) == 1;
+    }
+
+    /**
+     * gives back the permits of up to {@code max} trial calls whose permits are unknown.
+     *
+     * @return how many permits were given back; never more than the trial calls in flight.
+     */
+    int releaseProbePermits(int max){
+      while (true){
+        final int permits = probePermits.get();
+        if(permits >= probeLimit || max <= 0) return 0;
+
+        final int released = Math.min(max, probeLimit - permits);
+        if(probePermits.compareAndSet(permits, permits + released)) return released;
+      }
+    }
+  }
+
+  /**
+   * the breaker's statistics: call counters and latencies, plus the time spent in each status
+   * and the number of transitions into it, accounted for by whichever thread made the transition.
+   */
+  private final class BreakerStatistics extends CallStatistics {
+    private final AtomicLongArray timeInStatus  = new AtomicLongArray(CircuitBreakerStatus.values().length);
+    private final AtomicLongArray transitions   = new AtomicLongArray(CircuitBreakerStatus.values().length);
+    private final StripedCounter  recoveries    = new StripedCounter();
+    private final StripedCounter  recoveryTime  = new StripedCounter();
+
+    void transitioned(State<E> oldState, State<E> newState){
+      timeInStatus.addAndGet(oldState.status.ordinal(), newState.since - oldState.since);
+      transitions.incrementAndGet(newState.status.ordinal());
+      if(newState.status == CircuitBreakerStatus.CLOSED){
+        recoveryTime.add(newState.since - newState.openedAt);
+        recoveries.increment();
+      }
+    }
+
+    @Override public long getAvgRecoveryTime() {
+      final long count = recoveries.get();
+      return count == 0 ? -1L : recoveryTime.get() / count;
+    }
+
+    @Override public long getTimeInStatus(CircuitBreakerStatus status) {
+      final State<E> current = state.get();
+      final long     spent   = timeInStatus.get(status.ordinal());
+      return current.status == status ? spent + (nanoTime() - current.since) : spent;
+    }
+
+    @Override public long getTransitions(CircuitBreakerStatus status) {
+      return transitions.get(status.ordinal());
+    }
+  }
+}
@@ -0,0 +1,152 @@
+package edu.ucsc.cb;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * adaptive concurrency limiter. it lets calls go thru while fewer than its current limit are
+ * in flight, and a {@link LimitAlgorithm limit algorithm} moves that limit after every call based
+ * on the call's round-trip time and outcome. It honors the {@link CircuitBreaker} contract, so it
+ * guards calls the same way a breaker does (e.g., thru {@link CircuitBreakers#circuitBreak}):
+ * timed outcomes (see {@link #callSucceeded(long)}) feed the algorithm with latency samples.
+ *
+ * <p>
+ * The limit is a {@code double} kept in an {@link AtomicLong} and updated by compare-and-set,
+ * so sampling never locks nor allocates.
+ * </p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class AdaptiveLimiter<E extends Exception> implements CircuitBreaker<E> {
+  private static final String REJECTION_MESSAGE = "Concurrency limit reached; call not permitted.";
+
+  private final AtomicInteger   inFlight      = new AtomicInteger();  // # of calls in flight.
+  private final AtomicLong      limit;                                // current limit, as double bits.
+  private final CallStatistics  statistics    = new LimiterStatistics();
+
+  private final LimitAlgorithm  algorithm;
+
+  private final CallNotPermittedException rejection = CallNotPermittedException.stackless(REJECTION_MESSAGE);
+
+  public AdaptiveLimiter(LimitAlgorithm algorithm){
+    this.algorithm  = algorithm;
+    this.limit      = new AtomicLong(Double.doubleToRawLongBits(algorithm.getInitialLimit()));
+  }
+
+  @Override public void callStarted() throws E {
+    while (true){
+      final int current = inFlight.get();
+      if(current >= getLimit()){
+        statistics.rejected();
+        throw rejection;
+      }
+
+      if(inFlight.compareAndSet(current, current + 1)) return;
+    }
+  }
+
+  @Override public void callSucceeded() {
+    callSucceeded(-1L);
+  }
+
+  @Override public void callSucceeded(long elapsedTime) {
+    statistics.succeeded(elapsedTime);
+    sample(elapsedTime, false);
+  }
+
+  @Override public void callFailed(E error) {
+    callFailed(error, -1L);
+  }
+
+  @Override public void callFailed(E error, long elapsedTime) {
+    statistics.failed(elapsedTime);
+    sample(elapsedTime, true);
+  }
+
+  /**
+   * releases the call's slot; a cancelled call tells nothing about the limit.
+   */
+  @Override public void callCancelled() {
+    statistics.ignored();
+    inFlight.decrementAndGet();
+  }
+
+  private void sample(long rtt, boolean dropped) {
+    final int current = inFlight.getAndDecrement();
+    algorithm.sample(rtt, dropped); // once; update may be retried.
+    while (true){
+      final long   bits = limit.get();
+      final double old  = Double.longBitsToDouble(bits);
+      final double next = algorithm.update(old, rtt, current, dropped);
+      if(next == old || limit.compareAndSet(bits, Double.doubleToRawLongBits(next))) return;
+    }
+  }
+
+  /**
+   * @return the current concurrency limit.
+   */
+  public int getLimit() {
+    return (int) Double.longBitsToDouble(limit.get());
+  }
+
+  /**
+   * @return the number of calls currently in flight.
+   */
+  public int getConcurrentCalls() {
+    return inFlight.get();
+  }
+
+  /**
+   * @return the number of calls turned down so far.
+   */
+  public long getRejectedCalls() {
+    return statistics.getRejectedCalls();
+  }
+
+  /**
+   * @return zero; a limiter lets calls go thru as soon as others complete.
+   */
+  @Override public long getRetryThreshold() {
+    return 0L;
+  }
+
+  /**
+   * @return {@link Long#MAX_VALUE}; failures shrink the limit but never stop calls altogether.
+   */
+  @Override public long getFailedCallThreshold() {
+    return Long.MAX_VALUE;
+  }
+
+  @Override public CircuitBreakerStatistics getStatistics() {
+    return statistics;
+  }
+
+  /**
+   * @return {@link CircuitBreakerStatus#OPENED} while the limit is reached,
+   *    {@link CircuitBreakerStatus#CLOSED} otherwise.
+   */
+  @Override public CircuitBreakerStatus status() {
+    return inFlight.get() >= getLimit() ? CircuitBreakerStatus.OPENED : CircuitBreakerStatus.CLOSED;
+  }
+
+  /**
+   * a limiter has no status of its own; its statistics are those of the calls it let thru.
+   */
+  private final class LimiterStatistics extends CallStatistics {
+    @Override public long getAvgRecoveryTime() {
+      return -1L;
+    }
+
+    @Override public long getInFlightCalls() {
+      return inFlight.get();
+    }
+
+    @Override public long getTimeInStatus(CircuitBreakerStatus status) {
+      return 0L;
+    }
+
+    @Override public long getTransitions(CircuitBreakerStatus status) {
+      return 0L;
+    }
+  }
+}
@@ -0,0 +1,56 @@
+package edu.ucsc.cb;
+
+/**
+ * Additive-increase/multiplicative-decrease {@link LimitAlgorithm limit}. The limit grows by one
+ * for every successful call made while the limiter is at least half busy, and shrinks by the
+ * backoff ratio for every failed call or call slower than the timeout.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+class AimdLimit implements LimitAlgorithm {
+  private final int     initialLimit;
+  private final int     minLimit;
+  private final int     maxLimit;
+  private final double  backoffRatio;
+  private final long    timeout;
+
+  /**
+   * @param initialLimit the limit the limiter starts with.
+   * @param minLimit the lowest the limit may go.
+   * @param maxLimit the highest the limit may go.
+   * @param backoffRatio the factor (0, 1) applied to the limit on every dropped call.
+   * @param timeout the round-trip time (in nanoseconds) from which a call counts as dropped.
+   */
+  AimdLimit(int initialLimit, int minLimit, int maxLimit, double backoffRatio, long timeout){
+    if(minLimit <= 0 || minLimit > initialLimit || initialLimit > maxLimit){
+      throw new IllegalArgumentException("limits must satisfy 0 < min <= initial <= max");
+    }
+
+    if(backoffRatio <= 0 || backoffRatio >= 1){
+      throw new IllegalArgumentException("backoff ratio must be in (0, 1)");
+    }
+
+    this.initialLimit = initialLimit;
+    this.minLimit     = minLimit;
+    this.maxLimit     = maxLimit;
+    this.backoffRatio = backoffRatio;
+    this.timeout      = timeout;
+  }
+
+  @Override public double getInitialLimit() {
+    return initialLimit;
+  }
+
+  @Override public double update(double limit, long rtt, int inFlight, boolean dropped) {
+    if(dropped || rtt > timeout){
+      return Math.max(minLimit, Math.floor(limit * backoffRatio));
+    }
+
+    // an idle limiter learns nothing about how much more load the dependency takes.
+    if(inFlight * 2 >= limit){
+      return Math.min(maxLimit, limit + 1);
+    }
+
+    return limit;
+  }
+}
@@ -0,0 +1,159 @@
+package edu.ucsc.cb;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * caps how many calls to a dependency may be in flight at once. Where a
+ * {@link CircuitBreaker breaker} stops calls once they have failed, a bulkhead stops a slow
+ * dependency from tying up every caller thread in the meantime.
+ *
+ * <p>
+ * Acquiring a permit is a lock-free compare-and-set. Callers that would rather wait for a
+ * permit than be rejected right away (see {@link #tryAcquire(long, TimeUnit)}) wait on a
+ * lock, which releasing threads only touch if somebody is actually waiting.
+ * </p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class Bulkhead {
+  private static final String REJECTION_MESSAGE = "Bulkhead is full; call not permitted.";
+
+  private final AtomicInteger   concurrentCalls = new AtomicInteger();  // # of calls in flight.
+  private final AtomicInteger   waitingCalls    = new AtomicInteger();  // # of calls waiting for a permit.
+  private final StripedCounter  rejectedCalls   = new StripedCounter(); // # of calls turned down.
+
+  private final ReentrantLock   lock            = new ReentrantLock();
+  private final Condition       released        = lock.newCondition();
+
+  private final int   maxConcurrentCalls;
+  private final long  maxWaitTime;
+
+  private final BulkheadFullException rejection = new BulkheadFullException(REJECTION_MESSAGE);
+
+  /**
+   * @param maxConcurrentCalls how many calls may be in flight at once.
+   * @param maxWaitTime how long (in nanoseconds) {@link #acquire()} waits for a permit; zero
+   *    means callers are rejected right away.
+   */
+  public Bulkhead(int maxConcurrentCalls, long maxWaitTime){
+    if(maxConcurrentCalls <= 0) throw new IllegalArgumentException("max concurrent calls must be positive");
+    if(maxWaitTime < 0) throw new IllegalArgumentException("max wait time cannot be negative");
+
+    this.maxConcurrentCalls = maxConcurrentCalls;
+    this.maxWaitTime        = maxWaitTime;
+  }
+
+  /**
+   * takes a permit, waiting for up to the bulkhead's max wait time if there is none.
+   *
+   * @throws BulkheadFullException if no permit became available in time.
+   */
+  public void acquire() {
+    try {
+      if(tryAcquire(maxWaitTime, TimeUnit.NANOSECONDS)) return;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    throw rejection;
+  }
+
+  /**
+   * takes a permit if there is one, without waiting.
+   *
+   * @return {@code true} if the call may go thru, {@code false} if it was rejected.
+   */
+  public boolean tryAcquire() {
+    if(tryTakePermit()) return true;
+
+    rejectedCalls.increment();
+    return false;
+  }
+
+  /**
+   * takes a permit, waiting for up to {@code timeout} if there is none.
+   *
+   * @return {@code true} if the call may go thru, {@code false} if it was rejected.
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  public boolean tryAcquire(long timeout, TimeUnit unit) throws InterruptedException {
+    if(tryTakePermit()) return true;
+    if(timeout <= 0){
+      rejectedCalls.increment();
+      return false;
+    }
+
+    long remaining = unit.toNanos(timeout);
+    waitingCalls.incrementAndGet();
+    lock.lock();
+    try {
+      while (!tryTakePermit()){
+        if(remaining <= 0){
+          rejectedCalls.increment();
+          return false;
+        }
+
+        remaining = released.awaitNanos(remaining);
+      }
+
+      return true;
+    } finally {
+      lock.unlock();
+      waitingCalls.decrementAndGet();
+    }
+  }
+
+  /**
+   * gives back a permit taken by {@link #acquire()} or {@code tryAcquire}.
+   */
+  public void release() {
+    concurrentCalls.decrementAndGet();
+    if(waitingCalls.get() > 0){
+      lock.lock();
+      try {
+        released.signal();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  private boolean tryTakePermit() {
+    while (true){
+      final int current = concurrentCalls.get();
+      if(current >= maxConcurrentCalls) return false;
+      if(concurrentCalls.compareAndSet(current, current + 1)) return true;
+    }
+  }
+
+  /**
+   * @return how many calls may be in flight at once.
+   */
+  public int getMaxConcurrentCalls() {
+    return maxConcurrentCalls;
+  }
+
+  /**
+   * @return how long (in nanoseconds) {@link #acquire()} waits for a permit.
+   */
+  public long getMaxWaitTime() {
+    return maxWaitTime;
+  }
+
+  /**
+   * @return the number of calls currently in flight.
+   */
+  public int getConcurrentCalls() {
+    return concurrentCalls.get();
+  }
+
+  /**
+   * @return the number of calls turned down so far.
+   */
+  public long getRejectedCalls() {
+    return rejectedCalls.get();
+  }
+}
@@ -0,0 +1,73 @@
+package edu.ucsc.cb;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The executor guarded calls run on when they must be timed out (see
+ * {@link CircuitBreakers#circuitBreak(java.util.concurrent.Callable, CircuitBreaker, long,
+ * java.util.concurrent.TimeUnit)}). On runtimes with virtual threads (Java 21 and later), every
+ * call gets a virtual thread of its own; elsewhere, calls run on a cached pool of daemon
+ * platform threads. Virtual threads are looked up reflectively, so the library still builds
+ * and runs on older runtimes.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+final class CallExecutor {
+  private CallExecutor(){
+    throw new AssertionError("Error! This is a utility class.");
+  }
+
+  static ExecutorService get(){
+    return Installer.INSTANCE;
+  }
+
+  /**
+   * @return {@code true} if calls run on virtual threads; {@code false} otherwise.
+   */
+  static boolean isVirtual(){
+    return Installer.VIRTUAL;
+  }
+
+  /**
+   * @return a new executor that starts a virtual thread per task, or NULL if the runtime has no
+   *    virtual threads.
+   */
+  static ExecutorService newVirtualThreadPerTaskExecutor(){
+    try {
+      final Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) factory.invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return null;
+    }
+  }
+
+  /**
+   * @return a new executor that starts (or reuses) a daemon platform thread per task.
+   */
+  static ExecutorService newPlatformThreadPerTaskExecutor(){
+    return Executors.newCachedThreadPool(new ThreadFactory() {
+      @Override public Thread newThread(Runnable task) {
+        final Thread thread = new Thread(task, "circuit-breaker-call");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  /**
+   * Lazy-constructed singleton, which is thread safe
+   */
+  static class Installer {
+    static final ExecutorService  INSTANCE;
+    static final boolean          VIRTUAL;
+
+    static {
+      final ExecutorService virtual = newVirtualThreadPerTaskExecutor();
+      VIRTUAL   = virtual != null;
+      INSTANCE  = VIRTUAL ? virtual : newPlatformThreadPerTaskExecutor();
+    }
+  }
+}
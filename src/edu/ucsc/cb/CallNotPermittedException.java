@@ -0,0 +1,52 @@
+package edu.ucsc.cb;
+
+/**
+ * thrown by a {@link CircuitBreaker breaker} that is not ready to accept new calls.
+ *
+ * <p>
+ * Rejecting calls is the hot path of an {@link CircuitBreakerStatus#OPENED opened} breaker,
+ * so breakers are expected to hand out a {@link #stackless(String) stackless} instance
+ * allocated once and reused for every rejected call.
+ * </p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class CallNotPermittedException extends RuntimeException {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * creates a rejection that records its stack trace and the error that opened the breaker.
+   *
+   * @param message
+   *    the detail message.
+   * @param cause
+   *    the error that opened the breaker; it may be {@code null}.
+   */
+  public CallNotPermittedException(String message, Throwable cause) {
+    super(message, cause);
+  }
+
+  /**
+   * creates a rejection that may skip its stack trace.
+   *
+   * @param message
+   *    the detail message.
+   * @param writableStackTrace
+   *    {@code false} if the rejection has neither stack trace nor suppressed exceptions.
+   */
+  protected CallNotPermittedException(String message, boolean writableStackTrace) {
+    super(message, null, writableStackTrace, writableStackTrace);
+  }
+
+  /**
+   * creates a rejection with neither stack trace nor suppressed exceptions, and therefore safe
+   * to be shared by every rejected call.
+   *
+   * @param message
+   *    the detail message.
+   * @return a preallocatable rejection.
+   */
+  public static CallNotPermittedException stackless(String message) {
+    return new CallNotPermittedException(message, false);
+  }
+}
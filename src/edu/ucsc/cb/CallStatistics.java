@@ -0,0 +1,148 @@
+package edu.ucsc.cb;
+
+/**
+ * the call counters and latencies every breaker keeps, allocated once per breaker and updated
+ * without locks nor allocations. Breakers hand this very object out as their
+ * {@link CircuitBreakerStatistics statistics}; subclasses add whatever the breaker knows about
+ * its status. Letting a call thru records nothing here: a CLOSED breaker's call path stays
+ * free of writes, and only outcomes are counted. Calls in flight are counted by whatever
+ * guards them (see {@link #entered(CircuitBreaker)}), not by the breaker.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+abstract class CallStatistics implements CircuitBreakerStatistics {
+  private final StripedCounter    succeededCalls  = new StripedCounter();
+  private final StripedCounter    failedCalls     = new StripedCounter();
+  private final StripedCounter    rejectedCalls   = new StripedCounter();
+  private final StripedCounter    ignoredCalls    = new StripedCounter();
+  private final StripedCounter    slowCalls       = new StripedCounter();
+  private final StripedCounter    cacheHits       = new StripedCounter();
+  private final StripedCounter    cacheMisses     = new StripedCounter();
+  private final StripedCounter    inFlightCalls   = new StripedCounter();
+  private final StripedCounter    totalLatency    = new StripedCounter();
+  private final LatencyHistogram  latencies       = new LatencyHistogram();
+
+  /**
+   * @param elapsedTime how long the call took, or a negative value if it was not timed.
+   */
+  void succeeded(long elapsedTime){
+    succeededCalls.increment();
+    timed(elapsedTime);
+  }
+
+  /**
+   * @param elapsedTime how long the call took, or a negative value if it was not timed.
+   */
+  void failed(long elapsedTime){
+    failedCalls.increment();
+    timed(elapsedTime);
+  }
+
+  private void timed(long elapsedTime){
+    if(elapsedTime < 0) return;
+
+    totalLatency.add(elapsedTime);
+    latencies.record(elapsedTime);
+  }
+
+  /**
+   * records the outcomes of a batch of untimed calls.
+   */
+  void completed(int succeeded, int failed){
+    if(succeeded > 0) succeededCalls.add(succeeded);
+    if(failed > 0)    failedCalls.add(failed);
+  }
+
+  void rejected(){
+    rejectedCalls.increment();
+  }
+
+  void ignored(){
+    ignoredCalls.increment();
+  }
+
+  /**
+   * @param calls the number of calls ignored at once.
+   */
+  void ignored(int calls){
+    ignoredCalls.add(calls);
+  }
+
+  void slow(){
+    slowCalls.increment();
+  }
+
+  void cacheHit(){
+    cacheHits.increment();
+  }
+
+  void cacheMissed(){
+    cacheMisses.increment();
+  }
+
+  /**
+   * counts a guarded call as in flight, if the breaker keeps these statistics.
+   */
+  static void entered(CircuitBreaker<?> breaker){
+    final CircuitBreakerStatistics statistics = breaker.getStatistics();
+    if(statistics instanceof CallStatistics) ((CallStatistics) statistics).inFlightCalls.increment();
+  }
+
+  /**
+   * counts a guarded call, counted in flight by {@link #entered(CircuitBreaker)}, as completed.
+   */
+  static void exited(CircuitBreaker<?> breaker){
+    final CircuitBreakerStatistics statistics = breaker.getStatistics();
+    if(statistics instanceof CallStatistics) ((CallStatistics) statistics).inFlightCalls.add(-1L);
+  }
+
+  @Override public long getInFlightCalls() {
+    return Math.max(0L, inFlightCalls.get());
+  }
+
+  @Override public long getSuccessfulCalls() {
+    return succeededCalls.get();
+  }
+
+  @Override public long getFailedCalls() {
+    return failedCalls.get();
+  }
+
+  @Override public long getRejectedCalls() {
+    return rejectedCalls.get();
+  }
+
+  @Override public long getIgnoredCalls() {
+    return ignoredCalls.get();
+  }
+
+  @Override public long getSlowCalls() {
+    return slowCalls.get();
+  }
+
+  @Override public long getCacheHits() {
+    return cacheHits.get();
+  }
+
+  @Override public long getCacheMisses() {
+    return cacheMisses.get();
+  }
+
+  @Override public float getFailureRate() {
+    final long failed    = failedCalls.get();
+    final long completed = succeededCalls.get() + failed;
+    return completed == 0 ? -1f : failed * 100.0f / completed;
+  }
+
+  @Override public long getLatency(double percentile) {
+    return latencies.percentile(percentile);
+  }
+
+  @Override public long getTimedCalls() {
+    return latencies.count();
+  }
+
+  @Override public long getTotalLatency() {
+    return totalLatency.get();
+  }
+}
@@ -6,18 +6,91 @@ package edu.ucsc.cb;
  * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
  */
 public interface CircuitBreaker <E extends Exception> {
+  /**
+   * permit of a call that is not a trial call; e.g., one a CLOSED breaker let thru.
+   */
+  long NO_PROBE = -1L;
+
   /**
    * breaker acknowledges the intended call.
    * @throws E
    *    thrown if the breaker is not ready to accept new calls.
+   * @throws CallNotPermittedException
+   *    thrown by the built-in breakers if they are not ready to accept new calls.
    */
   void callStarted() throws E;
 
+  /**
+   * same as {@link #callStarted()}, but hands back the call's permit: which half-open period,
+   * if any, let the call thru as a trial call. Passing the permit back with the call's outcome
+   * lets the breaker tell its trial calls from calls it let thru before it opened; only the
+   * former return probe permits or count toward closing it. Outcomes recorded without their
+   * permit are taken as trial calls' while any trial call is in flight.
+   *
+   * @return
+   *    the call's permit; {@link #NO_PROBE} if the call is not a trial call.
+   * @throws E
+   *    thrown if the breaker is not ready to accept new calls.
+   */
+  default long callPermitted() throws E {
+    callStarted();
+    return NO_PROBE;
+  }
+
+  /**
+   * breaker acknowledges a batch of intended calls at once; e.g., the requests a pipelined
+   * client is about to write.
+   *
+   * @param calls
+   *    the number of intended calls.
+   * @return
+   *    how many of them may go thru, at least one; the others must not be made.
+   * @throws E
+   *    thrown if the breaker is not ready to accept any new call.
+   */
+  default int callsStarted(int calls) throws E {
+    if(calls < 1) throw new IllegalArgumentException("calls must be at least 1");
+
+    for(int idx = 0; idx < calls; idx++){
+      try {
+        callStarted();
+      } catch (Exception rejected) {
+        //noinspection RedundantTypeArguments
+        if(idx == 0) throw Exceptions.<E>castException(rejected);
+        return idx;
+      }
+    }
+
+    return calls;
+  }
+
   /**
    * breaker changes its state to {@link CircuitBreakerStatus#CLOSED}
    */
   void callSucceeded();
 
+  /**
+   * same as {@link #callSucceeded()}, for callers that timed the call.
+   *
+   * @param elapsedTime
+   *      time, in nanoseconds, that took the call to succeed.
+   */
+  default void callSucceeded(long elapsedTime) {
+    callSucceeded();
+  }
+
+  /**
+   * same as {@link #callSucceeded(long)}, for calls started with {@link #callPermitted()}.
+   *
+   * @param permit
+   *      the call's permit.
+   * @param elapsedTime
+   *      time, in nanoseconds, that took the call to succeed.
+   */
+  default void callSucceeded(long permit, long elapsedTime) {
+    callSucceeded(elapsedTime);
+  }
+
   /**
    * cb remains or changes its state to {@link CircuitBreakerStatus#OPENED}
    * @param error
@@ -26,6 +99,71 @@ public interface CircuitBreaker <E extends Exception> {
    */
   void callFailed(E error);
 
+  /**
+   * same as {@link #callFailed(Exception)}, for callers that timed the call.
+   *
+   * @param error
+   *      error that opened circuit breaker.
+   * @param elapsedTime
+   *      time, in nanoseconds, that took the call to fail.
+   */
+  default void callFailed(E error, long elapsedTime) {
+    callFailed(error);
+  }
+
+  /**
+   * same as {@link #callFailed(Exception, long)}, for calls started with
+   * {@link #callPermitted()}.
+   *
+   * @param permit
+   *      the call's permit.
+   * @param error
+   *      error that opened circuit breaker.
+   * @param elapsedTime
+   *      time, in nanoseconds, that took the call to fail.
+   */
+  default void callFailed(long permit, E error, long elapsedTime) {
+    callFailed(error, elapsedTime);
+  }
+
+  /**
+   * breaker forgets an acknowledged call whose outcome will never be known; e.g., a hedged
+   * attempt cancelled because another attempt won the race. The call counts neither as a
+   * success nor as a failure. By default, nothing is recorded.
+   */
+  default void callCancelled() {}
+
+  /**
+   * same as {@link #callCancelled()}, for calls started with {@link #callPermitted()}.
+   *
+   * @param permit
+   *      the call's permit.
+   */
+  default void callCancelled(long permit) {
+    callCancelled();
+  }
+
+  /**
+   * records the outcomes of a batch of calls at once; e.g., the responses a pipelined client
+   * read off the wire. Within the batch, failures are taken as the most recent outcomes.
+   *
+   * @param succeeded
+   *      the number of calls that succeeded.
+   * @param failed
+   *      the number of calls that failed.
+   * @param error
+   *      error that made the last failed call fail; ignored if none failed.
+   */
+  default void callsCompleted(int succeeded, int failed, E error) {
+    for(int idx = 0; idx < succeeded; idx++){
+      callSucceeded();
+    }
+
+    for(int idx = 0; idx < failed; idx++){
+      callFailed(error);
+    }
+  }
+
   /**
    * @return
    *    The amount of time in milliseconds before the circuit breaker will let calls
@@ -0,0 +1,278 @@
+package edu.ucsc.cb;
+
+import java.util.function.Supplier;
+
+/**
+ * An immutable set of circuit breaker settings. Settings not given to the {@link Builder builder}
+ * keep the same defaults as {@code config/circuitbreaker.cfg}.
+ *
+ * <p>
+ * Breakers read their settings thru a {@code Supplier<CircuitBreakerConfig>}: a config supplies
+ * itself (fixed settings), whereas the {@link CircuitBreakerEnvironment environment} supplies
+ * whatever the configuration file currently holds.
+ * </p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public final class CircuitBreakerConfig implements Supplier<CircuitBreakerConfig> {
+  /**
+   * slow call threshold meaning "no call is ever slow".
+   */
+  public static final long NO_SLOW_CALLS = Long.MAX_VALUE;
+
+  private final long    failedCallThreshold;
+  private final long    retryThreshold;
+  private final int     halfOpenPermits;
+  private final int     successfulProbeThreshold;
+  private final long    slowCallThreshold;
+  private final float   slowCallRateThreshold;
+  private final int     slowCallWindowSize;
+  private final int     slowCallMinimumCalls;
+  private final boolean debug;
+  private final ExceptionClassifier exceptionClassifier;
+  private final Clock   clock;
+
+  private CircuitBreakerConfig(Builder builder){
+    this.failedCallThreshold      = builder.failedCallThreshold;
+    this.retryThreshold           = builder.retryThreshold;
+    this.halfOpenPermits          = builder.halfOpenPermits;
+    this.successfulProbeThreshold = builder.successfulProbeThreshold;
+    this.slowCallThreshold        = builder.slowCallThreshold;
+    this.slowCallRateThreshold    = builder.slowCallRateThreshold;
+    this.slowCallWindowSize       = builder.slowCallWindowSize;
+    this.slowCallMinimumCalls     = builder.slowCallMinimumCalls;
+    this.debug                    = builder.debug;
+    this.exceptionClassifier      = builder.exceptionClassifier;
+    this.clock                    = builder.clock;
+  }
+
+  /**
+   * @return a builder initialized with the default settings.
+   */
+  public static Builder builder(){
+    return new Builder();
+  }
+
+  /**
+   * @return this config.
+   */
+  @Override public CircuitBreakerConfig get() {
+    return this;
+  }
+
+  /**
+   * @return a builder initialized with this config's settings.
+   */
+  public Builder toBuilder(){
+    return new Builder(this);
+  }
+
+  /**
+   * @return the number of errors the breaker will swallow before caching the error and
+   *    consequently force the client to wait.
+   */
+  public long getFailedCallThreshold() {
+    return failedCallThreshold;
+  }
+
+  /**
+   * @return how long (in nanoseconds) the breaker will wait until letting the call go thru.
+   */
+  public long getRetryThreshold() {
+    return retryThreshold;
+  }
+
+  /**
+   * @return how many trial calls may be in flight at once while the breaker is HALF_OPENED.
+   */
+  public int getHalfOpenPermits() {
+    return halfOpenPermits;
+  }
+
+  /**
+   * @return how many trial calls must succeed before a HALF_OPENED breaker closes.
+   */
+  public int getSuccessfulProbeThreshold() {
+    return successfulProbeThreshold;
+  }
+
+  /**
+   * @return the duration (in nanoseconds) from which a call is considered slow.
+   */
+  public long getSlowCallThreshold() {
+    return slowCallThreshold;
+  }
+
+  /**
+   * @return the percentage of slow calls that opens the breaker.
+   */
+  public float getSlowCallRateThreshold() {
+    return slowCallRateThreshold;
+  }
+
+  /**
+   * @return the number of most recent timed calls the slow call rate is computed from.
+   */
+  public int getSlowCallWindowSize() {
+    return slowCallWindowSize;
+  }
+
+  /**
+   * @return the number of timed calls needed before the slow call rate is evaluated.
+   */
+  public int getSlowCallMinimumCalls() {
+    return slowCallMinimumCalls;
+  }
+
+  /**
+   * @return {@code true} if slow calls are tracked at all.
+   */
+  public boolean tracksSlowCalls() {
+    return slowCallThreshold != NO_SLOW_CALLS;
+  }
+
+  /**
+   * @return {@code true} if the breaker will display its activity messages. {@code false} otherwise.
+   */
+  public boolean inDebugMode() {
+    return debug;
+  }
+
+  /**
+   * @return tells which failures count against the dependency's health.
+   */
+  public ExceptionClassifier getExceptionClassifier() {
+    return exceptionClassifier;
+  }
+
+  /**
+   * @return the time source of the breaker.
+   */
+  public Clock getClock() {
+    return clock;
+  }
+
+  /**
+   * Builds {@link CircuitBreakerConfig} objects.
+   */
+  public static final class Builder {
+    private long    failedCallThreshold       = 1L;
+    private long    retryThreshold            = 900000000000L;
+    private int     halfOpenPermits           = 1;
+    private int     successfulProbeThreshold  = 1;
+    private long    slowCallThreshold         = NO_SLOW_CALLS;
+    private float   slowCallRateThreshold     = 100.0f;
+    private int     slowCallWindowSize        = 100;
+    private int     slowCallMinimumCalls      = 10;
+    private boolean debug                     = false;
+    private ExceptionClassifier exceptionClassifier = ExceptionClassifier.RECORD_ALL;
+    private Clock   clock                     = Clock.SYSTEM;
+
+    Builder(){}
+
+    Builder(CircuitBreakerConfig config){
+      this.failedCallThreshold      = config.failedCallThreshold;
+      this.retryThreshold           = config.retryThreshold;
+      this.halfOpenPermits          = config.halfOpenPermits;
+      this.successfulProbeThreshold = config.successfulProbeThreshold;
+      this.slowCallThreshold        = config.slowCallThreshold;
+      this.slowCallRateThreshold    = config.slowCallRateThreshold;
+      this.slowCallWindowSize       = config.slowCallWindowSize;
+      this.slowCallMinimumCalls     = config.slowCallMinimumCalls;
+      this.debug                    = config.debug;
+      this.exceptionClassifier      = config.exceptionClassifier;
+      this.clock                    = config.clock;
+    }
+
+    public Builder failedCallThreshold(long failedCallThreshold){
+      this.failedCallThreshold = failedCallThreshold;
+      return this;
+    }
+
+    public Builder retryThreshold(long retryThreshold){
+      this.retryThreshold = retryThreshold;
+      return this;
+    }
+
+    public Builder halfOpenPermits(int halfOpenPermits){
+      this.halfOpenPermits = halfOpenPermits;
+      return this;
+    }
+
+    public Builder successfulProbeThreshold(int successfulProbeThreshold){
+      this.successfulProbeThreshold = successfulProbeThreshold;
+      return this;
+    }
+
+    /**
+     * @param slowCallThreshold the duration (in nanoseconds) from which a call is slow.
+     * @param slowCallRateThreshold the percentage (0, 100] of slow calls that opens the breaker.
+     */
+    public Builder slowCalls(long slowCallThreshold, float slowCallRateThreshold){
+      this.slowCallThreshold      = slowCallThreshold;
+      this.slowCallRateThreshold  = slowCallRateThreshold;
+      return this;
+    }
+
+    /**
+     * @param slowCallWindowSize the number of most recent timed calls the rate is computed from.
+     * @param slowCallMinimumCalls the number of timed calls needed before the rate is evaluated.
+     */
+    public Builder slowCallWindow(int slowCallWindowSize, int slowCallMinimumCalls){
+      this.slowCallWindowSize   = slowCallWindowSize;
+      this.slowCallMinimumCalls = slowCallMinimumCalls;
+      return this;
+    }
+
+    public Builder debug(boolean debug){
+      this.debug = debug;
+      return this;
+    }
+
+    /**
+     * @param exceptionClassifier tells which failures count against the dependency's health;
+     *    by default, every failure does.
+     */
+    public Builder exceptionClassifier(ExceptionClassifier exceptionClassifier){
+      this.exceptionClassifier = exceptionClassifier;
+      return this;
+    }
+
+    /**
+     * @param clock the time source of the breaker; the {@link Clock#SYSTEM system clock} by
+     *    default. It must not change over the breaker's life.
+     */
+    public Builder clock(Clock clock){
+      this.clock = clock;
+      return this;
+    }
+
+    /**
+     * @return a new config.
+     * @throws IllegalArgumentException if any setting is out of range.
+     */
+    public CircuitBreakerConfig build(){
+      if(failedCallThreshold < 1 || retryThreshold < 0){
+        throw new IllegalArgumentException("failed call threshold must be positive and retry threshold not negative");
+      }
+
+      if(halfOpenPermits <= 0 || successfulProbeThreshold <= 0){
+        throw new IllegalArgumentException("half-open permits and successful probes must be positive");
+      }
+
+      if(slowCallThreshold <= 0 || slowCallRateThreshold <= 0 || slowCallRateThreshold > 100){
+        throw new IllegalArgumentException("slow call threshold must be positive and its rate in (0, 100]");
+      }
+
+      if(slowCallWindowSize <= 0 || slowCallMinimumCalls <= 0){
+        throw new IllegalArgumentException("slow call window size and minimum calls must be positive");
+      }
+
+      if(exceptionClassifier == null || clock == null){
+        throw new NullPointerException("exception classifier and clock are required");
+      }
+
+      return new CircuitBreakerConfig(this);
+    }
+  }
+}
@@ -3,21 +3,52 @@ package edu.ucsc.cb;
 import static edu.ucsc.cb.CircuitBreakerEnvironmentProperties.DEBUG;
 import static edu.ucsc.cb.CircuitBreakerEnvironmentProperties.CONFIG_FILE;
 import static edu.ucsc.cb.CircuitBreakerEnvironmentProperties.FAILED_CALL_THRESHOLD;
+import static edu.ucsc.cb.CircuitBreakerEnvironmentProperties.HALF_OPEN_PERMITS;
 import static edu.ucsc.cb.CircuitBreakerEnvironmentProperties.RETRY_THRESHOLD;
+import static edu.ucsc.cb.CircuitBreakerEnvironmentProperties.SLOW_CALL_MINIMUM_CALLS;
+import static edu.ucsc.cb.CircuitBreakerEnvironmentProperties.SLOW_CALL_RATE_THRESHOLD;
+import static edu.ucsc.cb.CircuitBreakerEnvironmentProperties.SLOW_CALL_THRESHOLD;
+import static edu.ucsc.cb.CircuitBreakerEnvironmentProperties.SLOW_CALL_WINDOW_SIZE;
+import static edu.ucsc.cb.CircuitBreakerEnvironmentProperties.SUCCESSFUL_PROBE_THRESHOLD;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 
 /**
  * A convenient class for dealing with persisted on file circuit breaker settings.
  *
+ * <p>
+ * Settings are parsed once per change into an immutable {@link CircuitBreakerConfig} snapshot,
+ * which is swapped atomically. Reading them is a volatile read: no file system access, no lock
+ * and no parsing. Changes to the configuration file are picked up by a background
+ * {@link WatchService watcher}; breakers built on the environment (e.g., a
+ * {@link DefaultCircuitBreaker#DefaultCircuitBreaker() default breaker}) see them right away.
+ * {@link #close() Closing} the environment stops the watcher; the settings stay as they were.
+ * </p>
+ *
  * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
  */
-public class CircuitBreakerEnvironment {
+public class CircuitBreakerEnvironment implements Supplier<CircuitBreakerConfig>, Closeable {
   private final EnvironmentConfiguration configuration;
+  private volatile CircuitBreakerConfig snapshot;
+
   public CircuitBreakerEnvironment() throws IOException {
     this(
         new EnvironmentPropertiesConfiguration(
@@ -29,28 +60,105 @@ public class CircuitBreakerEnvironment {
 
   protected CircuitBreakerEnvironment(EnvironmentConfiguration configuration){
     this.configuration = configuration;
+    this.snapshot      = parse(configuration);
+    configuration.addChangeListener(new Runnable() {
+      @Override public void run() {
+        reload();
+      }
+    });
   }
 
   public static CircuitBreakerEnvironment getInstance(){
     return Installer.INSTANCE;
   }
 
+  /**
+   * @return the current settings snapshot.
+   */
+  @Override public CircuitBreakerConfig get() {
+    return snapshot;
+  }
+
+  /**
+   * stops watching the configuration file for changes.
+   *
+   * @throws IOException if the watcher could not be closed.
+   */
+  @Override public void close() throws IOException {
+    configuration.close();
+  }
 
   public boolean inDebugMode(){
-    final Object  prop   = getConfiguration().getProperty(DEBUG);
-    return prop == null ? false : Boolean.valueOf(str(prop));
+    return get().inDebugMode();
   }
 
   public long getCircuitBreakerRetryThreshold(){
-    return Long.valueOf(
-        String.valueOf(getConfiguration().getProperty(
-            RETRY_THRESHOLD)));
+    return get().getRetryThreshold();
   }
 
   public long getCircuitBreakerFailedCallThreshold(){
-    return Long.valueOf(
-        String.valueOf(getConfiguration().getProperty(
-            FAILED_CALL_THRESHOLD)));
+    return get().getFailedCallThreshold();
+  }
+
+  public int getCircuitBreakerHalfOpenPermits(){
+    return get().getHalfOpenPermits();
+  }
+
+  public int getCircuitBreakerSuccessfulProbeThreshold(){
+    return get().getSuccessfulProbeThreshold();
+  }
+
+  public long getCircuitBreakerSlowCallThreshold(){
+    return get().getSlowCallThreshold();
+  }
+
+  public float getCircuitBreakerSlowCallRateThreshold(){
+    return get().getSlowCallRateThreshold();
+  }
+
+  /**
+   * @return all the circuit breaker settings found in the configuration file.
+   */
+  public CircuitBreakerConfig getCircuitBreakerConfig(){
+    return get();
+  }
+
+  /**
+   * re-parses the settings and swaps them in. A configuration file that cannot be parsed is
+   * ignored, and reported as an {@link CircuitBreakerEvent.Type#ERROR error} event on the
+   * {@link CircuitBreakerEventBus#getDefault() default bus}; the previous settings stay.
+   */
+  void reload(){
+    try {
+      snapshot = parse(configuration);
+    } catch (RuntimeException e) {
+      CircuitBreakerEventBus.getDefault().error(null, e);
+    }
+  }
+
+  private static CircuitBreakerConfig parse(EnvironmentConfiguration configuration){
+    final Object debug = configuration.getProperty(DEBUG);
+    final Object slowCallThreshold = configuration.getProperty(SLOW_CALL_THRESHOLD);
+    final Object slowCallRateThreshold = configuration.getProperty(SLOW_CALL_RATE_THRESHOLD);
+    return CircuitBreakerConfig.builder()
+        .failedCallThreshold(Long.valueOf(str(configuration.getProperty(FAILED_CALL_THRESHOLD))))
+        .retryThreshold(Long.valueOf(str(configuration.getProperty(RETRY_THRESHOLD))))
+        .halfOpenPermits(intProperty(configuration, HALF_OPEN_PERMITS, 1))
+        .successfulProbeThreshold(intProperty(configuration, SUCCESSFUL_PROBE_THRESHOLD, 1))
+        .slowCalls(
+            slowCallThreshold == null ? CircuitBreakerConfig.NO_SLOW_CALLS : Long.valueOf(str(slowCallThreshold)),
+            slowCallRateThreshold == null ? 100.0f : Float.valueOf(str(slowCallRateThreshold)))
+        .slowCallWindow(
+            intProperty(configuration, SLOW_CALL_WINDOW_SIZE, 100),
+            intProperty(configuration, SLOW_CALL_MINIMUM_CALLS, 10))
+        .debug(debug == null ? false : Boolean.valueOf(str(debug)))
+        .build();
+  }
+
+  private static int intProperty(EnvironmentConfiguration configuration, String propertyName, int defaultValue){
+    // older configuration files may not have these settings.
+    final Object prop = configuration.getProperty(propertyName);
+    return prop == null ? defaultValue : Integer.valueOf(str(prop));
   }
 
 
@@ -61,6 +169,8 @@ public class CircuitBreakerEnvironment {
       {
         setProperty(RETRY_THRESHOLD, Long.toString(900000000000L));
         setProperty(FAILED_CALL_THRESHOLD, String.valueOf(1));
+        setProperty(HALF_OPEN_PERMITS, String.valueOf(1));
+        setProperty(SUCCESSFUL_PROBE_THRESHOLD, String.valueOf(1));
         setProperty(DEBUG, String.valueOf(false));
       }
     };
@@ -71,36 +181,47 @@ public class CircuitBreakerEnvironment {
     return configuration;
   }
 
-  static interface EnvironmentConfiguration {
+  static interface EnvironmentConfiguration extends Closeable {
     Object getProperty(String propertyName);
     void setDefaultProperties(Properties defaults);
+
+    /**
+     * @param listener called (on no particular thread) every time the properties change.
+     */
+    void addChangeListener(Runnable listener);
   }
 
   static abstract class AbstractEnvironmentConfiguration implements EnvironmentConfiguration {
-    private final Map<String, Object> properties = new HashMap<String, Object>();
+    private final ReentrantLock  writeLock = new ReentrantLock();
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<Runnable>();
+
+    // replaced as a whole (copy-on-write), never modified in place.
+    private volatile Map<String, Object> properties = Collections.emptyMap();
 
     AbstractEnvironmentConfiguration() {
     }
 
     /**
-     * This method should be overridden to check whether the properties could maybe have changed,
-     * and if yes, to reload them.
+     * This method should be overridden to reload the properties. It is called whenever they
+     * could maybe have changed, never on reads.
      */
     protected abstract void checkForPropertyChanges();
 
     protected abstract Properties getDefaults();
 
-    protected boolean isDefaultsMode() {
-      return false;
-    }
-
     @Override
     public Object getProperty(String propertyName) {
-      checkForPropertyChanges();
-      synchronized (properties) {
-        return !isDefaultsMode() ? properties.get(propertyName)
-            : getDefaults().getProperty(propertyName);
-      }
+      return properties.get(propertyName);
+    }
+
+    @Override public void addChangeListener(Runnable listener) {
+      listeners.add(listener);
+    }
+
+    /**
+     * nothing to release, unless overridden.
+     */
+    @Override public void close() throws IOException {
     }
 
     /**
@@ -110,16 +231,48 @@ public class CircuitBreakerEnvironment {
      * @param value value of property.
      */
     protected final void setProperty(String propertyName, Object value) {
-      synchronized (properties) {
-        Object old = properties.get(propertyName);
-        if ((value != null && !value.equals(old))
-            || value == null && old != null) {
-          if(!isDefaultsMode()){
-            properties.put(propertyName, value);
-          } else {
-            getDefaults().setProperty(propertyName, String.valueOf(value));
-          }
+      writeLock.lock();
+      try {
+        final Object old = properties.get(propertyName);
+        if ((value != null && value.equals(old))
+            || value == null && old == null) {
+          return;
         }
+
+        final Map<String, Object> next = new HashMap<String, Object>(properties);
+        next.put(propertyName, value);
+        properties = Collections.unmodifiableMap(next);
+      } finally {
+        writeLock.unlock();
+      }
+
+      fireChange();
+    }
+
+    /**
+     * replaces every property at once.
+     *
+     * @param all the new properties.
+     */
+    protected final void setAllProperties(Properties all) {
+      final Map<String, Object> next = new HashMap<String, Object>();
+      for (Map.Entry<Object, Object> entry : all.entrySet()) {
+        next.put(str(entry.getKey()), entry.getValue());
+      }
+
+      writeLock.lock();
+      try {
+        properties = Collections.unmodifiableMap(next);
+      } finally {
+        writeLock.unlock();
+      }
+
+      fireChange();
+    }
+
+    private void fireChange() {
+      for (Runnable each : listeners) {
+        each.run();
       }
     }
   }
@@ -130,28 +283,28 @@ public class CircuitBreakerEnvironment {
 
   static class EnvironmentPropertiesConfiguration extends AbstractEnvironmentConfiguration {
     private final File file;
-    private final Properties defaults;
-
-    private boolean useDefaults = false;
-    private long lastModified = 0;
+    private volatile Properties defaults; // never changed once published; replaced instead.
+    private final WatchService watcher; // NULL if there is nothing to watch.
 
     EnvironmentPropertiesConfiguration(Properties defaults, String filename) throws IOException {
       super();
       this.defaults = defaults;
       this.file = new File(filename);
-      this.useDefaults = !file.exists();
       loadProperties();
+      this.watcher = watch();
     }
 
+    /**
+     * reloads the file; if it cannot be read, the properties stay as they were, and the failure
+     * is reported as an {@link CircuitBreakerEvent.Type#ERROR error} event on the
+     * {@link CircuitBreakerEventBus#getDefault() default bus}.
+     */
     @Override
     protected void checkForPropertyChanges() {
-      if (lastModified != file.lastModified()) {
-        try {
-          lastModified = file.lastModified();
-          loadProperties();
-        } catch (IOException e) {
-          throw new RuntimeException(e);
-        }
+      try {
+        loadProperties();
+      } catch (IOException e) {
+        CircuitBreakerEventBus.getDefault().error(null, new IOException("Unable to reload " + file, e));
       }
     }
 
@@ -160,32 +313,83 @@ public class CircuitBreakerEnvironment {
       return defaults;
     }
 
-    @Override
-    protected boolean isDefaultsMode() {
-      return useDefaults;
-    }
-
     private void loadProperties() throws IOException {
-      final Properties properties = new Properties();
-      if (!useDefaults) {
-        properties.load(new FileInputStream(file));
+      if (file.exists()) {
+        final Properties properties = new Properties();
+        final InputStream in = new FileInputStream(file);
+        try {
+          properties.load(in);
+        } finally {
+          in.close();
+        }
+
         setAllProperties(properties);
       } else {
-        setAllProperties(getDefaults());
+        setAllProperties((Properties) getDefaults().clone());
       }
     }
 
-    private void setAllProperties(Properties properties) {
-      for (Map.Entry<Object, Object> entry : properties.entrySet()) {
-        setProperty(str(entry.getKey()), entry.getValue());
-      }
+    /**
+     * starts a daemon thread that reloads the properties every time the configuration
+     * file is created, modified or deleted. The thread ends once the returned watcher is closed.
+     *
+     * @return the watcher, or NULL if the file's directory does not exist.
+     */
+    private WatchService watch() throws IOException {
+      final File directory = file.getAbsoluteFile().getParentFile();
+      if (directory == null || !directory.isDirectory()) return null;
+
+      final WatchService watcher = FileSystems.getDefault().newWatchService();
+      final Path dir = directory.toPath();
+      dir.register(watcher,
+          StandardWatchEventKinds.ENTRY_CREATE,
+          StandardWatchEventKinds.ENTRY_MODIFY,
+          StandardWatchEventKinds.ENTRY_DELETE
+      );
+
+      final Path name = file.toPath().getFileName();
+      final Thread thread = new Thread(new Runnable() {
+        @Override public void run() {
+          try {
+            while (true) {
+              final WatchKey key = watcher.take();
+              boolean changed = false;
+              for (WatchEvent<?> event : key.pollEvents()) {
+                changed |= name.equals(event.context())
+                    || event.kind() == StandardWatchEventKinds.OVERFLOW;
+              }
+
+              if (changed) {
+                checkForPropertyChanges();
+              }
+
+              if (!key.reset()) return;
+            }
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          } catch (ClosedWatchServiceException e) {
+            // nothing else to watch.
+          }
+        }
+      }, "circuit-breaker-config-watcher");
+      thread.setDaemon(true);
+      thread.start();
+      return watcher;
+    }
+
+    /**
+     * stops watching the configuration file.
+     */
+    @Override public void close() throws IOException {
+      if (watcher != null) watcher.close();
     }
 
     @Override public void setDefaultProperties(Properties defaults) {
-      synchronized (this.defaults){
-        this.defaults.clear();
-        this.defaults.putAll(defaults);
-      }
+      // a fresh copy is published instead of changing the current one under its monitor, so
+      // no thread ever blocks on it (nor pins its carrier, if virtual).
+      final Properties copy = new Properties();
+      copy.putAll(defaults);
+      this.defaults = copy;
 
       try {
         loadProperties();
@@ -23,6 +23,37 @@ public class CircuitBreakerEnvironmentProperties {
    */
   public static final String FAILED_CALL_THRESHOLD      = "circuit.breaker.failed.call.threshold";
 
+  /**
+   * How many trial calls the breaker lets go thru at once after the retry threshold expires.
+   */
+  public static final String HALF_OPEN_PERMITS          = "circuit.breaker.half.open.permits";
+
+  /**
+   * How many trial calls must succeed before the breaker closes again.
+   */
+  public static final String SUCCESSFUL_PROBE_THRESHOLD = "circuit.breaker.successful.probe.threshold";
+
+  /**
+   * How long (in nanoseconds) a call may take before it is considered slow. Slow calls are not
+   * tracked if missing.
+   */
+  public static final String SLOW_CALL_THRESHOLD        = "circuit.breaker.slow.call.threshold.ns";
+
+  /**
+   * The percentage of slow calls that opens the breaker.
+   */
+  public static final String SLOW_CALL_RATE_THRESHOLD   = "circuit.breaker.slow.call.rate.threshold";
+
+  /**
+   * How many of the most recent calls the slow call rate is computed from.
+   */
+  public static final String SLOW_CALL_WINDOW_SIZE      = "circuit.breaker.slow.call.window.size";
+
+  /**
+   * How many calls must be seen before the slow call rate is evaluated.
+   */
+  public static final String SLOW_CALL_MINIMUM_CALLS    = "circuit.breaker.slow.call.minimum.calls";
+
   /**
    * Force the breaker to display its activity messages on screen
    */
@@ -0,0 +1,143 @@
+package edu.ucsc.cb;
+
+/**
+ * something that happened to a circuit breaker: a status change, or the outcome of a call.
+ *
+ * <p>
+ * Events are slots of a {@link CircuitBreakerEventBus}'s ring buffer, and so they are reused
+ * once delivered. An event is valid only until the {@link CircuitBreakerEventListener listener}
+ * it was handed to returns; listeners that need to keep it must copy whatever they need
+ * (see {@link #copy()}).
+ * </p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public final class CircuitBreakerEvent {
+  /**
+   * kinds of events.
+   */
+  public enum Type {
+    /** the breaker went from one status to another. */
+    STATUS_CHANGED,
+    /** a call succeeded. */
+    CALL_SUCCEEDED,
+    /** a call failed. */
+    CALL_FAILED,
+    /** a call was not permitted. */
+    CALL_REJECTED,
+    /** a call took longer than the slow call threshold, whether it succeeded or not. */
+    SLOW_CALL,
+    /**
+     * something failed on its own, not on a call's behalf (e.g., reloading the settings, or a
+     * listener handling an event); its error says what. The source is NULL unless a breaker failed.
+     */
+    ERROR
+  }
+
+  public static final long NO_ELAPSED_TIME = -1L;
+
+  // written by the publisher before 'sequence'; read by the consumer after it.
+  private Type                  type;
+  private CircuitBreaker<?>     source;
+  private CircuitBreakerStatus  fromStatus;
+  private CircuitBreakerStatus  toStatus;
+  private long                  elapsedTime;
+  private Exception             error;
+  private long                  timestamp;
+
+  volatile long                 sequence = -1L; // sequence at which this slot was last published.
+
+  CircuitBreakerEvent(){}
+
+  void set(Type type, CircuitBreaker<?> source, CircuitBreakerStatus fromStatus,
+      CircuitBreakerStatus toStatus, long elapsedTime, Exception error, long timestamp){
+    this.type        = type;
+    this.source      = source;
+    this.fromStatus  = fromStatus;
+    this.toStatus    = toStatus;
+    this.elapsedTime = elapsedTime;
+    this.error       = error;
+    this.timestamp   = timestamp;
+  }
+
+  /**
+   * drops the references held by this slot, so that a delivered event keeps neither its
+   * breaker nor its error reachable.
+   */
+  void clear(){
+    source = null;
+    error  = null;
+  }
+
+  /**
+   * @return a copy of this event that may outlive the listener's call.
+   */
+  public CircuitBreakerEvent copy(){
+    final CircuitBreakerEvent copy = new CircuitBreakerEvent();
+    copy.set(type, source, fromStatus, toStatus, elapsedTime, error, timestamp);
+    return copy;
+  }
+
+  /**
+   * @return what happened.
+   */
+  public Type getType() {
+    return type;
+  }
+
+  /**
+   * @return the breaker it happened to.
+   */
+  public CircuitBreaker<?> getSource() {
+    return source;
+  }
+
+  /**
+   * @return the breaker's status before a {@link Type#STATUS_CHANGED status change}; otherwise,
+   *    its status when the event was published.
+   */
+  public CircuitBreakerStatus getFromStatus() {
+    return fromStatus;
+  }
+
+  /**
+   * @return the breaker's status after a {@link Type#STATUS_CHANGED status change}; otherwise,
+   *    its status when the event was published.
+   */
+  public CircuitBreakerStatus getToStatus() {
+    return toStatus;
+  }
+
+  /**
+   * @return how long the call took in nanoseconds, or {@link #NO_ELAPSED_TIME} if the call was
+   *    not timed or the event is not about a call.
+   */
+  public long getElapsedTime() {
+    return elapsedTime;
+  }
+
+  /**
+   * @return the error that made the call fail, or that opened the breaker. NULL otherwise.
+   */
+  public Exception getError() {
+    return error;
+  }
+
+  /**
+   * @return when it happened, as given by {@link System#nanoTime()}.
+   */
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  @Override public String toString() {
+    if(type == Type.ERROR) return type + " (error: " + error + ")";
+
+    return type == Type.STATUS_CHANGED
+        ? "Circuit breaker's status has changed from " + fromStatus + " to " + toStatus
+        : type + " (status: " + toStatus
+            + (elapsedTime == NO_ELAPSED_TIME ? "" : ", elapsed time: " + elapsedTime + " nanoseconds")
+            + (error == null ? "" : ", error: " + error)
+            + ")";
+  }
+}
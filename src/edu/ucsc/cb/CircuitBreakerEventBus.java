@@ -0,0 +1,279 @@
+package edu.ucsc.cb;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands circuit breaker {@link CircuitBreakerEvent events} over to their
+ * {@link CircuitBreakerEventListener listeners} without making the calling thread wait for them.
+ *
+ * <p>
+ * Publishers claim a slot of a bounded ring buffer with one compare-and-set, fill it in and
+ * move on; a single consumer thread drains whatever has been published, in batches, and is
+ * the only thread listeners ever run on. Slots are allocated once, when the bus is built, so
+ * publishing allocates nothing. When nobody has subscribed, publishing is a single read of
+ * the listeners.
+ * </p>
+ *
+ * <p>
+ * Slow listeners never slow callers down. Once half of the buffer is pending, only one out of
+ * every {@value #SAMPLING_RATE} {@link CircuitBreakerEvent.Type#CALL_SUCCEEDED succeeded} and
+ * {@link CircuitBreakerEvent.Type#CALL_REJECTED rejected} calls is published, and once the
+ * buffer is full, every event is dropped until the consumer catches up. Either way, the event
+ * is counted as {@link #getDroppedEvents() dropped}.
+ * </p>
+ *
+ * <p>
+ * A listener that throws does not stop the others from getting the event; its failure is
+ * published as an {@link CircuitBreakerEvent.Type#ERROR error} event, unless it failed at
+ * handling an error event itself.
+ * </p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public final class CircuitBreakerEventBus {
+  static final int SAMPLING_RATE     = 8;
+  static final int DEFAULT_CAPACITY  = 1024;
+
+  private static final CircuitBreakerEventListener[] NO_LISTENERS = new CircuitBreakerEventListener[0];
+
+  private final CircuitBreakerEvent[] slots;
+  private final int                   mask;
+  private final int                   samplingThreshold;  // # of pending events at which call outcomes are sampled.
+
+  private final AtomicLong            tail    = new AtomicLong(); // next sequence to be claimed by a publisher.
+  private volatile long               head;                       // next sequence to be delivered; written by the consumer only.
+  private final StripedCounter        dropped = new StripedCounter();
+
+  private final ReentrantLock                           lock      = new ReentrantLock();
+  private volatile CircuitBreakerEventListener[]        listeners = NO_LISTENERS; // copy-on-write, guarded by lock.
+
+  private volatile Thread   consumer;
+  private volatile boolean  parked;    // true while the consumer is (about to be) parked waiting for events.
+
+  /**
+   * builds an event bus with room for {@value #DEFAULT_CAPACITY} pending events.
+   */
+  public CircuitBreakerEventBus(){
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * @param capacity how many events may be pending delivery at once; rounded up to a power of two.
+   */
+  public CircuitBreakerEventBus(int capacity){
+    if(capacity < 2) throw new IllegalArgumentException("capacity must be at least 2");
+
+    final int size = Integer.highestOneBit(capacity - 1) << 1;
+    this.slots = new CircuitBreakerEvent[size];
+    for(int idx = 0; idx < size; idx++){
+      slots[idx] = new CircuitBreakerEvent();
+    }
+
+    this.mask              = size - 1;
+    this.samplingThreshold = size / 2;
+  }
+
+  /**
+   * @return the bus every breaker publishes to, unless built with a bus of its own.
+   */
+  public static CircuitBreakerEventBus getDefault(){
+    return Installer.INSTANCE;
+  }
+
+  /**
+   * registers a listener; registering it twice has no effect. The bus starts its consumer
+   * thread when the first listener is registered.
+   *
+   * @param listener
+   *    listener to be notified of every event published from now on.
+   */
+  public void subscribe(CircuitBreakerEventListener listener){
+    if(listener == null) throw new NullPointerException("listener");
+    if(isSubscribed(listener)) return;
+
+    lock.lock();
+    try {
+      if(isSubscribed(listener)) return;
+
+      final CircuitBreakerEventListener[] current = listeners;
+      final CircuitBreakerEventListener[] update  = Arrays.copyOf(current, current.length + 1);
+      update[current.length] = listener;
+
+      startConsumer();
+      listeners = update;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * unregisters a listener. Events already pending delivery may still reach it.
+   *
+   * @param listener
+   *    listener to be removed.
+   */
+  public void unsubscribe(CircuitBreakerEventListener listener){
+    lock.lock();
+    try {
+      final CircuitBreakerEventListener[] current = listeners;
+      for(int idx = 0; idx < current.length; idx++){
+        if(current[idx] != listener) continue;
+
+        final CircuitBreakerEventListener[] update = new CircuitBreakerEventListener[current.length - 1];
+        System.arraycopy(current, 0, update, 0, idx);
+        System.arraycopy(current, idx + 1, update, idx, current.length - idx - 1);
+        listeners = update;
+        return;
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @param listener listener to be checked.
+   * @return {@code true} if the listener is registered; {@code false} otherwise.
+   */
+  public boolean isSubscribed(CircuitBreakerEventListener listener){
+    for(CircuitBreakerEventListener each : listeners){
+      if(each == listener) return true;
+    }
+
+    return false;
+  }
+
+  /**
+   * @return {@code true} if someone is listening; i.e., if published events will be delivered.
+   */
+  public boolean hasListeners(){
+    return listeners.length > 0;
+  }
+
+  /**
+   * @return the number of events published but not yet delivered.
+   */
+  public long getPendingEvents(){
+    return Math.max(0L, tail.get() - head);
+  }
+
+  /**
+   * @return the number of events dropped or sampled out because listeners fell behind.
+   */
+  public long getDroppedEvents(){
+    return dropped.get();
+  }
+
+  /**
+   * publishes an event, unless nobody is listening or the buffer has no room for it. Never
+   * blocks, and never runs a listener.
+   */
+  void publish(CircuitBreakerEvent.Type type, CircuitBreaker<?> source,
+      CircuitBreakerStatus fromStatus, CircuitBreakerStatus toStatus, long elapsedTime,
+      Exception error){
+
+    if(listeners.length == 0) return;
+
+    long sequence;
+    do {
+      sequence = tail.get();
+      final long pending = sequence - head;
+      if(pending >= slots.length
+          || (pending >= samplingThreshold && isSampled(type) && sequence % SAMPLING_RATE != 0)){
+        dropped.increment();
+        return;
+      }
+    } while (!tail.compareAndSet(sequence, sequence + 1));
+
+    final CircuitBreakerEvent slot = slots[(int) sequence & mask];
+    slot.set(type, source, fromStatus, toStatus, elapsedTime, error, System.nanoTime());
+    slot.sequence = sequence; // publishes the event to the consumer.
+
+    if(parked){
+      LockSupport.unpark(consumer);
+    }
+  }
+
+  /**
+   * publishes an {@link CircuitBreakerEvent.Type#ERROR error} event.
+   *
+   * @param source the breaker that failed, or NULL if the failure is not about a breaker.
+   * @param error what failed.
+   */
+  void error(CircuitBreaker<?> source, Exception error){
+    publish(CircuitBreakerEvent.Type.ERROR, source, null, null, CircuitBreakerEvent.NO_ELAPSED_TIME, error);
+  }
+
+  private static boolean isSampled(CircuitBreakerEvent.Type type){
+    return type == CircuitBreakerEvent.Type.CALL_SUCCEEDED
+        || type == CircuitBreakerEvent.Type.CALL_REJECTED;
+  }
+
+  private void startConsumer(){
+    if(consumer != null) return;
+
+    final Thread thread = new Thread(new Runnable() {
+      @Override public void run() {
+        drain();
+      }
+    }, "circuit-breaker-events");
+    thread.setDaemon(true);
+    consumer = thread;
+    thread.start();
+  }
+
+  /**
+   * the consumer's loop: delivers every contiguous run of published events as one batch, then
+   * parks until a publisher signals that there is more.
+   */
+  private void drain(){
+    long next = head;
+    while (true){
+      long available = next;
+      while (slots[(int) available & mask].sequence == available){
+        available++;
+      }
+
+      if(available == next){
+        parked = true;
+        // re-checked after raising the flag; a publisher either sees the flag or is seen here.
+        if(slots[(int) next & mask].sequence != next){
+          LockSupport.park(this);
+        }
+        parked = false;
+        continue;
+      }
+
+      final CircuitBreakerEventListener[] current = listeners;
+      for(long sequence = next; sequence < available; sequence++){
+        final CircuitBreakerEvent event = slots[(int) sequence & mask];
+        deliver(current, event, sequence == available - 1);
+        event.clear();
+      }
+
+      next = available;
+      head = next;  // frees the delivered slots.
+    }
+  }
+
+  private void deliver(CircuitBreakerEventListener[] listeners, CircuitBreakerEvent event,
+      boolean endOfBatch){
+    for(CircuitBreakerEventListener each : listeners){
+      try {
+        each.onEvent(event, endOfBatch);
+      } catch (RuntimeException e){
+        // reporting a failure to handle a failure could go on forever.
+        if(event.getType() != CircuitBreakerEvent.Type.ERROR) error(null, e);
+      }
+    }
+  }
+
+  /**
+   * Lazy-constructed singleton, which is thread safe
+   */
+  static class Installer {
+    static final CircuitBreakerEventBus INSTANCE = new CircuitBreakerEventBus();
+  }
+}
@@ -0,0 +1,21 @@
+package edu.ucsc.cb;
+
+/**
+ * receives the events published to a {@link CircuitBreakerEventBus}. Listeners are called on
+ * the bus's own thread, never on the thread that made the call, and get the events in the
+ * order they were published, in batches.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public interface CircuitBreakerEventListener {
+  /**
+   * handles an event. The event is reused once this method returns.
+   *
+   * @param event
+   *    the event.
+   * @param endOfBatch
+   *    {@code true} if there are no more events pending delivery right now; e.g., a good
+   *    time to flush whatever the listener buffers.
+   */
+  void onEvent(CircuitBreakerEvent event, boolean endOfBatch);
+}
@@ -0,0 +1,24 @@
+package edu.ucsc.cb;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * writes the metrics of a set of breakers somewhere; e.g., in Prometheus' text format (see
+ * {@link PrometheusExporter}) or as JMX MBeans (see {@link JmxExporter}). Exporters are handed
+ * {@link CircuitBreakerSnapshot snapshots}, never the breakers themselves, so exporting never
+ * competes with the calls the breakers guard.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public interface CircuitBreakerExporter {
+  /**
+   * exports a set of breakers.
+   *
+   * @param snapshots
+   *    the snapshots of the breakers, sorted by name.
+   * @throws IOException
+   *    if the metrics could not be written.
+   */
+  void export(List<CircuitBreakerSnapshot> snapshots) throws IOException;
+}
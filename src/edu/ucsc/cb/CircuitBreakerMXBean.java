@@ -0,0 +1,47 @@
+package edu.ucsc.cb;
+
+/**
+ * the management interface of an exported breaker (see {@link JmxExporter}). Values come from
+ * the breaker's latest {@link CircuitBreakerSnapshot snapshot}; times are in nanoseconds.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public interface CircuitBreakerMXBean {
+  String getName();
+
+  String getStatus();
+
+  long getSuccessfulCalls();
+
+  long getFailedCalls();
+
+  long getRejectedCalls();
+
+  long getIgnoredCalls();
+
+  long getSlowCalls();
+
+  long getCacheHits();
+
+  long getCacheMisses();
+
+  long getInFlightCalls();
+
+  float getFailureRate();
+
+  long getMedianLatency();
+
+  long getP99Latency();
+
+  long getP999Latency();
+
+  long getAvgRecoveryTime();
+
+  long getTimeOpened();
+
+  long getTimeHalfOpened();
+
+  long getTimeClosed();
+
+  long getTransitions();
+}
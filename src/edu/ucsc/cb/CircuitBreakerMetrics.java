@@ -0,0 +1,192 @@
+package edu.ucsc.cb;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+
+/**
+ * the breakers whose metrics are exported, by name: breakers registered one by one, plus every
+ * breaker of the {@link CircuitBreakerRegistry registries} it was given (named after their keys,
+ * optionally prefixed).
+ *
+ * <p>
+ * Names are unique: a breaker registered one by one wins over a registry's breaker of the same
+ * name, and an earlier registry wins over a later one; the breakers that lose are not exported.
+ * Prefix a registry's keys when they may clash with other names.
+ * </p>
+ *
+ * <p>
+ * Exporters read {@link #snapshots() snapshots}, which are taken at most once per refresh
+ * interval, whatever the number of scrapes. Taking them reads every breaker's statistics
+ * without locking; the first thread to find the snapshots stale takes new ones, while any
+ * other keeps reading the current ones.
+ * </p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class CircuitBreakerMetrics {
+  private static final Comparator<CircuitBreakerSnapshot> BY_NAME = new Comparator<CircuitBreakerSnapshot>() {
+    @Override public int compare(CircuitBreakerSnapshot a, CircuitBreakerSnapshot b) {
+      return a.getName().compareTo(b.getName());
+    }
+  };
+
+  private final ConcurrentMap<String, CircuitBreaker<?>>  breakers   = new ConcurrentHashMap<String, CircuitBreaker<?>>();
+  private final List<Prefixed>                            registries = new CopyOnWriteArrayList<Prefixed>();
+
+  private final long                                      refreshInterval;
+  private final AtomicBoolean                             refreshing = new AtomicBoolean();
+  private volatile Snapshots                              snapshots;  // NULL until first taken.
+
+  /**
+   * builds a metrics source whose snapshots are at most one second old.
+   */
+  public CircuitBreakerMetrics(){
+    this(1, TimeUnit.SECONDS);
+  }
+
+  /**
+   * @param refreshInterval how old snapshots may get before they are taken again.
+   * @param unit the unit of the interval.
+   */
+  public CircuitBreakerMetrics(long refreshInterval, TimeUnit unit){
+    if(refreshInterval < 0) throw new IllegalArgumentException("refresh interval cannot be negative");
+    this.refreshInterval = unit.toNanos(refreshInterval);
+  }
+
+  /**
+   * @param name the breaker's name; it replaces any breaker registered under the same name.
+   * @param breaker the breaker.
+   */
+  public void register(String name, CircuitBreaker<?> breaker){
+    breakers.put(name, breaker);
+  }
+
+  /**
+   * @param registry registry whose breakers, present and future, are exported, named after
+   *    their keys.
+   */
+  public void register(CircuitBreakerRegistry<?, ?> registry){
+    register("", registry);
+  }
+
+  /**
+   * @param prefix what the name of each of the registry's breakers starts with; e.g.,
+   *    {@code "payments."}.
+   * @param registry registry whose breakers, present and future, are exported, named after
+   *    their keys.
+   */
+  public void register(String prefix, CircuitBreakerRegistry<?, ?> registry){
+    registries.add(new Prefixed(prefix, registry));
+  }
+
+  /**
+   * @param name the name of the breaker that is no longer exported.
+   */
+  public void unregister(String name){
+    breakers.remove(name);
+  }
+
+  /**
+   * @return the snapshots of every breaker, sorted by name; taken again if older than the
+   *    refresh interval.
+   */
+  public List<CircuitBreakerSnapshot> snapshots(){
+    return current().snapshots;
+  }
+
+  private Snapshots current(){
+    final Snapshots current = snapshots;
+    if(current != null && System.nanoTime() - current.timestamp < refreshInterval) return current;
+    if(!refreshing.compareAndSet(false, true)){
+      // another thread is taking them; only the very first ones are worth waiting for.
+      return current != null ? current : takeSnapshots();
+    }
+
+    try {
+      final Snapshots fresh = takeSnapshots();
+      snapshots = fresh;
+      return fresh;
+    } finally {
+      refreshing.set(false);
+    }
+  }
+
+  /**
+   * @param name the breaker's name.
+   * @return the breaker's latest snapshot, or NULL if it is no longer exported.
+   */
+  public CircuitBreakerSnapshot snapshot(String name){
+    return current().byName.get(name);
+  }
+
+  /**
+   * hands the latest snapshots over to an exporter.
+   *
+   * @param exporter exporter.
+   * @throws IOException if the exporter could not write the metrics.
+   */
+  public void export(CircuitBreakerExporter exporter) throws IOException {
+    exporter.export(snapshots());
+  }
+
+  private Snapshots takeSnapshots(){
+    final List<CircuitBreakerSnapshot> taken = new ArrayList<CircuitBreakerSnapshot>();
+    final Set<String>                  names = new HashSet<String>();
+    for(Map.Entry<String, CircuitBreaker<?>> each : breakers.entrySet()){
+      names.add(each.getKey());
+      taken.add(new CircuitBreakerSnapshot(each.getKey(), each.getValue()));
+    }
+
+    for(final Prefixed each : registries){
+      each.registry.forEach(new BiConsumer<Object, CircuitBreaker<?>>() {
+        @Override public void accept(Object key, CircuitBreaker<?> breaker) {
+          final String name = each.prefix + key;
+          if(names.add(name)) taken.add(new CircuitBreakerSnapshot(name, breaker));
+        }
+      });
+    }
+
+    Collections.sort(taken, BY_NAME);
+    return new Snapshots(taken, System.nanoTime());
+  }
+
+  private static final class Prefixed {
+    final String                        prefix;
+    final CircuitBreakerRegistry<?, ?>  registry;
+
+    Prefixed(String prefix, CircuitBreakerRegistry<?, ?> registry){
+      this.prefix   = prefix;
+      this.registry = registry;
+    }
+  }
+
+  private static final class Snapshots {
+    final List<CircuitBreakerSnapshot>        snapshots;
+    final Map<String, CircuitBreakerSnapshot> byName;
+    final long                                timestamp;
+
+    Snapshots(List<CircuitBreakerSnapshot> snapshots, long timestamp){
+      final Map<String, CircuitBreakerSnapshot> byName = new HashMap<String, CircuitBreakerSnapshot>();
+      for(CircuitBreakerSnapshot each : snapshots){
+        byName.put(each.getName(), each);
+      }
+
+      this.snapshots  = Collections.unmodifiableList(snapshots);
+      this.byName     = byName;
+      this.timestamp  = timestamp;
+    }
+  }
+}
@@ -0,0 +1,179 @@
+package edu.ucsc.cb;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * a set of named breakers; e.g., one per downstream host and endpoint, or one per tenant.
+ * Breakers are created the first time their key is looked up, with the registry's default
+ * settings unless the key was given its own (see {@link #configure(Object, CircuitBreakerConfig)}).
+ *
+ * <p>
+ * Looking up an existing key is a plain {@link ConcurrentHashMap#get(Object)}; it neither locks
+ * nor allocates. If the registry has an idle timeout, CLOSED breakers that have not been looked
+ * up for that long are dropped, so keys of high cardinality do not pile up forever.
+ * </p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class CircuitBreakerRegistry<K, E extends Exception> {
+  private static final long MAX_TOUCH_GRANULARITY = TimeUnit.SECONDS.toNanos(1);
+  private static final long NO_IDLE_TIMEOUT       = 0L;
+
+  private final ConcurrentMap<K, Entry<E>>                  breakers  = new ConcurrentHashMap<K, Entry<E>>();
+  private final ConcurrentMap<K, CircuitBreakerConfig>      overrides = new ConcurrentHashMap<K, CircuitBreakerConfig>();
+  private final AtomicLong                                  lastSweep = new AtomicLong(System.nanoTime());
+
+  private final CircuitBreakerConfig  defaults;
+  private final long                  idleTimeout;
+  private final long                  touchGranularity; // how stale a lookup time may get.
+  private final Function<K, Entry<E>> factory;
+
+  /**
+   * @param defaults the settings of breakers whose key has none of its own.
+   * @param idleTimeout how long (in nanoseconds) a CLOSED breaker may go without being looked up
+   *    before it is dropped; zero means breakers are never dropped.
+   */
+  public CircuitBreakerRegistry(CircuitBreakerConfig defaults, long idleTimeout){
+    if(idleTimeout < 0) throw new IllegalArgumentException("idle timeout cannot be negative");
+
+    this.defaults         = defaults;
+    this.idleTimeout      = idleTimeout;
+    // well within the idle timeout, so that a breaker in use never looks idle.
+    this.touchGranularity = Math.min(MAX_TOUCH_GRANULARITY, idleTimeout / 2);
+    this.factory          = new Function<K, Entry<E>>() {
+      @Override public Entry<E> apply(K key) {
+        return new Entry<E>(newCircuitBreaker(key, getConfig(key)), System.nanoTime());
+      }
+    };
+  }
+
+  public CircuitBreakerRegistry(CircuitBreakerConfig defaults){
+    this(defaults, NO_IDLE_TIMEOUT);
+  }
+
+  /**
+   * @param key the breaker's key.
+   * @return the key's breaker, created on the spot if there was none.
+   */
+  public CircuitBreaker<E> get(K key){
+    Entry<E> entry = breakers.get(key);
+    if(entry == null){
+      evictIdle(false);
+      entry = breakers.computeIfAbsent(key, factory);
+    } else if(idleTimeout != NO_IDLE_TIMEOUT){
+      entry.touch(System.nanoTime(), touchGranularity);
+    }
+
+    return entry.breaker;
+  }
+
+  /**
+   * @param key the breaker's key.
+   * @return the key's breaker, or {@code null} if it has none (yet).
+   */
+  public CircuitBreaker<E> find(K key){
+    final Entry<E> entry = breakers.get(key);
+    return entry == null ? null : entry.breaker;
+  }
+
+  /**
+   * gives a key its own settings. If the key already has a breaker, it is dropped, so that the
+   * next lookup gets one with the new settings.
+   *
+   * @param key the breaker's key.
+   * @param config the key's settings.
+   */
+  public void configure(K key, CircuitBreakerConfig config){
+    overrides.put(key, config);
+    breakers.remove(key);
+  }
+
+  /**
+   * @param key the breaker's key.
+   * @return the settings of the key's breaker.
+   */
+  public CircuitBreakerConfig getConfig(K key){
+    final CircuitBreakerConfig config = overrides.get(key);
+    return config == null ? defaults : config;
+  }
+
+  /**
+   * creates the breaker of a given key. Subclasses may override it to build other kinds of breakers.
+   *
+   * @param key the breaker's key.
+   * @param config the key's settings.
+   * @return a new breaker.
+   */
+  protected CircuitBreaker<E> newCircuitBreaker(K key, CircuitBreakerConfig config){
+    return new DefaultCircuitBreaker<E>(config);
+  }
+
+  /**
+   * visits every breaker in the registry; e.g., to export their metrics. Breakers created or
+   * dropped while iterating may or may not be visited.
+   *
+   * @param visitor the visitor.
+   */
+  public void forEach(BiConsumer<? super K, ? super CircuitBreaker<E>> visitor){
+    for(Map.Entry<K, Entry<E>> each : breakers.entrySet()){
+      visitor.accept(each.getKey(), each.getValue().breaker);
+    }
+  }
+
+  /**
+   * @return the number of breakers in the registry.
+   */
+  public int size(){
+    return breakers.size();
+  }
+
+  /**
+   * drops the CLOSED breakers that have been idle for longer than the registry's idle timeout.
+   * It runs on its own every time a new breaker is created, at most once per half an idle timeout.
+   */
+  public void evictIdle(){
+    evictIdle(true);
+  }
+
+  private void evictIdle(boolean force){
+    if(idleTimeout == NO_IDLE_TIMEOUT) return;
+
+    final long now   = System.nanoTime();
+    final long last  = lastSweep.get();
+    if(!force && (now - last < idleTimeout / 2 || !lastSweep.compareAndSet(last, now))) return;
+
+    for(Map.Entry<K, Entry<E>> each : breakers.entrySet()){
+      final Entry<E> entry = each.getValue();
+      if(now - entry.lastAccess > idleTimeout
+          && entry.breaker.status() == CircuitBreakerStatus.CLOSED){
+        breakers.remove(each.getKey(), entry);
+      }
+    }
+  }
+
+  /**
+   * a breaker plus the last time it was looked up.
+   */
+  private static class Entry<E extends Exception> {
+    final CircuitBreaker<E> breaker;
+    volatile long           lastAccess;
+
+    Entry(CircuitBreaker<E> breaker, long lastAccess){
+      this.breaker    = breaker;
+      this.lastAccess = lastAccess;
+    }
+
+    void touch(long now, long granularity){
+      // a coarse timestamp is good enough to find idle breakers and saves most of the writes.
+      if(now - lastAccess > granularity){
+        lastAccess = now;
+      }
+    }
+  }
+}
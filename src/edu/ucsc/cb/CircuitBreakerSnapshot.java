@@ -0,0 +1,181 @@
+package edu.ucsc.cb;
+
+/**
+ * an immutable copy of a named breaker's status and {@link CircuitBreakerStatistics statistics},
+ * taken at once so that exporters can read it as many times as they need without touching the
+ * breaker again.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public final class CircuitBreakerSnapshot {
+  private static final CircuitBreakerStatus[] STATUSES = CircuitBreakerStatus.values();
+
+  private final String                name;
+  private final CircuitBreakerStatus  status;
+  private final long                  successfulCalls;
+  private final long                  failedCalls;
+  private final long                  rejectedCalls;
+  private final long                  ignoredCalls;
+  private final long                  slowCalls;
+  private final long                  cacheHits;
+  private final long                  cacheMisses;
+  private final long                  inFlightCalls;
+  private final float                 failureRate;
+  private final long                  medianLatency;
+  private final long                  p99Latency;
+  private final long                  p999Latency;
+  private final long                  timedCalls;
+  private final long                  totalLatency;
+  private final long                  avgRecoveryTime;
+  private final long[]                timeInStatus = new long[STATUSES.length];
+  private final long[]                transitions  = new long[STATUSES.length];
+  private final long                  timestamp;
+
+  /**
+   * takes a snapshot of a breaker.
+   *
+   * @param name the breaker's name.
+   * @param breaker the breaker.
+   */
+  public CircuitBreakerSnapshot(String name, CircuitBreaker<?> breaker){
+    final CircuitBreakerStatistics statistics = breaker.getStatistics();
+
+    this.name             = name;
+    this.status           = breaker.status();
+    this.successfulCalls  = statistics.getSuccessfulCalls();
+    this.failedCalls      = statistics.getFailedCalls();
+    this.rejectedCalls    = statistics.getRejectedCalls();
+    this.ignoredCalls     = statistics.getIgnoredCalls();
+    this.slowCalls        = statistics.getSlowCalls();
+    this.cacheHits        = statistics.getCacheHits();
+    this.cacheMisses      = statistics.getCacheMisses();
+    this.inFlightCalls    = statistics.getInFlightCalls();
+    this.failureRate      = statistics.getFailureRate();
+    this.medianLatency    = statistics.getLatency(50);
+    this.p99Latency       = statistics.getLatency(99);
+    this.p999Latency      = statistics.getLatency(99.9);
+    this.timedCalls       = statistics.getTimedCalls();
+    this.totalLatency     = statistics.getTotalLatency();
+    this.avgRecoveryTime  = statistics.getAvgRecoveryTime();
+    for(CircuitBreakerStatus each : STATUSES){
+      timeInStatus[each.ordinal()] = statistics.getTimeInStatus(each);
+      transitions[each.ordinal()]  = statistics.getTransitions(each);
+    }
+
+    this.timestamp        = System.nanoTime();
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public CircuitBreakerStatus getStatus() {
+    return status;
+  }
+
+  public long getSuccessfulCalls() {
+    return successfulCalls;
+  }
+
+  public long getFailedCalls() {
+    return failedCalls;
+  }
+
+  public long getRejectedCalls() {
+    return rejectedCalls;
+  }
+
+  public long getIgnoredCalls() {
+    return ignoredCalls;
+  }
+
+  public long getSlowCalls() {
+    return slowCalls;
+  }
+
+  public long getCacheHits() {
+    return cacheHits;
+  }
+
+  public long getCacheMisses() {
+    return cacheMisses;
+  }
+
+  public long getInFlightCalls() {
+    return inFlightCalls;
+  }
+
+  /**
+   * @see CircuitBreakerStatistics#getFailureRate()
+   */
+  public float getFailureRate() {
+    return failureRate;
+  }
+
+  /**
+   * @return the p50 latency in nanoseconds, or {@code -1} if no timed call has completed yet.
+   */
+  public long getMedianLatency() {
+    return medianLatency;
+  }
+
+  /**
+   * @return the p99 latency in nanoseconds, or {@code -1} if no timed call has completed yet.
+   */
+  public long getP99Latency() {
+    return p99Latency;
+  }
+
+  /**
+   * @return the p999 latency in nanoseconds, or {@code -1} if no timed call has completed yet.
+   */
+  public long getP999Latency() {
+    return p999Latency;
+  }
+
+  /**
+   * @see CircuitBreakerStatistics#getTimedCalls()
+   */
+  public long getTimedCalls() {
+    return timedCalls;
+  }
+
+  /**
+   * @see CircuitBreakerStatistics#getTotalLatency()
+   */
+  public long getTotalLatency() {
+    return totalLatency;
+  }
+
+  /**
+   * @see CircuitBreakerStatistics#getAvgRecoveryTime()
+   */
+  public long getAvgRecoveryTime() {
+    return avgRecoveryTime;
+  }
+
+  /**
+   * @see CircuitBreakerStatistics#getTimeInStatus(CircuitBreakerStatus)
+   */
+  public long getTimeInStatus(CircuitBreakerStatus status) {
+    return timeInStatus[status.ordinal()];
+  }
+
+  /**
+   * @see CircuitBreakerStatistics#getTransitions(CircuitBreakerStatus)
+   */
+  public long getTransitions(CircuitBreakerStatus status) {
+    return transitions[status.ordinal()];
+  }
+
+  /**
+   * @return when the snapshot was taken, as given by {@link System#nanoTime()}.
+   */
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  @Override public String toString() {
+    return name + " (" + status + ")";
+  }
+}
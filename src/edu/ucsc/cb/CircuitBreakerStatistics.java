@@ -1,14 +1,96 @@
 package edu.ucsc.cb;
 
 /**
- * It holds basic statistics of the circuit breaker's execution.
+ * It holds the statistics of the circuit breaker's execution. Every value is read when its
+ * method is called, without stopping the threads that update it; hence, values read one after
+ * the other may not add up exactly while calls are in flight.
  *
  * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
  */
 public interface CircuitBreakerStatistics {
   /**
    * @return
-   *    the avg time in which the circuit breaker resets itself.
+   *    the avg time, in nanoseconds, the circuit breaker took to close again once opened,
+   *    or {@code -1} if it has not recovered yet.
    */
   long getAvgRecoveryTime();
+
+  /**
+   * @return the number of calls that succeeded.
+   */
+  long getSuccessfulCalls();
+
+  /**
+   * @return the number of calls that failed.
+   */
+  long getFailedCalls();
+
+  /**
+   * @return the number of calls that were not permitted.
+   */
+  long getRejectedCalls();
+
+  /**
+   * @return the number of calls whose failure was ignored (see {@link ExceptionClassifier}).
+   */
+  long getIgnoredCalls();
+
+  /**
+   * @return the number of calls that took longer than the slow call threshold.
+   */
+  long getSlowCalls();
+
+  /**
+   * @return the number of calls that went thru and have not completed yet. Calls are tracked
+   *    by whatever guards them (e.g., {@link CircuitBreakers#circuitBreak} or a
+   *    {@link Decorators decorated} call), never by the breaker itself, so letting a call thru
+   *    stays free of writes; calls reported thru the breaker's own methods are not tracked.
+   *    A limiter tracks every call it lets thru.
+   */
+  long getInFlightCalls();
+
+  /**
+   * @return the number of failed or rejected calls answered from a {@link LastKnownGoodCache}.
+   */
+  long getCacheHits();
+
+  /**
+   * @return the number of failed or rejected calls a {@link LastKnownGoodCache} had no result for.
+   */
+  long getCacheMisses();
+
+  /**
+   * @return the percentage of completed calls that failed, or {@code -1} if no call has
+   *    completed yet.
+   */
+  float getFailureRate();
+
+  /**
+   * @param percentile a percentage in {@code (0, 100]}; e.g., 50, 99 or 99.9.
+   * @return the latency, in nanoseconds, under which the given percentage of timed calls
+   *    completed, or {@code -1} if no timed call has completed yet.
+   */
+  long getLatency(double percentile);
+
+  /**
+   * @return the number of timed calls that completed.
+   */
+  long getTimedCalls();
+
+  /**
+   * @return the overall time, in nanoseconds, timed calls took to complete.
+   */
+  long getTotalLatency();
+
+  /**
+   * @param status a breaker status.
+   * @return the overall time, in nanoseconds, the breaker has spent in the given status.
+   */
+  long getTimeInStatus(CircuitBreakerStatus status);
+
+  /**
+   * @param status a breaker status.
+   * @return the number of times the breaker moved to the given status.
+   */
+  long getTransitions(CircuitBreakerStatus status);
 }
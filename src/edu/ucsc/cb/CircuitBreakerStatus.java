@@ -17,9 +17,9 @@ public enum CircuitBreakerStatus {
   CLOSED,
 
   /**
-   * after certain time has passed, the {@link CircuitBreaker breaker} is willing to let one
-   * call go. If it fails, then the {@link CircuitBreaker breaker} will not allow any calls
-   * to go through (i.e., {@link #OPENED}).
+   * after certain time has passed, the {@link CircuitBreaker breaker} is willing to let a bounded
+   * number of trial calls go (one, by default). If any of them fails, then the
+   * {@link CircuitBreaker breaker} will not allow any calls to go through (i.e., {@link #OPENED}).
    */
   HALF_OPENED
 }
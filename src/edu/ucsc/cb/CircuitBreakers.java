@@ -1,6 +1,19 @@
 package edu.ucsc.cb;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * A set of convenient utility methods for using the Circuit Breaker library.
@@ -18,22 +31,529 @@ public class CircuitBreakers {
     return CircuitBreakers.<T, RuntimeException>circuitBreak(block, message, breaker);
   }
 
+  /**
+   * guards a call with a breaker. Failures are no longer printed from the calling thread;
+   * they reach whoever subscribed to the breaker's events (see {@link CircuitBreakerEventBus}).
+   *
+   * @param message description of the call; kept for compatibility.
+   */
   public static <T, E extends Exception> T circuitBreak(Callable<T> block, String message,
       CircuitBreaker<E> breaker) throws E {
-    breaker.callStarted();
+    final long permit    = breaker.callPermitted();
+    final long startTime = System.nanoTime();
+    CallStatistics.entered(breaker);
     try {
       final T result = block.call();
-      breaker.callSucceeded();
+      breaker.callSucceeded(permit, System.nanoTime() - startTime);
       return result;
     } catch (Exception cause) {
-      System.err.println(message);
       @SuppressWarnings({"RedundantTypeArguments"})
       final E exception = Exceptions.<E>castException(cause);
-      breaker.callFailed(exception);
+      breaker.callFailed(permit, exception, System.nanoTime() - startTime);
       throw exception;
+    } catch (Throwable error) {
+      breaker.callCancelled(permit); // says nothing about the dependency, but gives the permit back.
+      throw error;
+    } finally {
+      CallStatistics.exited(breaker);
+    }
+  }
+
+  public static <T> T safeguard(Callable<T> block, String message,
+      CircuitBreaker<RuntimeException> breaker, Bulkhead bulkhead){
+    //noinspection RedundantTypeArguments
+    return CircuitBreakers.<T, RuntimeException>circuitBreak(block, message, breaker, bulkhead);
+  }
+
+  /**
+   * guards a call with both a bulkhead and a breaker. The bulkhead's permit is taken first
+   * (so a full bulkhead turns calls down without touching the breaker) and given back once
+   * the call is over, whatever its outcome.
+   *
+   * @throws BulkheadFullException if the bulkhead has no room for the call.
+   */
+  public static <T, E extends Exception> T circuitBreak(Callable<T> block, String message,
+      CircuitBreaker<E> breaker, Bulkhead bulkhead) throws E {
+    bulkhead.acquire();
+    try {
+      return circuitBreak(block, message, breaker);
+    } finally {
+      bulkhead.release();
+    }
+  }
+
+  public static <T> T safeguard(Callable<T> block, CircuitBreaker<RuntimeException> breaker,
+      long timeout, TimeUnit unit){
+    //noinspection RedundantTypeArguments
+    return CircuitBreakers.<T, RuntimeException>circuitBreak(block, breaker, timeout, unit);
+  }
+
+  /**
+   * guards a call with a breaker, and gives up on it (counting it as failed) if it does not
+   * complete in time. The call runs on a thread of its own: a virtual one on runtimes that have
+   * them, a pooled platform one otherwise. The calling thread waits without holding any monitor,
+   * so a virtual caller never pins its carrier. The call is interrupted when it times out.
+   *
+   * @param block the call.
+   * @param breaker the breaker guarding the call.
+   * @param timeout how long the call may take.
+   * @param unit the timeout's unit.
+   * @return the call's result.
+   * @throws E the call's failure; a {@link TimeoutException} if it did not complete in time.
+   */
+  public static <T, E extends Exception> T circuitBreak(Callable<T> block, CircuitBreaker<E> breaker,
+      long timeout, TimeUnit unit) throws E {
+    return circuitBreak(block, breaker, timeout, unit, CallExecutor.get());
+  }
+
+  /**
+   * same as {@link #circuitBreak(Callable, CircuitBreaker, long, TimeUnit)}, but the call runs on
+   * the given executor.
+   */
+  public static <T, E extends Exception> T circuitBreak(Callable<T> block, CircuitBreaker<E> breaker,
+      long timeout, TimeUnit unit, ExecutorService executor) throws E {
+    final long permit    = breaker.callPermitted();
+    final long startTime = System.nanoTime();
+    CallStatistics.entered(breaker);
+    try {
+      final T result = callWithin(block, timeout, unit, executor);
+      breaker.callSucceeded(permit, System.nanoTime() - startTime);
+      return result;
+    } catch (Exception cause) {
+      //noinspection RedundantTypeArguments
+      final E exception = Exceptions.<E>castException(cause);
+      breaker.callFailed(permit, exception, System.nanoTime() - startTime);
+      throw exception;
+    } catch (Throwable error) {
+      breaker.callCancelled(permit); // says nothing about the dependency, but gives the permit back.
+      throw error;
+    } finally {
+      CallStatistics.exited(breaker);
+    }
+  }
+
+  /**
+   * runs a call on the given executor, and waits for up to {@code timeout} for it to complete.
+   * The call is interrupted if it does not complete in time.
+   *
+   * @throws Exception the call's own failure (never wrapped); a {@link TimeoutException} if it
+   *    did not complete in time.
+   */
+  static <T> T callWithin(Callable<T> block, long timeout, TimeUnit unit,
+      ExecutorService executor) throws Exception {
+    Future<T> future = null;
+    Exception failure;
+    try {
+      future = executor.submit(block);
+      return future.get(timeout, unit);
+    } catch (ExecutionException e) {
+      failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      failure = e;
+    } catch (Exception e) {
+      // TimeoutException, or RejectedExecutionException if the executor is shut down.
+      failure = e;
+    }
+
+    if (future != null) {
+      future.cancel(true);
+    }
+
+    throw failure;
+  }
+
+  public static <T> T safeguard(Callable<T> block, String message,
+      CircuitBreaker<RuntimeException> breaker, RateLimiter rateLimiter){
+    //noinspection RedundantTypeArguments
+    return CircuitBreakers.<T, RuntimeException>circuitBreak(block, message, breaker, rateLimiter);
+  }
+
+  /**
+   * guards a call with both a rate limiter and a breaker. The limiter's permit is taken first,
+   * so calls over the rate are turned down without touching the breaker (nor counting against
+   * the dependency's health).
+   *
+   * @throws RateLimitExceededException if the call would exceed the limiter's rate.
+   */
+  public static <T, E extends Exception> T circuitBreak(Callable<T> block, String message,
+      CircuitBreaker<E> breaker, RateLimiter rateLimiter) throws E {
+    rateLimiter.acquire();
+    return circuitBreak(block, message, breaker);
+  }
+
+  /**
+   * guards a call with a breaker and falls back to a default whenever the call fails or the
+   * breaker turns it down. Failures still count as such.
+   *
+   * @param block the call.
+   * @param breaker the breaker guarding the call.
+   * @param fallback gets the failure (or the breaker's rejection) and returns the default.
+   * @return the call's result, or the fallback's.
+   */
+  public static <T, E extends Exception> T circuitBreak(Callable<T> block, CircuitBreaker<E> breaker,
+      Function<? super Exception, ? extends T> fallback) {
+    try {
+      return circuitBreak(block, null, breaker);
+    } catch (Exception error) {
+      return fallback.apply(error);
+    }
+  }
+
+  /**
+   * guards a call with a breaker, and keeps its last good result. Whenever the call fails or the
+   * breaker turns it down, the result the call last returned for the same key (if cached and
+   * not expired) is handed out instead; otherwise, the fallback's, if any. Cache hits and misses
+   * are counted in the breaker's {@link CircuitBreakerStatistics statistics}.
+   *
+   * @param key the call's arguments.
+   * @param block the call.
+   * @param breaker the breaker guarding the call.
+   * @param cache the last good results of the call.
+   * @param fallback gets the failure (or the breaker's rejection) and returns the default;
+   *    NULL if the failure must be rethrown when there is no result to hand out.
+   * @return the call's result, its last good one, or the fallback's.
+   */
+  public static <K, T, E extends Exception> T circuitBreak(K key, Callable<T> block,
+      CircuitBreaker<E> breaker, LastKnownGoodCache<? super K, T> cache,
+      Function<? super Exception, ? extends T> fallback) throws E {
+    try {
+      final T result = circuitBreak(block, null, breaker);
+      cache.put(key, result);
+      return result;
+    } catch (Exception error) {
+      final T cached = cache.get(key);
+      recordCacheLookup(breaker, cached != null);
+      if(cached != null) return cached;
+      if(fallback != null) return fallback.apply(error);
+
+      //noinspection RedundantTypeArguments
+      throw Exceptions.<E>castException(error);
+    }
+  }
+
+  private static void recordCacheLookup(CircuitBreaker<?> breaker, boolean hit){
+    final CircuitBreakerStatistics statistics = breaker.getStatistics();
+    if(!(statistics instanceof CallStatistics)) return;
+
+    if(hit){
+      ((CallStatistics) statistics).cacheHit();
+    } else {
+      ((CallStatistics) statistics).cacheMissed();
+    }
+  }
+
+  /**
+   * guards an asynchronous call. The outcome is recorded by whichever thread completes the
+   * call's stage; nothing blocks and no other thread is involved.
+   *
+   * @param block the asynchronous call.
+   * @param breaker the breaker guarding the call.
+   * @return a future completed with the call's outcome, or an already failed future (with
+   *    the breaker's rejection as cause) if the breaker is not taking new calls.
+   */
+  public static <T> CompletableFuture<T> safeguardAsync(Supplier<? extends CompletionStage<T>> block,
+      CircuitBreaker<RuntimeException> breaker){
+    //noinspection RedundantTypeArguments
+    return CircuitBreakers.<T, RuntimeException>circuitBreakAsync(block, breaker);
+  }
+
+  /**
+   * same as {@link #safeguardAsync(Supplier, CircuitBreaker)}, but the call fails (and counts as
+   * failed) with a {@link TimeoutException} if it does not complete within the given timeout.
+   */
+  public static <T> CompletableFuture<T> safeguardAsync(Supplier<? extends CompletionStage<T>> block,
+      CircuitBreaker<RuntimeException> breaker, long timeout, TimeUnit unit){
+    //noinspection RedundantTypeArguments
+    return CircuitBreakers.<T, RuntimeException>circuitBreakAsync(block, breaker, timeout, unit);
+  }
+
+  /**
+   * guards an asynchronous call. The outcome is recorded by whichever thread completes the
+   * call's stage; nothing blocks and no other thread is involved.
+   *
+   * @param block the asynchronous call.
+   * @param breaker the breaker guarding the call.
+   * @return a future completed with the call's outcome, or an already failed future (with
+   *    the breaker's rejection as cause) if the breaker is not taking new calls.
+   */
+  public static <T, E extends Exception> CompletableFuture<T> circuitBreakAsync(
+      Supplier<? extends CompletionStage<T>> block, CircuitBreaker<E> breaker) {
+    return circuitBreakAsync(block, breaker, 0L, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * same as {@link #circuitBreakAsync(Supplier, CircuitBreaker)}, but the call fails (and counts
+   * as failed) with a {@link TimeoutException} if it does not complete within the given timeout.
+   * Timeouts of every breaker share one scheduler thread; if the call's stage is a
+   * {@link Future}, it is cancelled when it times out. Blocking calls are timed out by
+   * {@link #circuitBreak(Callable, CircuitBreaker, long, TimeUnit)}.
+   *
+   * @param block the asynchronous call.
+   * @param breaker the breaker guarding the call.
+   * @param timeout how long the call may take; zero or less means no timeout.
+   * @param unit the timeout's unit.
+   * @return a future completed with the call's outcome, or an already failed future (with
+   *    the breaker's rejection as cause) if the breaker is not taking new calls.
+   */
+  public static <T, E extends Exception> CompletableFuture<T> circuitBreakAsync(
+      Supplier<? extends CompletionStage<T>> block, final CircuitBreaker<E> breaker,
+      final long timeout, final TimeUnit unit) {
+    final CompletableFuture<T> result = new CompletableFuture<T>();
+    final long permit;
+    try {
+      permit = breaker.callPermitted();
+    } catch (Exception rejected) {
+      result.completeExceptionally(rejected);
+      return result;
+    }
+
+    final long startTime = System.nanoTime();
+    final CompletionStage<T> stage;
+    CallStatistics.entered(breaker);
+    try {
+      stage = block.get();
+    } catch (RuntimeException cause) {
+      CallStatistics.exited(breaker);
+      //noinspection RedundantTypeArguments
+      breaker.callFailed(permit, Exceptions.<E>castException(cause), System.nanoTime() - startTime);
+      result.completeExceptionally(cause);
+      return result;
+    } catch (Throwable error) {
+      CallStatistics.exited(breaker);
+      breaker.callCancelled(permit); // says nothing about the dependency, but gives the permit back.
+      throw error;
+    }
+
+    final ScheduledFuture<?> timer = timeout <= 0 ? null : SharedScheduler.get().schedule(new Runnable() {
+      @Override public void run() {
+        final TimeoutException cause = new TimeoutException(
+            "Call did not complete within " + timeout + " " + unit);
+        if (result.completeExceptionally(cause)) {
+          CallStatistics.exited(breaker);
+          //noinspection RedundantTypeArguments
+          breaker.callFailed(permit, Exceptions.<E>castException(cause), System.nanoTime() - startTime);
+          if (stage instanceof Future) {
+            ((Future<?>) stage).cancel(true);
+          }
+        }
+      }
+    }, timeout, unit);
+
+    stage.whenComplete(new BiConsumer<T, Throwable>() {
+      @Override public void accept(T value, Throwable error) {
+        final long elapsedTime = System.nanoTime() - startTime;
+        if (timer != null) {
+          timer.cancel(false);
+        }
+
+        // whoever completes the result (this call or its timeout) records the outcome.
+        if (error == null) {
+          if (result.complete(value)) {
+            CallStatistics.exited(breaker);
+            breaker.callSucceeded(permit, elapsedTime);
+          }
+        } else {
+          final Throwable cause = unwrap(error);
+          if (result.completeExceptionally(cause)) {
+            CallStatistics.exited(breaker);
+            //noinspection RedundantTypeArguments
+            breaker.callFailed(permit, Exceptions.<E>castException(
+                cause instanceof Exception ? (Exception) cause : new ExecutionException(cause)), elapsedTime);
+          }
+        }
+      }
+    });
+
+    return result;
+  }
+
+  public static <T> T safeguard(Callable<T> block, CircuitBreaker<RuntimeException> breaker,
+      RetryPolicy policy){
+    //noinspection RedundantTypeArguments
+    return CircuitBreakers.<T, RuntimeException>retry(block, breaker, policy);
+  }
+
+  /**
+   * guards a call with a breaker, and makes it again while it fails, as the policy says. Retries
+   * stop as soon as the breaker opens (or turns an attempt down), and whenever the policy's
+   * budget is spent. The calling thread waits out the backoffs; it stops retrying if it is
+   * interrupted while waiting, leaving its interrupt status set.
+   *
+   * @param block the call.
+   * @param breaker the breaker guarding every attempt.
+   * @param policy the retry policy.
+   * @return the result of the first attempt that succeeded.
+   * @throws E the failure of the last attempt made.
+   */
+  public static <T, E extends Exception> T retry(Callable<T> block, CircuitBreaker<E> breaker,
+      RetryPolicy policy) throws E {
+    policy.callStarted();
+
+    long backoff = 0L;
+    for(int attempt = 1; ; attempt++){
+      try {
+        return circuitBreak(block, null, breaker);
+      } catch (Exception error) {
+        if(!policy.shouldRetry(attempt, error, breaker)) {
+          //noinspection RedundantTypeArguments
+          throw Exceptions.<E>castException(error);
+        }
+
+        backoff = policy.backoff(attempt, backoff);
+        if(!backOff(backoff)){
+          //noinspection RedundantTypeArguments
+          throw Exceptions.<E>castException(error);
+        }
+      }
     }
   }
 
+  /**
+   * @return {@code false} if the thread was interrupted while backing off.
+   */
+  static boolean backOff(long backoff){
+    final long deadline = System.nanoTime() + backoff;
+    for(long remaining = backoff; remaining > 0; remaining = deadline - System.nanoTime()){
+      LockSupport.parkNanos(remaining);
+      if(Thread.currentThread().isInterrupted()) return false;
+    }
+
+    return true;
+  }
+
+  public static <T> CompletableFuture<T> safeguardAsync(Supplier<? extends CompletionStage<T>> block,
+      CircuitBreaker<RuntimeException> breaker, RetryPolicy policy){
+    //noinspection RedundantTypeArguments
+    return CircuitBreakers.<T, RuntimeException>retryAsync(block, breaker, policy);
+  }
+
+  /**
+   * same as {@link #retry(Callable, CircuitBreaker, RetryPolicy)}, but for asynchronous calls.
+   * Backoffs are waited out on the scheduler every breaker shares, so no thread is parked
+   * between attempts; the scheduler only wakes the retry up, and hands it to the
+   * {@link CallExecutor call executor}, so the call itself never runs on the scheduler's thread.
+   * Cancelling the returned future stops the retries.
+   *
+   * @param block the asynchronous call; invoked once per attempt.
+   * @param breaker the breaker guarding every attempt.
+   * @param policy the retry policy.
+   * @return a future completed with the result of the first attempt that succeeded, or with the
+   *    failure of the last attempt made.
+   */
+  public static <T, E extends Exception> CompletableFuture<T> retryAsync(
+      Supplier<? extends CompletionStage<T>> block, CircuitBreaker<E> breaker, RetryPolicy policy) {
+    final CompletableFuture<T> result = new CompletableFuture<T>();
+    policy.callStarted();
+    attemptAsync(block, breaker, policy, result, 1, 0L);
+    return result;
+  }
+
+  private static <T, E extends Exception> void attemptAsync(
+      final Supplier<? extends CompletionStage<T>> block, final CircuitBreaker<E> breaker,
+      final RetryPolicy policy, final CompletableFuture<T> result, final int attempt,
+      final long previousBackoff) {
+
+    if(result.isDone()) return; // cancelled.
+
+    circuitBreakAsync(block, breaker).whenComplete(new BiConsumer<T, Throwable>() {
+      @Override public void accept(T value, Throwable error) {
+        if (error == null) {
+          result.complete(value);
+          return;
+        }
+
+        final Throwable cause = unwrap(error);
+        if (!(cause instanceof Exception) || !policy.shouldRetry(attempt, (Exception) cause, breaker)) {
+          result.completeExceptionally(cause);
+          return;
+        }
+
+        final long backoff = policy.backoff(attempt, previousBackoff);
+        final Runnable retry = new Runnable() {
+          @Override public void run() {
+            attemptAsync(block, breaker, policy, result, attempt + 1, backoff);
+          }
+        };
+
+        SharedScheduler.get().schedule(new Runnable() {
+          @Override public void run() {
+            CallExecutor.get().execute(retry);
+          }
+        }, backoff, TimeUnit.NANOSECONDS);
+      }
+    });
+  }
+
+  public static <T> T safeguard(Callable<T> block, CircuitBreaker<RuntimeException> breaker,
+      HedgePolicy policy){
+    //noinspection RedundantTypeArguments
+    return CircuitBreakers.<T, RuntimeException>hedge(block, breaker, policy);
+  }
+
+  /**
+   * same as {@link #hedgeAsync(Supplier, CircuitBreaker, HedgePolicy)}, but for blocking calls:
+   * both attempts run on the {@link #circuitBreak(Callable, CircuitBreaker, long, TimeUnit)
+   * timed calls'} executor, and the losing one is interrupted. The calling thread waits for
+   * the winner; if it is interrupted while waiting, both attempts are cancelled, and the
+   * thread's interrupt status is left set.
+   *
+   * @param block the idempotent call; invoked once per attempt.
+   * @param breaker the breaker guarding both attempts.
+   * @param policy the hedging policy.
+   * @return the result of the first attempt that succeeded.
+   * @throws E the failure of the last attempt made.
+   */
+  public static <T, E extends Exception> T hedge(Callable<T> block, CircuitBreaker<E> breaker,
+      HedgePolicy policy) throws E {
+    final CompletableFuture<T> result = hedgeAsync(
+        HedgedCall.runOn(block, CallExecutor.get()), breaker, policy);
+    try {
+      return result.get();
+    } catch (ExecutionException e) {
+      //noinspection RedundantTypeArguments
+      throw Exceptions.<E>castException(
+          e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      result.cancel(true);
+      //noinspection RedundantTypeArguments
+      throw Exceptions.<E>castException(e);
+    }
+  }
+
+  public static <T> CompletableFuture<T> safeguardAsync(Supplier<? extends CompletionStage<T>> block,
+      CircuitBreaker<RuntimeException> breaker, HedgePolicy policy){
+    //noinspection RedundantTypeArguments
+    return CircuitBreakers.<T, RuntimeException>hedgeAsync(block, breaker, policy);
+  }
+
+  /**
+   * guards an idempotent asynchronous call, and hedges it to cut its tail latency: if the call
+   * has not completed after the policy's delay (a latency percentile the breaker tracked), a
+   * second attempt is made, and whichever attempt succeeds first wins; the other one is
+   * cancelled, if its stage is a {@link Future}. The hedge is scheduled on the scheduler every
+   * breaker shares, so no thread waits for it. Both attempts count against the breaker, and the
+   * hedge against the policy's budget; no hedge is made unless the breaker is CLOSED and the
+   * budget can pay for it.
+   *
+   * @param block the idempotent asynchronous call; invoked once per attempt.
+   * @param breaker the breaker guarding both attempts.
+   * @param policy the hedging policy.
+   * @return a future completed with the result of the first attempt that succeeded, or with the
+   *    failure of the last attempt made; cancelling it cancels both attempts.
+   */
+  public static <T, E extends Exception> CompletableFuture<T> hedgeAsync(
+      Supplier<? extends CompletionStage<T>> block, CircuitBreaker<E> breaker, HedgePolicy policy) {
+    return new HedgedCall<T, E>(block, breaker, policy).start();
+  }
+
+  private static Throwable unwrap(Throwable error){
+    return (error instanceof CompletionException && error.getCause() != null)
+        ? error.getCause()
+        : error;
+  }
+
   /**
    * create a new circuit breaker. this breaker relies on a configuration file located under
    * <project_directory>/config/circuitbreaker.cfg.
@@ -58,6 +578,191 @@ public class CircuitBreakers {
     return new DefaultCircuitBreaker<E>(failedCallThreshold, retryThreshold, debug);
   }
 
+  /**
+   *
+   * @param failedCallThreshold the number of errors the breaker will swallow before caching the
+   * error and consequently force the client to wait.
+   * @param retryThreshold how long the circuit breaker will wait until letting the call go thru.
+   * @param halfOpenPermits how many trial calls may be in flight at once once the retry threshold expires.
+   * @param successfulProbeThreshold how many trial calls must succeed before the breaker closes again.
+   * @param debug {@code true} if the breaker will display its activity messages. {@code false} otherwise.
+   * @return a circuit breaker which caches {@literal E} exceptions.
+   */
+  public static <E extends Exception> CircuitBreaker<E> newCircuitBreaker(long failedCallThreshold,
+      long retryThreshold, int halfOpenPermits, int successfulProbeThreshold, boolean debug) {
+    return new DefaultCircuitBreaker<E>(failedCallThreshold, retryThreshold, halfOpenPermits,
+        successfulProbeThreshold, debug);
+  }
+
+  /**
+   * @param config the breaker's settings.
+   * @return a circuit breaker which caches {@literal E} exceptions.
+   */
+  public static <E extends Exception> CircuitBreaker<E> newCircuitBreaker(CircuitBreakerConfig config) {
+    return new DefaultCircuitBreaker<E>(config);
+  }
+
+  /**
+   * create a new circuit breaker whose state is shared, thru a memory-mapped file, with every
+   * breaker of the same name on the same file; e.g., those of other processes on the host.
+   *
+   * @param file the file holding the breaker's state.
+   * @param name the breaker's name.
+   * @param config the breaker's settings; every process should use the same ones.
+   * @return a circuit breaker which caches {@literal E} exceptions.
+   */
+  public static <E extends Exception> CircuitBreaker<E> newSharedCircuitBreaker(SharedStateFile file,
+      String name, CircuitBreakerConfig config) {
+    return new SharedCircuitBreaker<E>(file, name, config);
+  }
+
+  /**
+   * create a new circuit breaker that opens once the failure rate of the last
+   * {@code windowSize} calls reaches {@code failureRateThreshold}.
+   *
+   * @param windowSize the number of most recent calls taken into account.
+   * @param minimumNumberOfCalls the number of calls needed before the failure rate is evaluated.
+   * @param failureRateThreshold the percentage (0, 100] of failed calls that opens the breaker.
+   * @param retryThreshold how long the circuit breaker will wait until letting the call go thru.
+   * @param debug {@code true} if the breaker will display its activity messages. {@code false} otherwise.
+   * @return a circuit breaker which caches {@literal E} exceptions.
+   */
+  public static <E extends Exception> CircuitBreaker<E> newCountBasedCircuitBreaker(int windowSize,
+      int minimumNumberOfCalls, float failureRateThreshold, long retryThreshold, boolean debug) {
+    return new SlidingWindowCircuitBreaker<E>(new CountBasedSlidingWindow(windowSize),
+        failureRateThreshold, minimumNumberOfCalls, retryThreshold, debug);
+  }
+
+  /**
+   * create a new circuit breaker that opens once the failure rate of the calls made in the last
+   * {@code windowSeconds} seconds reaches {@code failureRateThreshold}.
+   *
+   * @param windowSeconds the number of most recent seconds taken into account.
+   * @param minimumNumberOfCalls the number of calls needed before the failure rate is evaluated.
+   * @param failureRateThreshold the percentage (0, 100] of failed calls that opens the breaker.
+   * @param retryThreshold how long the circuit breaker will wait until letting the call go thru.
+   * @param debug {@code true} if the breaker will display its activity messages. {@code false} otherwise.
+   * @return a circuit breaker which caches {@literal E} exceptions.
+   */
+  public static <E extends Exception> CircuitBreaker<E> newTimeBasedCircuitBreaker(int windowSeconds,
+      int minimumNumberOfCalls, float failureRateThreshold, long retryThreshold, boolean debug) {
+    return new SlidingWindowCircuitBreaker<E>(new TimeBasedSlidingWindow(windowSeconds),
+        failureRateThreshold, minimumNumberOfCalls, retryThreshold, debug);
+  }
+
+  /**
+   * same as {@link #newCountBasedCircuitBreaker(int, int, float, long, boolean)}, but the
+   * breaker follows the given settings; e.g., a {@link ManualClock manual clock}.
+   */
+  public static <E extends Exception> CircuitBreaker<E> newCountBasedCircuitBreaker(int windowSize,
+      int minimumNumberOfCalls, float failureRateThreshold, CircuitBreakerConfig config) {
+    return new SlidingWindowCircuitBreaker<E>(new CountBasedSlidingWindow(windowSize),
+        failureRateThreshold, minimumNumberOfCalls, config);
+  }
+
+  /**
+   * same as {@link #newTimeBasedCircuitBreaker(int, int, float, long, boolean)}, but the
+   * breaker follows the given settings; its window is kept by the settings' clock, too.
+   */
+  public static <E extends Exception> CircuitBreaker<E> newTimeBasedCircuitBreaker(int windowSeconds,
+      int minimumNumberOfCalls, float failureRateThreshold, CircuitBreakerConfig config) {
+    return new SlidingWindowCircuitBreaker<E>(new TimeBasedSlidingWindow(windowSeconds, config.getClock()),
+        failureRateThreshold, minimumNumberOfCalls, config);
+  }
+
+  /**
+   * create a new registry of named breakers.
+   *
+   * @param defaults the settings of breakers whose key has none of its own.
+   * @param idleTimeout how long a CLOSED breaker may go without being looked up before it is
+   *    dropped; zero means breakers are never dropped.
+   * @param unit the idle timeout's unit.
+   * @return a new registry.
+   */
+  public static <K, E extends Exception> CircuitBreakerRegistry<K, E> newCircuitBreakerRegistry(
+      CircuitBreakerConfig defaults, long idleTimeout, TimeUnit unit) {
+    return new CircuitBreakerRegistry<K, E>(defaults, unit.toNanos(idleTimeout));
+  }
+
+  /**
+   * create a new rate limiter that rejects calls right away when over its rate.
+   *
+   * @param permitsPerSecond the sustained rate.
+   * @param maxBurst how many calls may go thru at once after a quiet period.
+   * @return a new rate limiter.
+   */
+  public static RateLimiter newRateLimiter(double permitsPerSecond, int maxBurst) {
+    return new RateLimiter(permitsPerSecond, maxBurst, 0L);
+  }
+
+  /**
+   * create a new rate limiter that lets calls wait a bounded time for their turn.
+   *
+   * @param permitsPerSecond the sustained rate.
+   * @param maxBurst how many calls may go thru at once after a quiet period.
+   * @param maxWaitTime how long a call may wait for its turn.
+   * @param unit the max wait time's unit.
+   * @return a new rate limiter.
+   */
+  public static RateLimiter newRateLimiter(double permitsPerSecond, int maxBurst, long maxWaitTime,
+      TimeUnit unit) {
+    return new RateLimiter(permitsPerSecond, maxBurst, unit.toNanos(maxWaitTime));
+  }
+
+  /**
+   * create a new bulkhead that rejects calls right away when full.
+   *
+   * @param maxConcurrentCalls how many calls may be in flight at once.
+   * @return a new bulkhead.
+   */
+  public static Bulkhead newBulkhead(int maxConcurrentCalls) {
+    return new Bulkhead(maxConcurrentCalls, 0L);
+  }
+
+  /**
+   * create a new bulkhead that lets calls wait a bounded time for room when full.
+   *
+   * @param maxConcurrentCalls how many calls may be in flight at once.
+   * @param maxWaitTime how long a call may wait for room.
+   * @param unit the max wait time's unit.
+   * @return a new bulkhead.
+   */
+  public static Bulkhead newBulkhead(int maxConcurrentCalls, long maxWaitTime, TimeUnit unit) {
+    return new Bulkhead(maxConcurrentCalls, unit.toNanos(maxWaitTime));
+  }
+
+  /**
+   * create a new concurrency limiter driven by the AIMD (additive-increase/multiplicative-decrease)
+   * algorithm.
+   *
+   * @param initialLimit the limit the limiter starts with.
+   * @param minLimit the lowest the limit may go.
+   * @param maxLimit the highest the limit may go.
+   * @param backoffRatio the factor (0, 1) applied to the limit on every failed or timed out call.
+   * @param timeout the round-trip time (in nanoseconds) from which a call counts as timed out.
+   * @return a limiter which caches {@literal E} exceptions.
+   */
+  public static <E extends Exception> AdaptiveLimiter<E> newAimdLimiter(int initialLimit, int minLimit,
+      int maxLimit, double backoffRatio, long timeout) {
+    return new AdaptiveLimiter<E>(new AimdLimit(initialLimit, minLimit, maxLimit, backoffRatio, timeout));
+  }
+
+  /**
+   * create a new concurrency limiter driven by the gradient algorithm; i.e., the limit follows
+   * the ratio between the dependency's no-load latency and its current latency.
+   *
+   * @param initialLimit the limit the limiter starts with.
+   * @param minLimit the lowest the limit may go.
+   * @param maxLimit the highest the limit may go.
+   * @param tolerance how many times the no-load latency a call may take before the limit shrinks (>= 1).
+   * @param smoothing the weight (0, 1] of a new limit against the current one.
+   * @return a limiter which caches {@literal E} exceptions.
+   */
+  public static <E extends Exception> AdaptiveLimiter<E> newGradientLimiter(int initialLimit, int minLimit,
+      int maxLimit, double tolerance, double smoothing) {
+    return new AdaptiveLimiter<E>(new GradientLimit(initialLimit, minLimit, maxLimit, tolerance, smoothing));
+  }
+
   public static void main(String[] args) {
     final CircuitBreaker<RuntimeException> breaker = newCircuitBreaker(3000, 1L, true);
     final Callable<String> call = new Callable<String>() {
@@ -0,0 +1,42 @@
+package edu.ucsc.cb;
+
+/**
+ * the time source breakers read; given to them thru their {@link CircuitBreakerConfig config}.
+ * Breakers use the {@link #SYSTEM system clock} unless told otherwise. Since it is the only
+ * clock most programs ever load, every call site stays monomorphic and the JIT inlines it down
+ * to the bare {@link System#nanoTime()}. Tests and {@link Simulation simulations} use a
+ * {@link ManualClock manual clock} instead, so that a breaker waiting out a fifteen-minute
+ * retry threshold waits for nothing.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public interface Clock {
+  /**
+   * the clock of the running JVM.
+   */
+  Clock SYSTEM = new Clock() {
+    @Override public long nanoTime() {
+      return System.nanoTime();
+    }
+
+    @Override public long currentTimeMillis() {
+      return System.currentTimeMillis();
+    }
+
+    @Override public String toString() {
+      return "SystemClock";
+    }
+  };
+
+  /**
+   * @return the current value of the clock's time source, in nanoseconds; only meaningful when
+   *    compared to other values of the same clock, as {@link System#nanoTime()}.
+   */
+  long nanoTime();
+
+  /**
+   * @return the current wall-clock time, in milliseconds since the epoch, as
+   *    {@link System#currentTimeMillis()}.
+   */
+  long currentTimeMillis();
+}
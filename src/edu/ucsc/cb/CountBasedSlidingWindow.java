@@ -0,0 +1,84 @@
+package edu.ucsc.cb;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link SlidingWindow window} holding the outcome of the last {@code N} calls in a ring
+ * buffer. Recording an outcome takes three atomic operations: claiming a slot, swapping the
+ * slot's previous outcome out, and adjusting the packed totals by the difference.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+class CountBasedSlidingWindow implements SlidingWindow {
+  private static final int EMPTY   = 0;
+  private static final int SUCCESS = 1;
+  private static final int FAILURE = 2;
+
+  private final AtomicIntegerArray  slots;                      // outcome of the last N calls.
+  private final AtomicLong          cursor  = new AtomicLong(); // next slot to be claimed.
+  private final AtomicLong          totals  = new AtomicLong(); // packed calls and failures.
+
+  CountBasedSlidingWindow(int size){
+    if(size <= 0) throw new IllegalArgumentException("window size must be positive");
+    this.slots = new AtomicIntegerArray(size);
+  }
+
+  @Override public void record(boolean failed) {
+    final int slot      = (int) (cursor.getAndIncrement() % slots.length());
+    final int outcome   = failed ? FAILURE : SUCCESS;
+    final int previous  = slots.getAndSet(slot, outcome);
+    if(previous != outcome){
+      totals.addAndGet(delta(previous, outcome));
+    }
+  }
+
+  /**
+   * claims every slot of the batch at once, and adjusts the totals once for the whole batch.
+   */
+  @Override public void record(int succeeded, int failed) {
+    final int  calls    = succeeded + failed;
+    final long first    = cursor.getAndAdd(calls);
+    final int  skipped  = Math.max(0, calls - slots.length()); // overwritten by the batch itself.
+
+    long delta = 0L;
+    for(int idx = skipped; idx < calls; idx++){
+      final int slot      = (int) ((first + idx) % slots.length());
+      final int outcome   = idx < succeeded ? SUCCESS : FAILURE;
+      final int previous  = slots.getAndSet(slot, outcome);
+      if(previous != outcome){
+        delta += delta(previous, outcome);
+      }
+    }
+
+    if(delta != 0L){
+      totals.addAndGet(delta);
+    }
+  }
+
+  @Override public long snapshot() {
+    return totals.get();
+  }
+
+  @Override public void reset() {
+    // drain slot by slot, so that an outcome recorded concurrently is either kept in both
+    // the slot and the totals, or removed from both.
+    for(int idx = 0; idx < slots.length(); idx++){
+      final int previous = slots.getAndSet(idx, EMPTY);
+      if(previous != EMPTY){
+        totals.addAndGet(delta(previous, EMPTY));
+      }
+    }
+  }
+
+  @Override public int size() {
+    return slots.length();
+  }
+
+  private static long delta(int previous, int outcome){
+    return SlidingWindow.pack(
+        (outcome == EMPTY ? 0 : 1) - (previous == EMPTY ? 0 : 1),
+        (outcome == FAILURE ? 1 : 0) - (previous == FAILURE ? 1 : 0)
+    );
+  }
+}
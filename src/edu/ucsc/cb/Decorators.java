@@ -0,0 +1,223 @@
+package edu.ucsc.cb;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * stacks resilience policies around a call, once. For instance,
+ *
+ * <pre>
+ *   final Callable&lt;String&gt; call = Decorators.of(fetchQuote)
+ *       .withCircuitBreaker(breaker)
+ *       .withRetry(policy)
+ *       .withBulkhead(bulkhead)
+ *       .withFallback(useLastQuote)
+ *       .build();
+ *
+ *   call.call(); // as many times as needed.
+ * </pre>
+ *
+ * <p>
+ * Unlike nesting {@link CircuitBreakers#circuitBreak} calls, which wraps the call in a new
+ * {@link Callable} per policy, the policies are fused into a single invoker: one final class
+ * whose {@code call()} applies each policy in turn, skipping the ones not given. Apart from
+ * the call itself, every call site in the chain is monomorphic, so the JIT can inline the whole
+ * chain. The invoker is immutable and thread safe; calling it allocates nothing of its own,
+ * unless it has a timeout (which hands the call over to another thread).
+ * </p>
+ *
+ * <p>
+ * Whatever the order they are given in, policies are applied from the outside in as follows:
+ * fallback, retry, rate limiter, bulkhead, breaker, timeout. Hence, every attempt takes its own
+ * permits, and timed out attempts count as failed.
+ * </p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public final class Decorators {
+  private Decorators(){
+    throw new AssertionError("Error! This is a utility class.");
+  }
+
+  /**
+   * @param block the call to decorate.
+   * @return a builder of decorated calls.
+   */
+  public static <T> Builder<T> of(Callable<T> block){
+    if(block == null) throw new NullPointerException("block is required");
+    return new Builder<T>(block);
+  }
+
+  /**
+   * Builds decorated calls. Giving the same kind of policy twice keeps the last one.
+   */
+  public static final class Builder<T> {
+    private final Callable<T>                         block;
+
+    private CircuitBreaker<?>                         breaker     = null;
+    private RetryPolicy                               retry       = null;
+    private RateLimiter                               rateLimiter = null;
+    private Bulkhead                                  bulkhead    = null;
+    private long                                      timeout     = -1L;
+    private ExecutorService                           executor    = null;
+    private Function<? super Exception, ? extends T>  fallback    = null;
+
+    Builder(Callable<T> block){
+      this.block = block;
+    }
+
+    public Builder<T> withCircuitBreaker(CircuitBreaker<?> breaker){
+      this.breaker = breaker;
+      return this;
+    }
+
+    /**
+     * @param retry makes the call again while it fails; see {@link CircuitBreakers#retry}.
+     */
+    public Builder<T> withRetry(RetryPolicy retry){
+      this.retry = retry;
+      return this;
+    }
+
+    public Builder<T> withRateLimiter(RateLimiter rateLimiter){
+      this.rateLimiter = rateLimiter;
+      return this;
+    }
+
+    public Builder<T> withBulkhead(Bulkhead bulkhead){
+      this.bulkhead = bulkhead;
+      return this;
+    }
+
+    /**
+     * gives up on every attempt that does not complete in time; see
+     * {@link CircuitBreakers#circuitBreak(Callable, CircuitBreaker, long, TimeUnit)}.
+     */
+    public Builder<T> withTimeout(long timeout, TimeUnit unit){
+      return withTimeout(timeout, unit, CallExecutor.get());
+    }
+
+    /**
+     * same as {@link #withTimeout(long, TimeUnit)}, but attempts run on the given executor.
+     */
+    public Builder<T> withTimeout(long timeout, TimeUnit unit, ExecutorService executor){
+      if(timeout < 0) throw new IllegalArgumentException("timeout cannot be negative");
+      if(executor == null) throw new NullPointerException("executor is required");
+
+      this.timeout  = unit.toNanos(timeout);
+      this.executor = executor;
+      return this;
+    }
+
+    /**
+     * @param fallback gets the failure (or a rejection) of the call and returns the default.
+     */
+    public Builder<T> withFallback(Function<? super Exception, ? extends T> fallback){
+      this.fallback = fallback;
+      return this;
+    }
+
+    /**
+     * @return the decorated call; reusable, and safe to share among threads.
+     */
+    public Callable<T> build(){
+      return new DecoratedCall<T>(this);
+    }
+  }
+
+  /**
+   * The fused invoker. Policies not given are NULL (no timeout is a negative one), and skipped.
+   */
+  static final class DecoratedCall<T> implements Callable<T> {
+    private final Callable<T>                               block;
+    private final CircuitBreaker<Exception>                 breaker;
+    private final RetryPolicy                               retry;
+    private final RateLimiter                               rateLimiter;
+    private final Bulkhead                                  bulkhead;
+    private final long                                      timeout;
+    private final ExecutorService                           executor;
+    private final Function<? super Exception, ? extends T>  fallback;
+
+    DecoratedCall(Builder<T> builder){
+      this.block        = builder.block;
+      // generics are erased; the breaker is only handed back the failures of the call.
+      @SuppressWarnings("unchecked")
+      final CircuitBreaker<Exception> breaker = (CircuitBreaker<Exception>) builder.breaker;
+      this.breaker      = breaker;
+      this.retry        = builder.retry;
+      this.rateLimiter  = builder.rateLimiter;
+      this.bulkhead     = builder.bulkhead;
+      this.timeout      = builder.timeout;
+      this.executor     = builder.executor;
+      this.fallback     = builder.fallback;
+    }
+
+    @Override public T call() throws Exception {
+      if(fallback == null) return retried();
+
+      try {
+        return retried();
+      } catch (Exception error) {
+        return fallback.apply(error);
+      }
+    }
+
+    private T retried() throws Exception {
+      if(retry == null) return limited();
+
+      retry.callStarted();
+      long backoff = 0L;
+      for(int attempt = 1; ; attempt++){
+        try {
+          return limited();
+        } catch (Exception error) {
+          if(!retry.shouldRetry(attempt, error, breaker)) throw error;
+
+          backoff = retry.backoff(attempt, backoff);
+          if(!CircuitBreakers.backOff(backoff)) throw error;
+        }
+      }
+    }
+
+    private T limited() throws Exception {
+      if(rateLimiter != null) rateLimiter.acquire();
+      if(bulkhead == null) return guarded();
+
+      bulkhead.acquire();
+      try {
+        return guarded();
+      } finally {
+        bulkhead.release();
+      }
+    }
+
+    private T guarded() throws Exception {
+      if(breaker == null) return timed();
+
+      final long permit    = breaker.callPermitted();
+      final long startTime = System.nanoTime();
+      CallStatistics.entered(breaker);
+      try {
+        final T result = timed();
+        breaker.callSucceeded(permit, System.nanoTime() - startTime);
+        return result;
+      } catch (Exception error) {
+        breaker.callFailed(permit, error, System.nanoTime() - startTime);
+        throw error;
+      } catch (Throwable error) {
+        breaker.callCancelled(permit); // says nothing about the dependency, but gives the permit back.
+        throw error;
+      } finally {
+        CallStatistics.exited(breaker);
+      }
+    }
+
+    private T timed() throws Exception {
+      return timeout < 0
+          ? block.call()
+          : CircuitBreakers.callWithin(block, timeout, TimeUnit.NANOSECONDS, executor);
+    }
+  }
+}
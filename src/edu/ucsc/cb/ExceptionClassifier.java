@@ -0,0 +1,166 @@
+package edu.ucsc.cb;
+
+import java.util.function.Predicate;
+
+/**
+ * tells breakers which failures count against their dependency's health. A validation error
+ * the dependency rightly turned down, for instance, says nothing about whether it is healthy;
+ * such failures can be ignored, or even counted as successes, rather than recorded. Whatever
+ * the classification, the failure reaches the caller as is.
+ *
+ * <p>
+ * Failures are classified by class, as follows: one that is an instance of a
+ * {@link Builder#countAsSuccess(Class[]) success} class counts as a success; otherwise, one that
+ * is an instance of an {@link Builder#ignore(Class[]) ignored} class is ignored; otherwise, it
+ * is recorded if it is an instance of a {@link Builder#record(Class[]) recorded} class, or if
+ * no recorded classes were given. A class' outcome is worked out once, the first time a failure
+ * of that class is seen, and cached in a {@link ClassValue}; from then on, classifying a
+ * failure is a single lookup. The optional predicates, which may look at the failure itself
+ * (e.g., at an HTTP status code), are only asked about failures their classes would record.
+ * </p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public final class ExceptionClassifier {
+  /**
+   * what a failure means to a breaker.
+   */
+  public enum Outcome {
+    /** the call failed; it counts against the dependency's health. */
+    FAILURE,
+    /** the call neither failed nor succeeded, as far as the breaker is concerned. */
+    IGNORED,
+    /** the call succeeded, as far as the breaker is concerned. */
+    SUCCESS
+  }
+
+  /**
+   * records every failure.
+   */
+  public static final ExceptionClassifier RECORD_ALL = builder().build();
+
+  private final Class<?>[]                    recorded;
+  private final Class<?>[]                    ignored;
+  private final Class<?>[]                    succeeded;
+  private final Predicate<? super Exception>  ignoreIf;
+  private final Predicate<? super Exception>  countAsSuccessIf;
+
+  private final ClassValue<Outcome> outcomes = new ClassValue<Outcome>() {
+    @Override protected Outcome computeValue(Class<?> type) {
+      if(isAny(type, succeeded)) return Outcome.SUCCESS;
+      if(isAny(type, ignored))   return Outcome.IGNORED;
+
+      return recorded.length == 0 || isAny(type, recorded) ? Outcome.FAILURE : Outcome.IGNORED;
+    }
+  };
+
+  private ExceptionClassifier(Builder builder){
+    this.recorded         = builder.recorded;
+    this.ignored          = builder.ignored;
+    this.succeeded        = builder.succeeded;
+    this.ignoreIf         = builder.ignoreIf;
+    this.countAsSuccessIf = builder.countAsSuccessIf;
+  }
+
+  /**
+   * @return a builder of classifiers that record every failure.
+   */
+  public static Builder builder(){
+    return new Builder();
+  }
+
+  /**
+   * @param error a call's failure.
+   * @return what the failure means to the breaker.
+   */
+  public Outcome classify(Exception error){
+    if(this == RECORD_ALL || error == null) return Outcome.FAILURE;
+
+    final Outcome outcome = outcomes.get(error.getClass());
+    if(outcome != Outcome.FAILURE) return outcome;
+
+    if(countAsSuccessIf != null && countAsSuccessIf.test(error)) return Outcome.SUCCESS;
+    if(ignoreIf != null && ignoreIf.test(error))                 return Outcome.IGNORED;
+
+    return Outcome.FAILURE;
+  }
+
+  private static boolean isAny(Class<?> type, Class<?>[] classes){
+    for(Class<?> each : classes){
+      if(each.isAssignableFrom(type)) return true;
+    }
+
+    return false;
+  }
+
+  /**
+   * Builds {@link ExceptionClassifier} objects.
+   */
+  public static final class Builder {
+    // classes are copied one by one: handing a generic varargs array on is not safe.
+    private Class<?>[]                    recorded          = new Class<?>[0];
+    private Class<?>[]                    ignored           = new Class<?>[0];
+    private Class<?>[]                    succeeded         = new Class<?>[0];
+    private Predicate<? super Exception>  ignoreIf          = null;
+    private Predicate<? super Exception>  countAsSuccessIf  = null;
+
+    Builder(){}
+
+    /**
+     * @param classes the only failures that are recorded; others are ignored.
+     */
+    @SafeVarargs public final Builder record(Class<? extends Exception>... classes){
+      this.recorded = new Class<?>[classes.length];
+      for(int idx = 0; idx < classes.length; idx++){
+        this.recorded[idx] = classes[idx];
+      }
+      return this;
+    }
+
+    /**
+     * @param classes failures that are neither recorded nor counted as successes.
+     */
+    @SafeVarargs public final Builder ignore(Class<? extends Exception>... classes){
+      this.ignored = new Class<?>[classes.length];
+      for(int idx = 0; idx < classes.length; idx++){
+        this.ignored[idx] = classes[idx];
+      }
+      return this;
+    }
+
+    /**
+     * @param classes failures that count as successes.
+     */
+    @SafeVarargs public final Builder countAsSuccess(Class<? extends Exception>... classes){
+      this.succeeded = new Class<?>[classes.length];
+      for(int idx = 0; idx < classes.length; idx++){
+        this.succeeded[idx] = classes[idx];
+      }
+      return this;
+    }
+
+    /**
+     * @param ignoreIf tells which of the failures that would be recorded are ignored instead.
+     */
+    public Builder ignoreIf(Predicate<? super Exception> ignoreIf){
+      this.ignoreIf = ignoreIf;
+      return this;
+    }
+
+    /**
+     * @param countAsSuccessIf tells which of the failures that would be recorded count as
+     *    successes instead.
+     */
+    public Builder countAsSuccessIf(Predicate<? super Exception> countAsSuccessIf){
+      this.countAsSuccessIf = countAsSuccessIf;
+      return this;
+    }
+
+    /**
+     * @return a new classifier.
+     */
+    public ExceptionClassifier build(){
+      return new ExceptionClassifier(this);
+    }
+  }
+}
@@ -0,0 +1,93 @@
+package edu.ucsc.cb;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Gradient {@link LimitAlgorithm limit}. It compares each call's round-trip time against the
+ * shortest one seen (the dependency's no-load latency): while both are alike, the limit grows by
+ * a queue allowance of {@code sqrt(limit)}; as latency builds up, the limit shrinks in
+ * proportion, down to half per update. Failed calls count as fully congested.
+ *
+ * <p>
+ * The no-load latency is forgotten every so many samples, so the algorithm follows a
+ * dependency whose baseline latency has changed.
+ * </p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+class GradientLimit implements LimitAlgorithm {
+  private static final double MIN_GRADIENT  = 0.5;
+  private static final long   RESET_SAMPLES = 1000;
+
+  private final AtomicLong noLoadRtt  = new AtomicLong(Long.MAX_VALUE);
+  private final AtomicLong samples    = new AtomicLong();
+
+  private final int     initialLimit;
+  private final int     minLimit;
+  private final int     maxLimit;
+  private final double  tolerance;
+  private final double  smoothing;
+
+  /**
+   * @param initialLimit the limit the limiter starts with.
+   * @param minLimit the lowest the limit may go.
+   * @param maxLimit the highest the limit may go.
+   * @param tolerance how many times the no-load latency a call may take before the limit shrinks (>= 1).
+   * @param smoothing the weight (0, 1] of a new limit against the current one.
+   */
+  GradientLimit(int initialLimit, int minLimit, int maxLimit, double tolerance, double smoothing){
+    if(minLimit <= 0 || minLimit > initialLimit || initialLimit > maxLimit){
+      throw new IllegalArgumentException("limits must satisfy 0 < min <= initial <= max");
+    }
+
+    if(tolerance < 1 || smoothing <= 0 || smoothing > 1){
+      throw new IllegalArgumentException("tolerance must be >= 1 and smoothing in (0, 1]");
+    }
+
+    this.initialLimit = initialLimit;
+    this.minLimit     = minLimit;
+    this.maxLimit     = maxLimit;
+    this.tolerance    = tolerance;
+    this.smoothing    = smoothing;
+  }
+
+  @Override public double getInitialLimit() {
+    return initialLimit;
+  }
+
+  @Override public double update(double limit, long rtt, int inFlight, boolean dropped) {
+    final double gradient;
+    if(dropped){
+      gradient = MIN_GRADIENT;
+    } else if(rtt > 0){
+      final long shortest = Math.min(rtt, noLoadRtt.get());
+      gradient = Math.max(MIN_GRADIENT, Math.min(1.0, tolerance * shortest / rtt));
+    } else {
+      return limit;
+    }
+
+    // an idle limiter learns nothing about how much more load the dependency takes.
+    if(gradient == 1.0 && inFlight * 2 < limit) return limit;
+
+    final double target = limit * gradient + Math.sqrt(limit);
+    final double next   = limit * (1 - smoothing) + target * smoothing;
+    return Math.max(minLimit, Math.min(maxLimit, next));
+  }
+
+  /**
+   * tracks the no-load latency; failed and untimed calls tell nothing about it.
+   */
+  @Override public void sample(long rtt, boolean dropped) {
+    if(dropped || rtt <= 0) return;
+
+    if(samples.incrementAndGet() % RESET_SAMPLES == 0){
+      noLoadRtt.set(rtt);
+      return;
+    }
+
+    while (true){
+      final long shortest = noLoadRtt.get();
+      if(rtt >= shortest || noLoadRtt.compareAndSet(shortest, rtt)) return;
+    }
+  }
+}
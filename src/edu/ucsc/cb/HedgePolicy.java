@@ -0,0 +1,209 @@
+package edu.ucsc.cb;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A hedging policy: when to fire a second attempt at a call that is taking too long
+ * (see {@link CircuitBreakers#hedgeAsync}). Only hedge idempotent calls.
+ *
+ * <p>
+ * The hedge fires once the call has taken longer than a given percentile of the latencies its
+ * breaker tracked (e.g., the 95th). Hence, only the slowest calls are hedged, whatever the
+ * dependency's usual latency is. Until the breaker has tracked any latency, the initial delay
+ * is used. Either way, the delay is kept between a min and a max.
+ * </p>
+ *
+ * <p>
+ * The percentile is cached, and refreshed once per refresh interval (a second, by default) by
+ * whichever call finds it stale, so hedged calls do not scan the breaker's latencies each
+ * time. The interval is measured on the breaker's {@link CircuitBreakerConfig#getClock() clock}.
+ * The policy is meant to be used with a single breaker, as the cache is dropped whenever the
+ * breaker changes.
+ * </p>
+ *
+ * <p>
+ * A hedge is never fired unless the breaker is {@link CircuitBreakerStatus#CLOSED}. If the
+ * policy has a {@link RetryBudget budget}, the budget must also pay for it. Hence, hedging
+ * never amplifies the load on a dependency in trouble.
+ * </p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public final class HedgePolicy {
+  private final double      percentile;
+  private final long        initialDelay;
+  private final long        minDelay;
+  private final long        maxDelay;
+  private final RetryBudget budget;
+  private final long        refreshInterval;
+
+  private final AtomicReference<Latency> latency = new AtomicReference<Latency>(); // NULL until first read.
+
+  private HedgePolicy(Builder builder){
+    this.percentile       = builder.percentile;
+    this.initialDelay     = builder.initialDelay;
+    this.minDelay         = builder.minDelay;
+    this.maxDelay         = builder.maxDelay;
+    this.budget           = builder.budget;
+    this.refreshInterval  = builder.refreshInterval;
+  }
+
+  /**
+   * @return a builder initialized with the default settings: hedging at the 95th percentile,
+   *    after 10 milliseconds until latencies are tracked, never sooner than a millisecond nor
+   *    later than a second, without a budget, refreshing the percentile every second.
+   */
+  public static Builder builder(){
+    return new Builder();
+  }
+
+  /**
+   * @return the latency percentile (0, 100) after which a call is hedged.
+   */
+  public double getPercentile() {
+    return percentile;
+  }
+
+  /**
+   * @return the policy's hedge budget, or NULL if hedges are not budgeted.
+   */
+  public RetryBudget getBudget() {
+    return budget;
+  }
+
+  /**
+   * @param breaker the call's breaker.
+   * @return how long (in nanoseconds) to wait for the call before hedging it.
+   */
+  long delay(CircuitBreaker<?> breaker){
+    final long latency = latency(breaker);
+    return Math.max(minDelay, Math.min(maxDelay, latency < 0 ? initialDelay : latency));
+  }
+
+  /**
+   * @return the breaker's latency at the policy's percentile, as of the last refresh.
+   */
+  private long latency(CircuitBreaker<?> breaker){
+    final long    now   = clockOf(breaker).nanoTime();
+    final Latency last  = latency.get();
+    if(last != null && last.breaker == breaker){
+      if(now - last.computedAt < refreshInterval) return last.latency;
+      // one call refreshes it; the others keep the stale latency meanwhile.
+      if(!latency.compareAndSet(last, new Latency(breaker, last.latency, now))) return last.latency;
+    }
+
+    final long current = breaker.getStatistics().getLatency(percentile);
+    latency.set(new Latency(breaker, current, now));
+    return current;
+  }
+
+  /**
+   * @return the clock of the breaker's config, or the system clock if the breaker has no config.
+   */
+  private static Clock clockOf(CircuitBreaker<?> breaker){
+    if(breaker instanceof AbstractCircuitBreaker) return ((AbstractCircuitBreaker<?>) breaker).getConfig().getClock();
+    if(breaker instanceof SharedCircuitBreaker)   return ((SharedCircuitBreaker<?>) breaker).getConfig().getClock();
+    return Clock.SYSTEM;
+  }
+
+  /**
+   * marks the start of a call; i.e., earns the budget, if any, its share of a hedge.
+   */
+  void callStarted(){
+    if(budget != null) budget.deposit();
+  }
+
+  /**
+   * @return {@code true} if the call may be hedged; in which case, the budget's token for the
+   *    hedge has been taken.
+   */
+  boolean shouldHedge(CircuitBreaker<?> breaker){
+    if(breaker.status() != CircuitBreakerStatus.CLOSED) return false;
+    return budget == null || budget.tryAcquire();
+  }
+
+  /**
+   * a breaker's latency at the policy's percentile, and when it was computed.
+   */
+  private static final class Latency {
+    final CircuitBreaker<?> breaker;
+    final long              latency;
+    final long              computedAt;
+
+    Latency(CircuitBreaker<?> breaker, long latency, long computedAt){
+      this.breaker    = breaker;
+      this.latency    = latency;
+      this.computedAt = computedAt;
+    }
+  }
+
+  /**
+   * Builds {@link HedgePolicy} objects.
+   */
+  public static final class Builder {
+    private double      percentile      = 95.0;
+    private long        initialDelay    = TimeUnit.MILLISECONDS.toNanos(10);
+    private long        minDelay        = TimeUnit.MILLISECONDS.toNanos(1);
+    private long        maxDelay        = TimeUnit.SECONDS.toNanos(1);
+    private RetryBudget budget          = null;
+    private long        refreshInterval = TimeUnit.SECONDS.toNanos(1);
+
+    Builder(){}
+
+    /**
+     * @param percentile the latency percentile (0, 100) after which a call is hedged.
+     */
+    public Builder percentile(double percentile){
+      this.percentile = percentile;
+      return this;
+    }
+
+    /**
+     * @param initialDelay the delay used until the breaker has tracked any latency.
+     * @param minDelay the shortest delay.
+     * @param maxDelay the longest delay.
+     * @param unit the unit of every delay.
+     */
+    public Builder delay(long initialDelay, long minDelay, long maxDelay, TimeUnit unit){
+      this.initialDelay = unit.toNanos(initialDelay);
+      this.minDelay     = unit.toNanos(minDelay);
+      this.maxDelay     = unit.toNanos(maxDelay);
+      return this;
+    }
+
+    /**
+     * @param budget budget every hedge must be paid from; shared by the calls it budgets, and
+     *    possibly with their retries.
+     */
+    public Builder budget(RetryBudget budget){
+      this.budget = budget;
+      return this;
+    }
+
+    /**
+     * @param refreshInterval how long the latency percentile is reused before it is computed
+     *    again from the breaker's statistics; zero computes it for every call.
+     * @param unit the unit of the interval.
+     */
+    public Builder refreshInterval(long refreshInterval, TimeUnit unit){
+      this.refreshInterval = unit.toNanos(refreshInterval);
+      return this;
+    }
+
+    /**
+     * @return a new policy.
+     * @throws IllegalArgumentException if any setting is out of range.
+     */
+    public HedgePolicy build(){
+      if(percentile <= 0 || percentile >= 100) throw new IllegalArgumentException("percentile must be in (0, 100)");
+      if(minDelay < 0 || maxDelay < minDelay){
+        throw new IllegalArgumentException("delays must be positive, and the max no shorter than the min");
+      }
+
+      if(refreshInterval < 0) throw new IllegalArgumentException("refresh interval must not be negative");
+
+      return new HedgePolicy(this);
+    }
+  }
+}
@@ -0,0 +1,218 @@
+package edu.ucsc.cb;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * an asynchronous call, hedged as its {@link HedgePolicy policy} says. The first attempt starts
+ * right away. The hedge is timed on the {@link SharedScheduler shared scheduler}, which hands it
+ * to the {@link CallExecutor call executor} as it fires, so starting it never holds up the
+ * scheduler's thread; the hedge starts only if the call is still pending by then.
+ *
+ * <p>
+ * Whichever attempt succeeds first completes the call, and the other one is cancelled. The call
+ * fails once every attempt made has failed. An attempt that fails before the hedge fires fails
+ * the call right away, as hedging is about slow calls, not failed ones.
+ * </p>
+ *
+ * <p>
+ * Both attempts go thru the breaker, and each one's outcome is recorded. An attempt cancelled
+ * because the other one won is recorded as {@link CircuitBreaker#callCancelled(long) cancelled},
+ * so losing a race does not count as a failure. Each attempt records its outcome with its own
+ * permit; hence, a cancelled attempt only gives back a probe permit if it took one.
+ * </p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+final class HedgedCall<T, E extends Exception> implements Runnable {
+  private static final int ATTEMPTS = 2; // the call, and its hedge.
+
+  private final Supplier<? extends CompletionStage<T>>  block;
+  private final CircuitBreaker<E>                       breaker;
+  private final HedgePolicy                             policy;
+  private final CompletableFuture<T>                    result      = new CompletableFuture<T>();
+  private final AtomicReferenceArray<CompletionStage<T>> stages     = new AtomicReferenceArray<CompletionStage<T>>(ATTEMPTS);
+  private final AtomicIntegerArray                      cancelled   = new AtomicIntegerArray(ATTEMPTS);
+  private final AtomicInteger                           outstanding = new AtomicInteger(ATTEMPTS); // attempts that may still succeed.
+
+  private volatile ScheduledFuture<?> timer;
+  private volatile Throwable          lastError;
+
+  HedgedCall(Supplier<? extends CompletionStage<T>> block, CircuitBreaker<E> breaker, HedgePolicy policy){
+    this.block    = block;
+    this.breaker  = breaker;
+    this.policy   = policy;
+  }
+
+  /**
+   * starts the call.
+   *
+   * @return a future completed with the outcome of the call.
+   */
+  CompletableFuture<T> start(){
+    policy.callStarted();
+
+    // scheduled first, so that a first attempt failing right away can cancel it.
+    timer = SharedScheduler.get().schedule(new Runnable() {
+      @Override public void run() {
+        CallExecutor.get().execute(HedgedCall.this);
+      }
+    }, policy.delay(breaker), TimeUnit.NANOSECONDS);
+    attempt(0);
+
+    result.whenComplete(new BiConsumer<T, Throwable>() {
+      @Override public void accept(T value, Throwable error) {
+        timer.cancel(false);
+        for(int idx = 0; idx < ATTEMPTS; idx++){
+          cancel(idx);
+        }
+      }
+    });
+
+    return result;
+  }
+
+  /**
+   * fires the hedge, unless the call is over, or the breaker or the budget won't have it.
+   */
+  @Override public void run() {
+    if(!result.isDone() && policy.shouldHedge(breaker)){
+      attempt(1);
+    } else if(outstanding.decrementAndGet() == 0){
+      result.completeExceptionally(lastError); // the first attempt failed as the hedge fired.
+    }
+  }
+
+  private void attempt(final int attempt){
+    final long permit;
+    try {
+      permit = breaker.callPermitted();
+    } catch (Exception rejected) {
+      failed(attempt, rejected);
+      return;
+    }
+
+    final long startTime = System.nanoTime();
+    final CompletionStage<T> stage;
+    CallStatistics.entered(breaker);
+    try {
+      stage = block.get();
+    } catch (RuntimeException cause) {
+      CallStatistics.exited(breaker);
+      //noinspection RedundantTypeArguments
+      breaker.callFailed(permit, Exceptions.<E>castException(cause), System.nanoTime() - startTime);
+      failed(attempt, cause);
+      return;
+    } catch (Throwable error) {
+      CallStatistics.exited(breaker);
+      breaker.callCancelled(permit); // says nothing about the dependency, but gives the permit back.
+      failed(attempt, error);
+      return;
+    }
+
+    stages.set(attempt, stage);
+    if(result.isDone()) cancel(attempt); // the other attempt won meanwhile.
+
+    stage.whenComplete(new BiConsumer<T, Throwable>() {
+      @Override public void accept(T value, Throwable error) {
+        final long elapsedTime = System.nanoTime() - startTime;
+        CallStatistics.exited(breaker);
+        if (error == null) {
+          breaker.callSucceeded(permit, elapsedTime);
+          cancel(ATTEMPTS - 1 - attempt); // first, so the loser is cancelled once the call completes.
+          result.complete(value);
+          return;
+        }
+
+        final Throwable cause = unwrap(error);
+        if (cancelled.get(attempt) == 1 && cause instanceof CancellationException) {
+          breaker.callCancelled(permit);
+          return;
+        }
+
+        //noinspection RedundantTypeArguments
+        breaker.callFailed(permit, Exceptions.<E>castException(
+            cause instanceof Exception ? (Exception) cause : new ExecutionException(cause)), elapsedTime);
+        failed(attempt, cause);
+      }
+    });
+  }
+
+  /**
+   * accounts for a failed attempt; the call fails with it if no other attempt may succeed.
+   */
+  private void failed(int attempt, Throwable cause){
+    lastError = cause;
+    if(attempt == 0 && timer.cancel(false)){
+      outstanding.decrementAndGet(); // the hedge will not fire.
+    }
+
+    if(outstanding.decrementAndGet() == 0){
+      result.completeExceptionally(cause);
+    }
+  }
+
+  /**
+   * cancels an attempt, if it has started and its stage is a {@link Future}.
+   */
+  private void cancel(int attempt){
+    final CompletionStage<T> stage = stages.get(attempt);
+    if(stage == null || !cancelled.compareAndSet(attempt, 0, 1)) return;
+
+    if(stage instanceof Future){
+      ((Future<?>) stage).cancel(true);
+    }
+  }
+
+  private static Throwable unwrap(Throwable error){
+    return (error instanceof CompletionException && error.getCause() != null)
+        ? error.getCause()
+        : error;
+  }
+
+  /**
+   * @return an asynchronous call that runs the given call on the executor; cancelling its
+   *    stage interrupts the call.
+   */
+  static <T> Supplier<CompletionStage<T>> runOn(final Callable<T> block, final ExecutorService executor){
+    return new Supplier<CompletionStage<T>>() {
+      @Override public CompletionStage<T> get() {
+        final CompletableFuture<T> stage = new CompletableFuture<T>();
+        final FutureTask<T> task = new FutureTask<T>(block) {
+          @Override protected void done() {
+            try {
+              stage.complete(get());
+            } catch (ExecutionException e) {
+              stage.completeExceptionally(e.getCause());
+            } catch (Throwable e) {
+              stage.completeExceptionally(e); // cancelled or interrupted.
+            }
+          }
+        };
+
+        stage.whenComplete(new BiConsumer<T, Throwable>() {
+          @Override public void accept(T value, Throwable error) {
+            if (stage.isCancelled()) task.cancel(true);
+          }
+        });
+
+        executor.execute(task);
+        return stage;
+      }
+    };
+  }
+}
@@ -0,0 +1,193 @@
+package edu.ucsc.cb;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * exports every breaker as a {@link CircuitBreakerMXBean}, named
+ * {@code edu.ucsc.cb:type=CircuitBreaker,name=<breaker's name>}. Each export registers the
+ * breakers that showed up since the previous one, and unregisters those that are gone; in
+ * between, the MBeans read the breakers' latest {@link CircuitBreakerMetrics#snapshot(String)
+ * snapshots}.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class JmxExporter implements CircuitBreakerExporter {
+  static final String DOMAIN = "edu.ucsc.cb";
+
+  private final CircuitBreakerMetrics               metrics;
+  private final MBeanServer                         server;
+  private final ConcurrentMap<String, ObjectName>   registered = new ConcurrentHashMap<String, ObjectName>();
+
+  /**
+   * exports the breakers to the platform's MBean server.
+   *
+   * @param metrics the breakers.
+   */
+  public JmxExporter(CircuitBreakerMetrics metrics){
+    this(metrics, ManagementFactory.getPlatformMBeanServer());
+  }
+
+  /**
+   * @param metrics the breakers.
+   * @param server the MBean server.
+   */
+  public JmxExporter(CircuitBreakerMetrics metrics, MBeanServer server){
+    this.metrics  = metrics;
+    this.server   = server;
+  }
+
+  /**
+   * @param name the breaker's name.
+   * @return the name of the breaker's MBean.
+   */
+  public static ObjectName objectName(String name) throws JMException {
+    return new ObjectName(DOMAIN + ":type=CircuitBreaker,name=" + ObjectName.quote(name));
+  }
+
+  @Override public void export(List<CircuitBreakerSnapshot> snapshots) throws IOException {
+    final Set<String> names = new HashSet<String>();
+    try {
+      for(CircuitBreakerSnapshot each : snapshots){
+        names.add(each.getName());
+        if(registered.containsKey(each.getName())) continue;
+
+        final ObjectName objectName = objectName(each.getName());
+        if(!server.isRegistered(objectName)){
+          server.registerMBean(new Bean(each), objectName);
+        }
+
+        registered.put(each.getName(), objectName);
+      }
+
+      for(Map.Entry<String, ObjectName> each : registered.entrySet()){
+        if(names.contains(each.getKey())) continue;
+
+        if(server.isRegistered(each.getValue())){
+          server.unregisterMBean(each.getValue());
+        }
+
+        registered.remove(each.getKey());
+      }
+    } catch (JMException e){
+      throw new IOException("Unable to export circuit breakers to JMX", e);
+    }
+  }
+
+  /**
+   * unregisters every MBean this exporter registered.
+   */
+  public void close() throws IOException {
+    export(Collections.<CircuitBreakerSnapshot>emptyList());
+  }
+
+  /**
+   * an exported breaker. It holds on to the breaker's last snapshot, should the breaker stop
+   * being exported before its MBean is unregistered.
+   */
+  private final class Bean implements CircuitBreakerMXBean {
+    private volatile CircuitBreakerSnapshot last;
+
+    Bean(CircuitBreakerSnapshot first){
+      this.last = first;
+    }
+
+    private CircuitBreakerSnapshot current(){
+      final CircuitBreakerSnapshot latest = metrics.snapshot(last.getName());
+      if(latest != null) last = latest;
+      return last;
+    }
+
+    @Override public String getName() {
+      return last.getName();
+    }
+
+    @Override public String getStatus() {
+      return current().getStatus().name();
+    }
+
+    @Override public long getSuccessfulCalls() {
+      return current().getSuccessfulCalls();
+    }
+
+    @Override public long getFailedCalls() {
+      return current().getFailedCalls();
+    }
+
+    @Override public long getRejectedCalls() {
+      return current().getRejectedCalls();
+    }
+
+    @Override public long getIgnoredCalls() {
+      return current().getIgnoredCalls();
+    }
+
+    @Override public long getSlowCalls() {
+      return current().getSlowCalls();
+    }
+
+    @Override public long getCacheHits() {
+      return current().getCacheHits();
+    }
+
+    @Override public long getCacheMisses() {
+      return current().getCacheMisses();
+    }
+
+    @Override public long getInFlightCalls() {
+      return current().getInFlightCalls();
+    }
+
+    @Override public float getFailureRate() {
+      return current().getFailureRate();
+    }
+
+    @Override public long getMedianLatency() {
+      return current().getMedianLatency();
+    }
+
+    @Override public long getP99Latency() {
+      return current().getP99Latency();
+    }
+
+    @Override public long getP999Latency() {
+      return current().getP999Latency();
+    }
+
+    @Override public long getAvgRecoveryTime() {
+      return current().getAvgRecoveryTime();
+    }
+
+    @Override public long getTimeOpened() {
+      return current().getTimeInStatus(CircuitBreakerStatus.OPENED);
+    }
+
+    @Override public long getTimeHalfOpened() {
+      return current().getTimeInStatus(CircuitBreakerStatus.HALF_OPENED);
+    }
+
+    @Override public long getTimeClosed() {
+      return current().getTimeInStatus(CircuitBreakerStatus.CLOSED);
+    }
+
+    @Override public long getTransitions() {
+      final CircuitBreakerSnapshot snapshot = current();
+      long transitions = 0;
+      for(CircuitBreakerStatus each : CircuitBreakerStatus.values()){
+        transitions += snapshot.getTransitions(each);
+      }
+
+      return transitions;
+    }
+  }
+}
@@ -0,0 +1,245 @@
+package edu.ucsc.cb;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.ToLongFunction;
+
+/**
+ * the last result each guarded call returned, keyed by the call's arguments, so that calls the
+ * breaker turns down (or that fail) can still be answered from memory (see
+ * {@link CircuitBreakers#circuitBreak(Object, java.util.concurrent.Callable, CircuitBreaker,
+ * LastKnownGoodCache, java.util.function.Function)}).
+ *
+ * <p>
+ * Results expire once older than the cache's time to live, as measured by its {@link Clock clock}
+ * (the {@link Clock#SYSTEM system clock}, unless told otherwise). The cache is bounded both by the
+ * number of results and by their overall weight (e.g., their estimated size in bytes, see
+ * {@link #heapBudget(double)}); once over either bound, results are evicted in the order they
+ * were cached, except that those read since they were last considered for eviction get a
+ * second chance. Looking a result up is a {@link ConcurrentHashMap#get(Object)}; it neither
+ * locks nor allocates.
+ * </p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class LastKnownGoodCache<K, V> {
+  // result of a node that was unlinked; it can no longer be cached into.
+  private static final Result<Object> REMOVED = new Result<Object>(null, 0L, 0L);
+
+  private final ConcurrentMap<K, Node<K, V>>  nodes   = new ConcurrentHashMap<K, Node<K, V>>();
+  private final Queue<Node<K, V>>             order   = new ConcurrentLinkedQueue<Node<K, V>>(); // in the order keys were cached.
+  private final AtomicLong                    weight  = new AtomicLong();
+
+  private final int                           maxEntries;
+  private final long                          maxWeight;
+  private final ToLongFunction<? super V>     weigher;
+  private final long                          timeToLive;
+  private final Clock                         clock;
+
+  /**
+   * @param maxEntries how many results may be cached at once.
+   * @param timeToLive how long a result may be handed out once cached.
+   * @param unit the unit of the time to live.
+   */
+  public LastKnownGoodCache(int maxEntries, long timeToLive, TimeUnit unit){
+    this(maxEntries, Long.MAX_VALUE, new ToLongFunction<V>() {
+      @Override public long applyAsLong(V value) {
+        return 1L;
+      }
+    }, timeToLive, unit);
+  }
+
+  /**
+   * @param maxEntries how many results may be cached at once.
+   * @param maxWeight the overall weight cached results may add up to.
+   * @param weigher weight of a result; e.g., its estimated size in bytes.
+   * @param timeToLive how long a result may be handed out once cached.
+   * @param unit the unit of the time to live.
+   */
+  public LastKnownGoodCache(int maxEntries, long maxWeight, ToLongFunction<? super V> weigher,
+      long timeToLive, TimeUnit unit){
+    this(maxEntries, maxWeight, weigher, timeToLive, unit, Clock.SYSTEM);
+  }
+
+  /**
+   * @param maxEntries how many results may be cached at once.
+   * @param maxWeight the overall weight cached results may add up to.
+   * @param weigher weight of a result; e.g., its estimated size in bytes.
+   * @param timeToLive how long a result may be handed out once cached.
+   * @param unit the unit of the time to live.
+   * @param clock the clock results age by.
+   */
+  public LastKnownGoodCache(int maxEntries, long maxWeight, ToLongFunction<? super V> weigher,
+      long timeToLive, TimeUnit unit, Clock clock){
+    if(clock == null)   throw new NullPointerException("clock is required");
+    if(maxEntries < 1)  throw new IllegalArgumentException("max entries must be at least 1");
+    if(maxWeight < 1)   throw new IllegalArgumentException("max weight must be at least 1");
+    if(timeToLive <= 0) throw new IllegalArgumentException("time to live must be positive");
+
+    this.maxEntries = maxEntries;
+    this.maxWeight  = maxWeight;
+    this.weigher    = weigher;
+    this.timeToLive = unit.toNanos(timeToLive);
+    this.clock      = clock;
+  }
+
+  /**
+   * @param fraction fraction of the maximum heap size; e.g., 0.05 for 5%.
+   * @return the number of bytes the fraction of the heap amounts to; a memory-aware max
+   *    weight for caches whose weigher estimates sizes in bytes.
+   */
+  public static long heapBudget(double fraction){
+    if(fraction <= 0 || fraction > 1) throw new IllegalArgumentException("fraction must be in (0, 1]");
+    return Math.max(1L, (long) (Runtime.getRuntime().maxMemory() * fraction));
+  }
+
+  /**
+   * caches the latest result of a call. NULL results are not cached.
+   *
+   * @param key the call's arguments.
+   * @param value the call's result.
+   */
+  public void put(K key, V value){
+    if(value == null) return;
+
+    final Result<V> result = new Result<V>(value, weigher.applyAsLong(value), clock.nanoTime());
+    while (true){
+      Node<K, V> node = nodes.get(key);
+      if(node == null){
+        final Node<K, V> created = new Node<K, V>(key, result);
+        node = nodes.putIfAbsent(key, created);
+        if(node == null){
+          order.add(created);
+          weight.addAndGet(result.weight);
+          evict();
+          return;
+        }
+      }
+
+      // the key keeps its place in the eviction order, unless its node was removed meanwhile;
+      // then, the node is unlinked (if it still is not) and the result cached into a new one.
+      final Result<V> previous = node.result.get();
+      if(previous == REMOVED){
+        nodes.remove(key, node);
+        continue;
+      }
+
+      if(node.result.compareAndSet(previous, result)){
+        weight.addAndGet(result.weight - previous.weight);
+        evict();
+        return;
+      }
+    }
+  }
+
+  /**
+   * @param key the call's arguments.
+   * @return the call's last result, or NULL if there is none or it has expired.
+   */
+  public V get(K key){
+    final Node<K, V> node = nodes.get(key);
+    if(node == null) return null;
+
+    final Result<V> result = node.result.get();
+    if(result == REMOVED) return null;
+    if(clock.nanoTime() - result.cachedAt >= timeToLive) return null; // left to eviction.
+
+    if(!node.referenced) node.referenced = true;
+    return result.value;
+  }
+
+  /**
+   * @return the number of results cached, including expired ones not yet evicted.
+   */
+  public int size(){
+    return nodes.size();
+  }
+
+  /**
+   * @return the overall weight of the cached results.
+   */
+  public long weight(){
+    return weight.get();
+  }
+
+  /**
+   * drops every cached result.
+   */
+  public void clear(){
+    Node<K, V> node;
+    while ((node = order.poll()) != null){
+      remove(node);
+    }
+  }
+
+  private void evict(){
+    // every key is polled at most twice per eviction: once to take its second chance away.
+    int budget = 2 * maxEntries + 1;
+    while ((nodes.size() > maxEntries || weight.get() > maxWeight) && budget-- > 0){
+      final Node<K, V> node = order.poll();
+      if(node == null) return;
+
+      final boolean expired = clock.nanoTime() - node.result.get().cachedAt >= timeToLive;
+      if(node.referenced && !expired){
+        node.referenced = false;
+        order.add(node);
+        continue;
+      }
+
+      remove(node);
+    }
+  }
+
+  /**
+   * removes a node. Its last result is swapped for {@link #REMOVED} in the same atomic step
+   * that takes its weight away, so a concurrent put either lands before (and its weight is
+   * taken away too) or sees the node removed and caches into a new one.
+   */
+  private void remove(Node<K, V> node){
+    final Result<V> last = node.result.getAndSet(LastKnownGoodCache.<V>removed());
+    if(last == REMOVED) return;
+
+    weight.addAndGet(-last.weight);
+    nodes.remove(node.key, node);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <V> Result<V> removed(){
+    // carries no value; safe to hand out as any type of result.
+    return (Result<V>) (Result<?>) REMOVED;
+  }
+
+  /**
+   * a cached result of a call. Immutable, so that its value and age are always read together.
+   */
+  private static final class Result<V> {
+    final V     value;
+    final long  weight;
+    final long  cachedAt;
+
+    Result(V value, long weight, long cachedAt){
+      this.value    = value;
+      this.weight   = weight;
+      this.cachedAt = cachedAt;
+    }
+  }
+
+  /**
+   * a key's place in the cache, holding its latest result.
+   */
+  private static final class Node<K, V> {
+    final K                           key;
+    final AtomicReference<Result<V>>  result;
+    volatile boolean                  referenced; // read since it was last considered for eviction.
+
+    Node(K key, Result<V> result){
+      this.key    = key;
+      this.result = new AtomicReference<Result<V>>(result);
+    }
+  }
+}
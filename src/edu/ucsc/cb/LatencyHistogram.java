@@ -0,0 +1,143 @@
+package edu.ucsc.cb;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A fixed-size histogram of call latencies, in nanoseconds. Like HdrHistogram, it splits every
+ * power of two into {@value #SUB_BUCKETS} equally wide buckets, so any value in {@code [0,
+ * Long.MAX_VALUE]} is kept with a relative error below {@code 1/}{@value #SUB_BUCKETS}, in a
+ * few kilobytes per stripe.
+ *
+ * <p>
+ * Like a {@link StripedCounter}, it starts with a single stripe of buckets and adds stripes
+ * (up to {@value #MAX_STRIPES}) as threads contend to record; each thread records
+ * into the stripe its id hashes to, so a breaker shared by every request thread does not turn
+ * its busiest bucket into a single, heavily contended cache line. Recording is a single atomic
+ * compare-and-set when uncontended; reading a percentile sums the stripes bucket by bucket
+ * without stopping writers, so it may miss values recorded concurrently.
+ * </p>
+ *
+ * <p>
+ * A stripe is {@code 960} longs, or about 7.5 KB, so a breaker's histogram never takes more than
+ * about 60 KB, however many processors it runs on.
+ * </p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+final class LatencyHistogram {
+  static final int SUB_BUCKET_BITS = 4;
+  static final int SUB_BUCKETS     = 1 << SUB_BUCKET_BITS;
+
+  // values below SUB_BUCKETS get a bucket each; then, SUB_BUCKETS buckets per power of two.
+  private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  // a power of two, so a thread id masks to a stripe.
+  static final int MAX_STRIPES = 8;
+
+  private final AtomicReference<AtomicLongArray[]> stripes = new AtomicReference<AtomicLongArray[]>(
+      new AtomicLongArray[]{ new AtomicLongArray(BUCKETS) });
+
+  /**
+   * @param value latency to be recorded, in nanoseconds; negative values are ignored.
+   */
+  void record(long value){
+    if(value < 0) return;
+
+    final int               index   = indexOf(value);
+    final AtomicLongArray[] current = stripes.get();
+    final AtomicLongArray   counts  = current[stripeOf(Thread.currentThread()) & (current.length - 1)];
+    final long              count   = counts.get(index);
+    if(!counts.compareAndSet(index, count, count + 1)){
+      counts.getAndIncrement(index); // contended: recorded anyway, and then spread out.
+      grow(current);
+    }
+  }
+
+  /**
+   * doubles the number of stripes, unless they are at their max or another thread did so.
+   */
+  private void grow(AtomicLongArray[] current){
+    if(current.length >= MAX_STRIPES) return;
+
+    final AtomicLongArray[] next = Arrays.copyOf(current, current.length * 2);
+    for(int idx = current.length; idx < next.length; idx++){
+      next[idx] = new AtomicLongArray(BUCKETS);
+    }
+
+    stripes.compareAndSet(current, next);
+  }
+
+  private static int stripeOf(Thread thread){
+    final long id = thread.getId();
+    return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32); // spreads out sequential ids.
+  }
+
+  /**
+   * @return the count of a bucket across every stripe.
+   */
+  private static long countOf(AtomicLongArray[] stripes, int index){
+    long total = 0;
+    for(AtomicLongArray each : stripes){
+      total += each.get(index);
+    }
+
+    return total;
+  }
+
+  /**
+   * @return the number of recorded values.
+   */
+  long count(){
+    final AtomicLongArray[] current = stripes.get();
+
+    long total = 0;
+    for(int idx = 0; idx < BUCKETS; idx++){
+      total += countOf(current, idx);
+    }
+
+    return total;
+  }
+
+  /**
+   * @param percentile a percentage in {@code (0, 100]}; e.g., 99.9 for the p999.
+   * @return the highest value equivalent to the given percentile, or {@code -1} if nothing has
+   *    been recorded yet.
+   */
+  long percentile(double percentile){
+    if(percentile <= 0 || percentile > 100) {
+      throw new IllegalArgumentException("percentile must be in (0, 100]");
+    }
+
+    final long total = count();
+    if(total == 0) return -1L;
+
+    final AtomicLongArray[] current = stripes.get();
+    final long target = Math.max(1L, (long) Math.ceil(total * percentile / 100.0));
+    long seen = 0;
+    for(int idx = 0; idx < BUCKETS; idx++){
+      seen += countOf(current, idx);
+      if(seen >= target) return highestValueOf(idx);
+    }
+
+    // values recorded while scanning made the total outgrow the counts seen.
+    return highestValueOf(BUCKETS - 1);
+  }
+
+  static int indexOf(long value){
+    if(value < SUB_BUCKETS) return (int) value;
+
+    final int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+    final int sub   = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+    return (shift + 1) * SUB_BUCKETS + sub;
+  }
+
+  static long highestValueOf(int index){
+    if(index < SUB_BUCKETS) return index;
+
+    final int  shift  = index / SUB_BUCKETS - 1;
+    final long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+    return lowest + ((1L << shift) - 1);
+  }
+}
@@ -0,0 +1,38 @@
+package edu.ucsc.cb;
+
+/**
+ * Computes the concurrency limit of an {@link AdaptiveLimiter adaptive limiter} from the
+ * round-trip time and outcome of the calls it let thru. Algorithms are called concurrently
+ * and must not allocate; an algorithm instance belongs to a single limiter.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public interface LimitAlgorithm {
+  /**
+   * @return the limit the limiter starts with.
+   */
+  double getInitialLimit();
+
+  /**
+   * records a call's outcome in the algorithm's own state (e.g., the shortest round-trip time
+   * seen). Called once per call, ahead of {@link #update}, which may then be called more than
+   * once for that same call.
+   *
+   * @param rtt the call's round-trip time in nanoseconds, or {@code -1} if the call was not timed.
+   * @param dropped {@code true} if the call failed.
+   */
+  default void sample(long rtt, boolean dropped) {
+    // most algorithms need nothing but the arguments of update.
+  }
+
+  /**
+   * @param limit the current limit.
+   * @param rtt the call's round-trip time in nanoseconds, or {@code -1} if the call was not timed.
+   * @param inFlight the number of calls in flight when the call completed.
+   * @param dropped {@code true} if the call failed.
+   * @return the new limit. It must not depend on anything but the arguments and the
+   *    algorithm's own (thread-safe) state, which it must not change, as it may be recomputed
+   *    if another call changed the limit meanwhile.
+   */
+  double update(double limit, long rtt, int inFlight, boolean dropped);
+}
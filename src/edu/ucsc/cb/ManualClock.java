@@ -0,0 +1,65 @@
+package edu.ucsc.cb;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * a {@link Clock clock} that only moves when told to. Both its times move together: its
+ * wall-clock time is the time it was created at (or the given epoch time) plus however far it
+ * has been moved.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public final class ManualClock implements Clock {
+  private final AtomicLong  nanos = new AtomicLong();
+  private final long        epochMillis;
+
+  /**
+   * creates a clock that starts at zero nanoseconds, and at the current wall-clock time.
+   */
+  public ManualClock(){
+    this(System.currentTimeMillis());
+  }
+
+  /**
+   * @param epochMillis the clock's wall-clock time, in milliseconds since the epoch, at zero
+   *    nanoseconds.
+   */
+  public ManualClock(long epochMillis){
+    this.epochMillis = epochMillis;
+  }
+
+  @Override public long nanoTime() {
+    return nanos.get();
+  }
+
+  @Override public long currentTimeMillis() {
+    return epochMillis + TimeUnit.NANOSECONDS.toMillis(nanos.get());
+  }
+
+  /**
+   * moves the clock forward.
+   *
+   * @return the clock's new time, in nanoseconds.
+   */
+  public long advance(long duration, TimeUnit unit){
+    if(duration < 0) throw new IllegalArgumentException("the clock cannot go back");
+    return nanos.addAndGet(unit.toNanos(duration));
+  }
+
+  /**
+   * moves the clock to the given time, if it is not past it already.
+   *
+   * @param nanoTime the time, in nanoseconds.
+   */
+  public void set(long nanoTime){
+    while (true){
+      final long current = nanos.get();
+      if(current >= nanoTime || nanos.compareAndSet(current, nanoTime)) return;
+    }
+  }
+
+  @Override public String toString() {
+    return "ManualClock[" + nanos.get() + "ns]";
+  }
+}
@@ -0,0 +1,46 @@
+package edu.ucsc.cb;
+
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * An atomic reference padded on both sides, so that the cache line holding its value is never
+ * shared with (and invalidated by) unrelated, frequently written fields. The padding lives in
+ * the class hierarchy since the JVM is free to reorder the fields of a single class.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+final class PaddedAtomicReference<V> extends PaddedAtomicReferenceRhs {
+  private static final AtomicReferenceFieldUpdater<PaddedAtomicReferenceValue, Object> UPDATER =
+      AtomicReferenceFieldUpdater.newUpdater(PaddedAtomicReferenceValue.class, Object.class, "value");
+
+  PaddedAtomicReference(V initialValue){
+    this.value = initialValue;
+  }
+
+  @SuppressWarnings({"unchecked"})
+  V get(){
+    return (V) value;
+  }
+
+  void set(V newValue){
+    value = newValue;
+  }
+
+  boolean compareAndSet(V expect, V update){
+    return UPDATER.compareAndSet(this, expect, update);
+  }
+}
+
+@SuppressWarnings({"unused"})
+abstract class PaddedAtomicReferenceLhs {
+  long p1, p2, p3, p4, p5, p6, p7;
+}
+
+abstract class PaddedAtomicReferenceValue extends PaddedAtomicReferenceLhs {
+  volatile Object value;
+}
+
+@SuppressWarnings({"unused"})
+abstract class PaddedAtomicReferenceRhs extends PaddedAtomicReferenceValue {
+  long p9, p10, p11, p12, p13, p14, p15;
+}
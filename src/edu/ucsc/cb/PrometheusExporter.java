@@ -0,0 +1,179 @@
+package edu.ucsc.cb;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * writes breaker metrics in Prometheus' text exposition format (version 0.0.4). Every metric
+ * is labeled with the breaker's name; times are in seconds, as Prometheus expects.
+ *
+ * <p>
+ * {@link #serve(CircuitBreakerMetrics, InetSocketAddress)} serves the metrics of a
+ * {@link CircuitBreakerMetrics} at {@code /metrics}, using the JDK's built-in HTTP server.
+ * </p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class PrometheusExporter implements CircuitBreakerExporter {
+  static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  private static final double NANOS_PER_SECOND = 1e9;
+
+  private final Appendable out;
+
+  /**
+   * @param out where the metrics are written.
+   */
+  public PrometheusExporter(Appendable out){
+    this.out = out;
+  }
+
+  /**
+   * starts serving the metrics of some breakers at {@code http://address/metrics}.
+   *
+   * @param metrics the breakers.
+   * @param address the address to listen to; port zero picks any free port.
+   * @return the running server; stop it when it is no longer needed.
+   * @throws IOException if the server could not be started.
+   */
+  public static HttpServer serve(final CircuitBreakerMetrics metrics, InetSocketAddress address) throws IOException {
+    final HttpServer server = HttpServer.create(address, 0);
+    server.createContext("/metrics", new HttpHandler() {
+      @Override public void handle(HttpExchange exchange) throws IOException {
+        final StringBuilder text = new StringBuilder(4096);
+        metrics.export(new PrometheusExporter(text));
+
+        final byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream response = exchange.getResponseBody()) {
+          response.write(body);
+        }
+      }
+    });
+
+    server.start();
+    return server;
+  }
+
+  @Override public void export(List<CircuitBreakerSnapshot> snapshots) throws IOException {
+    header("circuit_breaker_state", "gauge", "1 if the breaker is in the given state, 0 otherwise.");
+    for(CircuitBreakerSnapshot each : snapshots){
+      for(CircuitBreakerStatus status : CircuitBreakerStatus.values()){
+        sample("circuit_breaker_state", each, "state", label(status), each.getStatus() == status ? 1 : 0);
+      }
+    }
+
+    header("circuit_breaker_calls_total", "counter", "Calls by outcome.");
+    for(CircuitBreakerSnapshot each : snapshots){
+      sample("circuit_breaker_calls_total", each, "kind", "successful", each.getSuccessfulCalls());
+      sample("circuit_breaker_calls_total", each, "kind", "failed", each.getFailedCalls());
+      sample("circuit_breaker_calls_total", each, "kind", "rejected", each.getRejectedCalls());
+      sample("circuit_breaker_calls_total", each, "kind", "ignored", each.getIgnoredCalls());
+    }
+
+    header("circuit_breaker_slow_calls_total", "counter", "Calls slower than the slow call threshold.");
+    for(CircuitBreakerSnapshot each : snapshots){
+      sample("circuit_breaker_slow_calls_total", each, null, null, each.getSlowCalls());
+    }
+
+    header("circuit_breaker_cache_lookups_total", "counter", "Failed or rejected calls looked up in a last known good cache.");
+    for(CircuitBreakerSnapshot each : snapshots){
+      sample("circuit_breaker_cache_lookups_total", each, "result", "hit", each.getCacheHits());
+      sample("circuit_breaker_cache_lookups_total", each, "result", "miss", each.getCacheMisses());
+    }
+
+    header("circuit_breaker_calls_in_flight", "gauge", "Guarded calls started and not completed yet.");
+    for(CircuitBreakerSnapshot each : snapshots){
+      sample("circuit_breaker_calls_in_flight", each, null, null, each.getInFlightCalls());
+    }
+
+    header("circuit_breaker_failure_rate", "gauge", "Percentage of completed calls that failed; -1 if none completed.");
+    for(CircuitBreakerSnapshot each : snapshots){
+      sample("circuit_breaker_failure_rate", each, null, null, each.getFailureRate());
+    }
+
+    header("circuit_breaker_call_latency_seconds", "summary", "Latency of timed calls.");
+    for(CircuitBreakerSnapshot each : snapshots){
+      if(each.getMedianLatency() >= 0){
+        sample("circuit_breaker_call_latency_seconds", each, "quantile", "0.5", seconds(each.getMedianLatency()));
+        sample("circuit_breaker_call_latency_seconds", each, "quantile", "0.99", seconds(each.getP99Latency()));
+        sample("circuit_breaker_call_latency_seconds", each, "quantile", "0.999", seconds(each.getP999Latency()));
+      }
+
+      sample("circuit_breaker_call_latency_seconds_sum", each, null, null, seconds(each.getTotalLatency()));
+      sample("circuit_breaker_call_latency_seconds_count", each, null, null, each.getTimedCalls());
+    }
+
+    header("circuit_breaker_state_seconds_total", "counter", "Time spent in each state.");
+    for(CircuitBreakerSnapshot each : snapshots){
+      for(CircuitBreakerStatus status : CircuitBreakerStatus.values()){
+        sample("circuit_breaker_state_seconds_total", each, "state", label(status),
+            seconds(each.getTimeInStatus(status)));
+      }
+    }
+
+    header("circuit_breaker_transitions_total", "counter", "Transitions into each state.");
+    for(CircuitBreakerSnapshot each : snapshots){
+      for(CircuitBreakerStatus status : CircuitBreakerStatus.values()){
+        sample("circuit_breaker_transitions_total", each, "state", label(status), each.getTransitions(status));
+      }
+    }
+
+    header("circuit_breaker_recovery_seconds", "gauge", "Average time from opening to closing again; -1 if never recovered.");
+    for(CircuitBreakerSnapshot each : snapshots){
+      final long recovery = each.getAvgRecoveryTime();
+      sample("circuit_breaker_recovery_seconds", each, null, null, recovery < 0 ? -1 : seconds(recovery));
+    }
+  }
+
+  private void header(String metric, String type, String help) throws IOException {
+    out.append("# HELP ").append(metric).append(' ').append(help).append('\n');
+    out.append("# TYPE ").append(metric).append(' ').append(type).append('\n');
+  }
+
+  private void sample(String metric, CircuitBreakerSnapshot snapshot, String label, String value,
+      double sample) throws IOException {
+    out.append(metric).append("{name=\"");
+    escape(snapshot.getName());
+    out.append('"');
+    if(label != null){
+      out.append(',').append(label).append("=\"").append(value).append('"');
+    }
+
+    out.append("} ");
+    if(sample == Math.rint(sample) && !Double.isInfinite(sample)){
+      out.append(Long.toString((long) sample));
+    } else {
+      out.append(Double.toString(sample));
+    }
+
+    out.append('\n');
+  }
+
+  private void escape(String value) throws IOException {
+    for(int idx = 0; idx < value.length(); idx++){
+      final char each = value.charAt(idx);
+      switch (each){
+        case '\\': out.append("\\\\"); break;
+        case '"':  out.append("\\\""); break;
+        case '\n': out.append("\\n");  break;
+        default:   out.append(each);
+      }
+    }
+  }
+
+  private static String label(CircuitBreakerStatus status){
+    return status.name().toLowerCase();
+  }
+
+  private static double seconds(long nanos){
+    return nanos / NANOS_PER_SECOND;
+  }
+}
@@ -0,0 +1,21 @@
+package edu.ucsc.cb;
+
+/**
+ * thrown by a {@link RateLimiter rate limiter} when a call would exceed its rate.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class RateLimitExceededException extends CallNotPermittedException {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * creates a rejection with neither stack trace nor suppressed exceptions, and therefore
+   * safe to be shared by every rejected call.
+   *
+   * @param message
+   *    the detail message.
+   */
+  public RateLimitExceededException(String message) {
+    super(message, false);
+  }
+}
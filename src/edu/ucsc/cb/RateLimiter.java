@@ -0,0 +1,156 @@
+package edu.ucsc.cb;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * caps how many calls per second may reach a dependency; e.g., a partner with a strict quota.
+ * Where a {@link Bulkhead bulkhead} caps the calls in flight, a rate limiter caps the calls
+ * started per unit of time, letting bursts of up to a given size thru.
+ *
+ * <p>
+ * It implements the generic cell rate algorithm (GCRA): its whole state is the theoretical
+ * arrival time of the next call, one {@link AtomicLong} compared against
+ * {@link System#nanoTime()}. Every call that goes thru pushes that time one emission interval
+ * ({@code 1 / rate}) further; a call is turned down if that would push it further than the
+ * burst allows ahead of now. Taking a permit is a single compare-and-set, turning a call down
+ * is a plain read, and neither allocates. Callers willing to wait (see
+ * {@link #tryAcquire(long, TimeUnit)}) reserve their slot right away and then park until it
+ * comes; nobody ever needs to wake them up.
+ * </p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class RateLimiter {
+  private static final String REJECTION_MESSAGE = "Rate limit exceeded; call not permitted.";
+
+  private final AtomicLong      arrivalTime;                          // theoretical arrival time of the next call.
+  private final StripedCounter  rejectedCalls = new StripedCounter(); // # of calls turned down.
+
+  private final long  emissionInterval;   // nanoseconds between two calls at the sustained rate.
+  private final long  burstTolerance;     // how far ahead of now the arrival time may be pushed.
+  private final long  maxWaitTime;
+
+  private final RateLimitExceededException rejection = new RateLimitExceededException(REJECTION_MESSAGE);
+
+  /**
+   * @param permitsPerSecond the sustained rate.
+   * @param maxBurst how many calls may go thru at once after a quiet period.
+   * @param maxWaitTime how long (in nanoseconds) {@link #acquire()} waits for a permit; zero
+   *    means callers are rejected right away.
+   */
+  public RateLimiter(double permitsPerSecond, int maxBurst, long maxWaitTime){
+    if(permitsPerSecond <= 0) throw new IllegalArgumentException("permits per second must be positive");
+    if(maxBurst <= 0) throw new IllegalArgumentException("max burst must be positive");
+    if(maxWaitTime < 0) throw new IllegalArgumentException("max wait time cannot be negative");
+
+    this.emissionInterval = Math.max(1L, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+    this.burstTolerance   = emissionInterval * maxBurst;
+    this.maxWaitTime      = maxWaitTime;
+    this.arrivalTime      = new AtomicLong(System.nanoTime());
+  }
+
+  /**
+   * takes a permit, waiting for up to the limiter's max wait time if there is none.
+   *
+   * @throws RateLimitExceededException if no permit became available in time.
+   */
+  public void acquire() {
+    try {
+      if(tryAcquire(maxWaitTime, TimeUnit.NANOSECONDS)) return;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    throw rejection;
+  }
+
+  /**
+   * takes a permit if there is one, without waiting.
+   *
+   * @return {@code true} if the call may go thru, {@code false} if it was rejected.
+   */
+  public boolean tryAcquire() {
+    final long now = System.nanoTime();
+    while (true){
+      final long current = arrivalTime.get();
+      final long next    = Math.max(current, now) + emissionInterval;
+      if(next - now > burstTolerance){
+        rejectedCalls.increment();
+        return false;
+      }
+
+      if(arrivalTime.compareAndSet(current, next)) return true;
+    }
+  }
+
+  /**
+   * takes a permit, waiting for up to {@code timeout} if there is none. A call that would have
+   * to wait longer is turned down right away, without waiting at all.
+   *
+   * @return {@code true} if the call may go thru, {@code false} if it was rejected.
+   * @throws InterruptedException if interrupted while waiting; the permit is lost.
+   */
+  public boolean tryAcquire(long timeout, TimeUnit unit) throws InterruptedException {
+    final long maxWait  = Math.max(0L, unit.toNanos(timeout));
+    final long now      = System.nanoTime();
+    long wait;
+    while (true){
+      final long current = arrivalTime.get();
+      final long next    = Math.max(current, now) + emissionInterval;
+      wait = next - now - burstTolerance;
+      if(wait > maxWait){
+        rejectedCalls.increment();
+        return false;
+      }
+
+      if(arrivalTime.compareAndSet(current, next)) break;
+    }
+
+    final long deadline = now + wait;
+    for(long remaining = wait; remaining > 0; remaining = deadline - System.nanoTime()){
+      LockSupport.parkNanos(this, remaining);
+      if(Thread.interrupted()) throw new InterruptedException();
+    }
+
+    return true;
+  }
+
+  /**
+   * @return the sustained number of calls per second.
+   */
+  public double getPermitsPerSecond() {
+    return (double) TimeUnit.SECONDS.toNanos(1) / emissionInterval;
+  }
+
+  /**
+   * @return how many calls may go thru at once after a quiet period.
+   */
+  public int getMaxBurst() {
+    return (int) (burstTolerance / emissionInterval);
+  }
+
+  /**
+   * @return how long (in nanoseconds) {@link #acquire()} waits for a permit.
+   */
+  public long getMaxWaitTime() {
+    return maxWaitTime;
+  }
+
+  /**
+   * @return how many calls may go thru right now without waiting.
+   */
+  public int getAvailablePermits() {
+    final long now   = System.nanoTime();
+    final long ahead = Math.max(0L, arrivalTime.get() - now);
+    return (int) ((burstTolerance - ahead) / emissionInterval);
+  }
+
+  /**
+   * @return the number of calls turned down so far.
+   */
+  public long getRejectedCalls() {
+    return rejectedCalls.get();
+  }
+}
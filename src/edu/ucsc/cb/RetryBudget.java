@@ -0,0 +1,69 @@
+package edu.ucsc.cb;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * caps the extra load retries may add to a dependency. It is a token bucket: every call (not
+ * every attempt) deposits a fraction of a token, and every retry takes a whole one. Hence, a
+ * budget with a ratio of 0.1 lets retries add at most 10% to the calls made, however many
+ * attempts each call may take, and it adds up the same way across every instance of a
+ * cluster. The bucket holds at most a given number of tokens, so a quiet period does not buy
+ * an unbounded burst of retries later.
+ *
+ * <p>
+ * Tokens are kept in thousandths, in one {@link AtomicLong} updated by compare-and-set.
+ * Share one budget among every call to the same dependency.
+ * </p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public final class RetryBudget {
+  private static final long ONE_TOKEN = 1000L;
+
+  private final AtomicLong  tokens;     // in thousandths of a token.
+  private final long        deposit;
+  private final long        maxTokens;
+
+  /**
+   * @param ratio how many retries each call is worth; e.g., 0.1 for at most 10% extra load.
+   * @param maxTokens how many retries may be banked; also the tokens the budget starts with.
+   */
+  public RetryBudget(double ratio, int maxTokens){
+    if(ratio <= 0 || ratio > 1) throw new IllegalArgumentException("ratio must be in (0, 1]");
+    if(maxTokens < 1)           throw new IllegalArgumentException("max tokens must be at least 1");
+
+    this.deposit    = Math.max(1L, Math.round(ratio * ONE_TOKEN));
+    this.maxTokens  = maxTokens * ONE_TOKEN;
+    this.tokens     = new AtomicLong(this.maxTokens);
+  }
+
+  /**
+   * earns the budget a call's share of a retry; called once per call, before its first attempt.
+   */
+  public void deposit(){
+    while (true){
+      final long current = tokens.get();
+      if(current >= maxTokens) return;
+      if(tokens.compareAndSet(current, Math.min(maxTokens, current + deposit))) return;
+    }
+  }
+
+  /**
+   * @return {@code true} if a retry may be made (and its token was taken); {@code false} if the
+   *    budget is spent.
+   */
+  public boolean tryAcquire(){
+    while (true){
+      final long current = tokens.get();
+      if(current < ONE_TOKEN) return false;
+      if(tokens.compareAndSet(current, current - ONE_TOKEN)) return true;
+    }
+  }
+
+  /**
+   * @return the number of retries that may be made right now.
+   */
+  public long getAvailableRetries(){
+    return tokens.get() / ONE_TOKEN;
+  }
+}
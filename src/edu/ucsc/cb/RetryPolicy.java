@@ -0,0 +1,218 @@
+package edu.ucsc.cb;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * An immutable retry policy: how many attempts a call may take, how long to back off between
+ * them, and which failures are worth another attempt (see {@link CircuitBreakers#retry}).
+ *
+ * <p>
+ * Backoffs grow exponentially from the initial backoff up to the max backoff. {@link Jitter}
+ * spreads them, so that callers that failed together do not retry together. Whatever the
+ * policy, a call is never retried once its breaker is {@link CircuitBreakerStatus#OPENED} (or
+ * turns the call down), nor when the policy's {@link RetryBudget budget} is spent.
+ * </p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public final class RetryPolicy {
+  /**
+   * how backoffs are spread.
+   */
+  public enum Jitter {
+    /** backoff = min(max, initial * multiplier^retry). */
+    NONE,
+    /** backoff = random(0, min(max, initial * multiplier^retry)). */
+    FULL,
+    /** backoff = min(max, random(initial, previous backoff * 3)). */
+    DECORRELATED
+  }
+
+  private final int                           maxAttempts;
+  private final long                          initialBackoff;
+  private final long                          maxBackoff;
+  private final double                        multiplier;
+  private final Jitter                        jitter;
+  private final Predicate<? super Exception>  retryOn;
+  private final RetryBudget                   budget;
+
+  private RetryPolicy(Builder builder){
+    this.maxAttempts    = builder.maxAttempts;
+    this.initialBackoff = builder.initialBackoff;
+    this.maxBackoff     = builder.maxBackoff;
+    this.multiplier     = builder.multiplier;
+    this.jitter         = builder.jitter;
+    this.retryOn        = builder.retryOn;
+    this.budget         = builder.budget;
+  }
+
+  /**
+   * @return a builder initialized with the default settings: 3 attempts, backing off from
+   *    100 milliseconds up to 10 seconds, doubling, with full jitter, retrying any failure,
+   *    without a budget.
+   */
+  public static Builder builder(){
+    return new Builder();
+  }
+
+  /**
+   * @return the number of attempts a call may take, the first one included.
+   */
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  /**
+   * @return the base backoff, in nanoseconds.
+   */
+  public long getInitialBackoff() {
+    return initialBackoff;
+  }
+
+  /**
+   * @return the longest backoff, in nanoseconds.
+   */
+  public long getMaxBackoff() {
+    return maxBackoff;
+  }
+
+  public double getMultiplier() {
+    return multiplier;
+  }
+
+  public Jitter getJitter() {
+    return jitter;
+  }
+
+  /**
+   * @return the policy's retry budget, or NULL if retries are not budgeted.
+   */
+  public RetryBudget getBudget() {
+    return budget;
+  }
+
+  /**
+   * marks the start of a call; i.e., earns the budget, if any, its share of a retry.
+   */
+  void callStarted(){
+    if(budget != null) budget.deposit();
+  }
+
+  /**
+   * @param attempt the attempt that just failed, starting at 1.
+   * @param error the attempt's failure.
+   * @param breaker the call's breaker; NULL if it has none.
+   * @return {@code true} if the call may be made again; in which case, the budget's token for
+   *    the retry has been taken.
+   */
+  boolean shouldRetry(int attempt, Exception error, CircuitBreaker<?> breaker){
+    if(attempt >= maxAttempts) return false;
+    if(error instanceof CallNotPermittedException) return false;
+    if(breaker != null && breaker.status() == CircuitBreakerStatus.OPENED) return false;
+    if(!retryOn.test(error)) return false;
+
+    return budget == null || budget.tryAcquire();
+  }
+
+  /**
+   * @param attempt the attempt that just failed, starting at 1.
+   * @param previousBackoff the backoff before that attempt, or zero if it was the first.
+   * @return how long (in nanoseconds) to wait before the next attempt.
+   */
+  long backoff(int attempt, long previousBackoff){
+    final ThreadLocalRandom random = ThreadLocalRandom.current();
+    switch (jitter){
+      case DECORRELATED:
+        final long upper = Math.max(initialBackoff, previousBackoff) * 3;
+        return Math.min(maxBackoff, initialBackoff + (long) (random.nextDouble() * (upper - initialBackoff)));
+      case FULL:
+        return (long) (random.nextDouble() * exponential(attempt));
+      default:
+        return exponential(attempt);
+    }
+  }
+
+  private long exponential(int attempt){
+    final double backoff = initialBackoff * Math.pow(multiplier, attempt - 1);
+    return backoff >= maxBackoff ? maxBackoff : (long) backoff;
+  }
+
+  /**
+   * Builds {@link RetryPolicy} objects.
+   */
+  public static final class Builder {
+    private int                           maxAttempts     = 3;
+    private long                          initialBackoff  = TimeUnit.MILLISECONDS.toNanos(100);
+    private long                          maxBackoff      = TimeUnit.SECONDS.toNanos(10);
+    private double                        multiplier      = 2.0;
+    private Jitter                        jitter          = Jitter.FULL;
+    private Predicate<? super Exception>  retryOn         = new Predicate<Exception>() {
+      @Override public boolean test(Exception error) {
+        return true;
+      }
+    };
+    private RetryBudget                   budget          = null;
+
+    Builder(){}
+
+    public Builder maxAttempts(int maxAttempts){
+      this.maxAttempts = maxAttempts;
+      return this;
+    }
+
+    /**
+     * @param initialBackoff the base backoff.
+     * @param maxBackoff the longest backoff.
+     * @param unit the unit of both backoffs.
+     */
+    public Builder backoff(long initialBackoff, long maxBackoff, TimeUnit unit){
+      this.initialBackoff = unit.toNanos(initialBackoff);
+      this.maxBackoff     = unit.toNanos(maxBackoff);
+      return this;
+    }
+
+    public Builder multiplier(double multiplier){
+      this.multiplier = multiplier;
+      return this;
+    }
+
+    public Builder jitter(Jitter jitter){
+      this.jitter = jitter;
+      return this;
+    }
+
+    /**
+     * @param retryOn tells which failures are worth another attempt.
+     */
+    public Builder retryOn(Predicate<? super Exception> retryOn){
+      this.retryOn = retryOn;
+      return this;
+    }
+
+    /**
+     * @param budget budget every retry must be paid from; shared by the calls it budgets.
+     */
+    public Builder budget(RetryBudget budget){
+      this.budget = budget;
+      return this;
+    }
+
+    /**
+     * @return a new policy.
+     * @throws IllegalArgumentException if any setting is out of range.
+     */
+    public RetryPolicy build(){
+      if(maxAttempts < 1) throw new IllegalArgumentException("max attempts must be at least 1");
+      if(initialBackoff < 0 || maxBackoff < initialBackoff){
+        throw new IllegalArgumentException("backoffs must be positive, and the max no shorter than the initial");
+      }
+
+      if(multiplier < 1) throw new IllegalArgumentException("multiplier must be at least 1");
+      if(jitter == null || retryOn == null) throw new NullPointerException("jitter and retryOn are required");
+
+      return new RetryPolicy(this);
+    }
+  }
+}
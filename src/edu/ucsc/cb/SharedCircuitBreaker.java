@@ -0,0 +1,419 @@
+package edu.ucsc.cb;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * basic circuit breaker whose state lives in a {@link SharedStateFile shared state file}
+ * rather than in the heap. Every process on the host with a breaker of the same name, on the
+ * same file, shares it: once the dependency has failed {@code failedCallThreshold} times in a
+ * row, whichever processes made the calls, every one of them backs off. It follows the same
+ * rules as {@link DefaultCircuitBreaker}.
+ *
+ * <p>
+ * The breaker's status, its retry time (or the time it last changed status) and its
+ * half-open probe counters are packed into one 64-bit word of its slot, so every transition
+ * is a single compare-and-set, as with the in-heap breakers' {@code State} snapshots. Failed
+ * calls since the breaker closed are a second word, added to atomically. Times are wall-clock
+ * milliseconds (see {@link Clock#currentTimeMillis()}), since nanosecond times mean nothing
+ * outside the process that read them; hence, retry thresholds are rounded up to the
+ * millisecond.
+ * </p>
+ *
+ * <p>
+ * {@link #getStatistics() Statistics} are the process' own: the calls it made, and the
+ * transitions it made happen.
+ * </p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class SharedCircuitBreaker<E extends Exception> implements CircuitBreaker<E> {
+  private static final String REJECTION_MESSAGE = "Circuit breaker is OPENED; call not permitted.";
+  private static final long   UNKNOWN_PERMIT    = -2L; // outcome recorded without the call's permit.
+
+  // slot layout; the slot's key is at offset 0.
+  private static final int STATE      = 8;   // packed status, probe counters and time.
+  private static final int FAILURES   = 16;  // failed calls since the cb closed.
+  private static final int SINCE      = 24;  // time at which the cb moved to its status.
+  private static final int OPENED_AT  = 32;  // time at which the cb last OPENED; kept until it closes.
+
+  // the state word: time (42 bits) | probe successes (10) | probe permits (10) | status (2).
+  private static final long MAX_PROBES    = (1 << 10) - 1;
+  private static final int  PERMITS_SHIFT = 2;
+  private static final int  SUCCESS_SHIFT = 12;
+  private static final int  TIME_SHIFT    = 22;
+  private static final long MAX_TIME      = -1L >>> TIME_SHIFT;
+
+  // a zeroed slot is a CLOSED breaker.
+  private static final int CLOSED       = 0;
+  private static final int OPENED       = 1;
+  private static final int HALF_OPENED  = 2;
+
+  private final SharedStateFile                 file;
+  private final int                             slot;
+  private final String                          name;
+  private final Supplier<CircuitBreakerConfig>  settings;
+  private final SharedStatistics                statistics = new SharedStatistics();
+  private final CircuitBreakerEventBus          events;
+  private final CallNotPermittedException       rejection;
+
+  /**
+   * @param file the file holding the breaker's state.
+   * @param name the breaker's name; breakers with the same name, on the same file, share
+   *    their state.
+   * @param settings the breaker's settings; every process should use the same ones.
+   * @throws IllegalStateException if the file has no free slot for the breaker.
+   */
+  public SharedCircuitBreaker(SharedStateFile file, String name, Supplier<CircuitBreakerConfig> settings){
+    this(file, name, settings, CircuitBreakerEventBus.getDefault());
+  }
+
+  /**
+   * @param file the file holding the breaker's state.
+   * @param name the breaker's name.
+   * @param settings the breaker's settings.
+   * @param events where the breaker publishes the status changes it makes and its call outcomes.
+   */
+  public SharedCircuitBreaker(SharedStateFile file, String name, Supplier<CircuitBreakerConfig> settings,
+      CircuitBreakerEventBus events){
+    this.file       = file;
+    this.slot       = file.slot(name);
+    this.name       = name;
+    this.settings   = settings;
+    this.events     = events;
+    this.rejection  = CallNotPermittedException.stackless(REJECTION_MESSAGE);
+  }
+
+  @Override public void callStarted() throws E {
+    callPermitted();
+  }
+
+  /**
+   * acknowledges a call. A trial call's permit is the time its half-open period started, which
+   * every process sharing the breaker sees alike.
+   *
+   * <p>
+   * A half-open period whose permits have all been taken for longer than the retry threshold
+   * is given up on: its trial calls are taken for lost (e.g., their process was killed), and a
+   * new period starts with this call as its first trial call. The lost permits hold the old
+   * period's time, so they go stale; this way, the state file never keeps every process, nor
+   * the ones started later, turning calls down for good.
+   * </p>
+   */
+  @Override public long callPermitted() throws E {
+    long current = state();
+    if(status(current) == CLOSED){
+      return NO_PROBE;
+    }
+
+    while(status(current) == OPENED){
+      final long now = now();
+      if(now < time(current)){
+        throw rejectCall(current);
+      }
+
+      // this call is the first trial call.
+      if(transition(current, pack(HALF_OPENED, probeLimit() - 1, 0, now), now)){
+        return now;
+      }
+
+      current = state();
+    }
+
+    while(status(current) == HALF_OPENED){
+      if(permits(current) > 0){
+        if(file.compareAndSet(slot + STATE, current, current - (1L << PERMITS_SHIFT))){
+          return time(current);
+        }
+      } else {
+        final long now = now();
+        if(now - time(current) <= retryThresholdMillis()){
+          throw rejectCall(current);
+        }
+
+        if(transition(current, pack(HALF_OPENED, probeLimit() - 1, 0, now), now)){
+          return now;
+        }
+      }
+
+      current = state();
+    }
+
+    return NO_PROBE; // CLOSED meanwhile.
+  }
+
+  @Override public void callSucceeded() {
+    succeeded(UNKNOWN_PERMIT, CircuitBreakerEvent.NO_ELAPSED_TIME);
+  }
+
+  @Override public void callFailed(E error) {
+    failed(UNKNOWN_PERMIT, error, CircuitBreakerEvent.NO_ELAPSED_TIME);
+  }
+
+  @Override public void callSucceeded(long elapsedTime) {
+    succeeded(UNKNOWN_PERMIT, elapsedTime);
+  }
+
+  @Override public void callFailed(E error, long elapsedTime) {
+    failed(UNKNOWN_PERMIT, error, elapsedTime);
+  }
+
+  @Override public void callSucceeded(long permit, long elapsedTime) {
+    succeeded(permit, elapsedTime);
+  }
+
+  @Override public void callFailed(long permit, E error, long elapsedTime) {
+    failed(permit, error, elapsedTime);
+  }
+
+  @Override public void callCancelled() {
+    ignored(UNKNOWN_PERMIT);
+  }
+
+  @Override public void callCancelled(long permit) {
+    ignored(permit);
+  }
+
+  private void succeeded(long permit, long elapsedTime) {
+    statistics.succeeded(elapsedTime);
+    long current = state();
+    events.publish(CircuitBreakerEvent.Type.CALL_SUCCEEDED, this, statusOf(current),
+        statusOf(current), elapsedTime, null);
+
+    if(status(current) == CLOSED){
+      // read first; healthy traffic should not write to the shared slot.
+      if(file.get(slot + FAILURES) != 0L) file.set(slot + FAILURES, 0L);
+      return;
+    }
+
+    final int threshold = getConfig().getSuccessfulProbeThreshold();
+    while(status(current) == HALF_OPENED && isProbe(current, permit)){
+      if(successes(current) + 1 >= threshold){
+        file.set(slot + FAILURES, 0L);
+        final long now = now();
+        transition(current, pack(CLOSED, 0, 0, now), now);
+        return;
+      }
+
+      // the trial call is over; count it, and let another one in.
+      final long next = current + (1L << SUCCESS_SHIFT) + (1L << PERMITS_SHIFT);
+      if(file.compareAndSet(slot + STATE, current, next)) return;
+
+      current = state();
+    }
+    // a call that started before the breaker OPENED proves nothing about the recovery.
+  }
+
+  private void failed(long permit, E error, long elapsedTime) {
+    switch (getConfig().getExceptionClassifier().classify(error)){
+      case SUCCESS: succeeded(permit, elapsedTime); return;
+      case IGNORED: ignored(permit);                return;
+      default:      break;
+    }
+
+    statistics.failed(elapsedTime);
+    final long current = state();
+    events.publish(CircuitBreakerEvent.Type.CALL_FAILED, this, statusOf(current),
+        statusOf(current), elapsedTime, error);
+
+    if(status(current) == HALF_OPENED){
+      if(isProbe(current, permit)) trip(current);
+    } else if(status(current) == CLOSED){
+      if(file.getAndAdd(slot + FAILURES, 1L) + 1 >= getFailedCallThreshold()){
+        trip(current);
+      }
+    }
+  }
+
+  /**
+   * records a call whose failure does not count; a trial call gives its permit back.
+   */
+  private void ignored(long permit) {
+    statistics.ignored();
+    long current = state();
+    while(status(current) == HALF_OPENED && isProbe(current, permit)){
+      if(file.compareAndSet(slot + STATE, current, current + (1L << PERMITS_SHIFT))) return;
+
+      current = state();
+    }
+  }
+
+  /**
+   * opens the breaker, unless another thread (or process) has already moved it away from
+   * {@code current}.
+   */
+  private void trip(long current) {
+    final long now        = now();
+    final long retryTime  = Math.min(MAX_TIME, now + retryThresholdMillis()); // the latest time the state word holds.
+    if(transition(current, pack(OPENED, 0, 0, retryTime), now) && status(current) == CLOSED){
+      file.set(slot + OPENED_AT, now);
+    }
+  }
+
+  /**
+   * moves the breaker from one state to another, and accounts for the move.
+   *
+   * @return {@code true} if this call made the move.
+   */
+  private boolean transition(long current, long next, long now){
+    if(!file.compareAndSet(slot + STATE, current, next)) return false;
+
+    final long since = file.getAndSet(slot + SINCE, now);
+    statistics.transitioned(current, next, since, now);
+    if(status(current) != CLOSED || status(next) != CLOSED){
+      events.publish(CircuitBreakerEvent.Type.STATUS_CHANGED, this, statusOf(current),
+          statusOf(next), CircuitBreakerEvent.NO_ELAPSED_TIME, null);
+    }
+
+    return true;
+  }
+
+  private CallNotPermittedException rejectCall(long current) {
+    statistics.rejected();
+    events.publish(CircuitBreakerEvent.Type.CALL_REJECTED, this, statusOf(current),
+        statusOf(current), CircuitBreakerEvent.NO_ELAPSED_TIME, null);
+    return getConfig().inDebugMode() ? new CallNotPermittedException(REJECTION_MESSAGE, null) : rejection;
+  }
+
+  /**
+   * @return the retry threshold, rounded up to milliseconds; it never overflows.
+   */
+  private long retryThresholdMillis(){
+    final long threshold = getRetryThreshold();
+    return TimeUnit.NANOSECONDS.toMillis(threshold) + (threshold % 1_000_000L == 0 ? 0 : 1);
+  }
+
+  private long state(){
+    return file.get(slot + STATE);
+  }
+
+  /**
+   * @return how many trial calls may be in flight at once while HALF_OPENED.
+   */
+  private int probeLimit(){
+    return (int) Math.min(MAX_PROBES, getConfig().getHalfOpenPermits());
+  }
+
+  /**
+   * @return {@code true} if the call holding the permit is one of the current half-open
+   *    period's trial calls; a call whose permit is unknown is, as long as any trial call is
+   *    in flight.
+   */
+  private boolean isProbe(long current, long permit){
+    return permit == time(current) || (permit == UNKNOWN_PERMIT && permits(current) < probeLimit());
+  }
+
+  private long now(){
+    return getConfig().getClock().currentTimeMillis();
+  }
+
+  private static long pack(int status, int permits, int successes, long time){
+    return (time << TIME_SHIFT) | ((long) successes << SUCCESS_SHIFT)
+        | ((long) permits << PERMITS_SHIFT) | status;
+  }
+
+  private static int status(long state){
+    return (int) (state & 3L);
+  }
+
+  private static int permits(long state){
+    return (int) ((state >>> PERMITS_SHIFT) & MAX_PROBES);
+  }
+
+  private static int successes(long state){
+    return (int) ((state >>> SUCCESS_SHIFT) & MAX_PROBES);
+  }
+
+  /**
+   * @return the retry time of an OPENED breaker; otherwise, the time it moved to its status.
+   */
+  private static long time(long state){
+    return state >>> TIME_SHIFT;
+  }
+
+  private static CircuitBreakerStatus statusOf(long state){
+    switch (status(state)){
+      case OPENED:      return CircuitBreakerStatus.OPENED;
+      case HALF_OPENED: return CircuitBreakerStatus.HALF_OPENED;
+      default:          return CircuitBreakerStatus.CLOSED;
+    }
+  }
+
+  @Override public CircuitBreakerStatus status() {
+    return statusOf(state());
+  }
+
+  /**
+   * @return the breaker's name; its key in the state file.
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return the number of failed calls since the breaker closed, across processes.
+   */
+  public long getFailedCalls() {
+    return file.get(slot + FAILURES);
+  }
+
+  @Override public long getRetryThreshold() {
+    return getConfig().getRetryThreshold();
+  }
+
+  @Override public long getFailedCallThreshold() {
+    return getConfig().getFailedCallThreshold();
+  }
+
+  /**
+   * @return the breaker's current settings.
+   */
+  public CircuitBreakerConfig getConfig() {
+    return settings.get();
+  }
+
+  @Override public CircuitBreakerStatistics getStatistics() {
+    return statistics;
+  }
+
+  /**
+   * the process' statistics: its calls, plus the time spent in each status and the number of
+   * transitions into it, for the transitions it made.
+   */
+  private final class SharedStatistics extends CallStatistics {
+    private final AtomicLongArray timeInStatus  = new AtomicLongArray(CircuitBreakerStatus.values().length);
+    private final AtomicLongArray transitions   = new AtomicLongArray(CircuitBreakerStatus.values().length);
+    private final StripedCounter  recoveries    = new StripedCounter();
+    private final StripedCounter  recoveryTime  = new StripedCounter();
+
+    void transitioned(long oldState, long newState, long since, long now){
+      if(since > 0L) timeInStatus.addAndGet(statusOf(oldState).ordinal(), TimeUnit.MILLISECONDS.toNanos(now - since));
+      transitions.incrementAndGet(statusOf(newState).ordinal());
+      if(status(newState) == CLOSED){
+        final long openedAt = file.get(slot + OPENED_AT);
+        if(openedAt > 0L){
+          recoveryTime.add(TimeUnit.MILLISECONDS.toNanos(now - openedAt));
+          recoveries.increment();
+        }
+      }
+    }
+
+    @Override public long getAvgRecoveryTime() {
+      final long count = recoveries.get();
+      return count == 0 ? -1L : recoveryTime.get() / count;
+    }
+
+    @Override public long getTimeInStatus(CircuitBreakerStatus status) {
+      final long spent = timeInStatus.get(status.ordinal());
+      final long since = file.get(slot + SINCE);
+      return status() == status && since > 0L
+          ? spent + TimeUnit.MILLISECONDS.toNanos(Math.max(0L, now() - since))
+          : spent;
+    }
+
+    @Override public long getTransitions(CircuitBreakerStatus status) {
+      return transitions.get(status.ordinal());
+    }
+  }
+}
@@ -0,0 +1,42 @@
+package edu.ucsc.cb;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The one scheduler every breaker shares for timed work (e.g., call timeouts), so that timing
+ * a call never costs a thread per call. Scheduled tasks must be short and must not block.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+final class SharedScheduler {
+  private SharedScheduler(){
+    throw new AssertionError("Error! This is a utility class.");
+  }
+
+  static ScheduledExecutorService get(){
+    return Installer.INSTANCE;
+  }
+
+  /**
+   * Lazy-constructed singleton, which is thread safe
+   */
+  static class Installer {
+    static final ScheduledExecutorService INSTANCE;
+
+    static {
+      final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override public Thread newThread(Runnable task) {
+          final Thread thread = new Thread(task, "circuit-breaker-scheduler");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+
+      // calls that complete in time cancel their timeout; don't let those pile up.
+      scheduler.setRemoveOnCancelPolicy(true);
+      INSTANCE = scheduler;
+    }
+  }
+}
@@ -0,0 +1,171 @@
+package edu.ucsc.cb;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * a memory-mapped file of fixed-size slots, where {@link SharedCircuitBreaker shared breakers}
+ * keep their state. Every process on the host that maps the same file sees the same slots, so
+ * breakers with the same name share one view of their dependency's health: no network hop, no
+ * daemon. A process that restarts finds its breakers' state where it left it.
+ *
+ * <p>
+ * The file starts with a header (a magic number and the number of slots), followed by the
+ * slots, one cache line each. A slot is claimed by the first breaker that asks for it, by
+ * compare-and-set of the slot's key (a 64-bit hash of the breaker's name) from zero; breakers
+ * whose names hash alike share a slot. Slots are read and written thru a {@link VarHandle}
+ * view of the mapped buffer, with volatile semantics and atomic compare-and-set, which hold
+ * across processes as the buffer is shared memory. Only the file's creation takes a
+ * (file) lock.
+ * </p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public final class SharedStateFile {
+  static final int SLOT_SIZE = 64;  // a cache line; slots never share one.
+
+  private static final long MAGIC       = 0x4342535441544531L;  // "CBSTATE1"
+  private static final int  HEADER_SIZE = SLOT_SIZE;
+  private static final int  SLOT_COUNT  = 8;                    // header offset of the number of slots.
+
+  private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class,
+      ByteOrder.nativeOrder());
+
+  private final Path              path;
+  private final MappedByteBuffer  buffer;
+  private final int               slots;
+
+  private SharedStateFile(Path path, MappedByteBuffer buffer, int slots){
+    this.path   = path;
+    this.buffer = buffer;
+    this.slots  = slots;
+  }
+
+  /**
+   * maps a state file, creating it if it does not exist.
+   *
+   * @param path the file; every process sharing breakers must use the same one.
+   * @param slots how many breakers the file holds, if it has to be created; an existing file
+   *    keeps its own number of slots.
+   * @return the mapped file. The mapping lasts as long as the returned object is reachable.
+   * @throws IOException if the file could not be created or mapped, or is not a state file.
+   */
+  public static SharedStateFile open(Path path, int slots) throws IOException {
+    if(slots < 1) throw new IllegalArgumentException("slots must be at least 1");
+
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+      final int      count;
+      final FileLock lock = channel.lock();
+      try {
+        count = channel.size() == 0 ? initialize(channel, slots) : validate(channel, path);
+      } finally {
+        lock.release();
+      }
+
+      final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0L,
+          HEADER_SIZE + (long) count * SLOT_SIZE);
+      return new SharedStateFile(path, buffer, count);
+    }
+  }
+
+  private static int initialize(FileChannel channel, int slots) throws IOException {
+    final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0L,
+        HEADER_SIZE + (long) slots * SLOT_SIZE);
+    buffer.order(ByteOrder.nativeOrder());
+    buffer.putLong(SLOT_COUNT, slots);
+    buffer.putLong(0, MAGIC);  // last; a file with a magic number is complete.
+    buffer.force();
+    return slots;
+  }
+
+  private static int validate(FileChannel channel, Path path) throws IOException {
+    final MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0L,
+        Math.min(channel.size(), HEADER_SIZE));
+    header.order(ByteOrder.nativeOrder());
+    if(header.capacity() < HEADER_SIZE || header.getLong(0) != MAGIC){
+      throw new IOException(path + " is not a circuit breaker state file");
+    }
+
+    final long slots = header.getLong(SLOT_COUNT);
+    if(slots < 1 || channel.size() < HEADER_SIZE + slots * SLOT_SIZE){
+      throw new IOException(path + " is truncated");
+    }
+
+    return (int) slots;
+  }
+
+  /**
+   * @param name the breaker's name.
+   * @return the offset of the breaker's slot; claimed for it if the breaker had none.
+   * @throws IllegalStateException if every slot is taken by other breakers.
+   */
+  int slot(String name){
+    final long key   = key(name);
+    final int  start = (int) ((key >>> 1) % slots);
+    for(int probe = 0; probe < slots; probe++){
+      final int offset = HEADER_SIZE + ((start + probe) % slots) * SLOT_SIZE;
+      final long owner = get(offset);
+      if(owner == key) return offset;
+      if(owner == 0L && (compareAndSet(offset, 0L, key) || get(offset) == key)) return offset;
+    }
+
+    throw new IllegalStateException(path + " has no free slot for " + name);
+  }
+
+  /**
+   * @return a 64-bit FNV-1a hash of the name; never zero, as zero marks a free slot.
+   */
+  private static long key(String name){
+    long hash = 0xcbf29ce484222325L;
+    for(byte each : name.getBytes(StandardCharsets.UTF_8)){
+      hash ^= each & 0xff;
+      hash *= 0x100000001b3L;
+    }
+
+    return hash == 0L ? 1L : hash;
+  }
+
+  long get(int offset){
+    return (long) LONGS.getVolatile(buffer, offset);
+  }
+
+  void set(int offset, long value){
+    LONGS.setVolatile(buffer, offset, value);
+  }
+
+  long getAndSet(int offset, long value){
+    return (long) LONGS.getAndSet(buffer, offset, value);
+  }
+
+  long getAndAdd(int offset, long delta){
+    return (long) LONGS.getAndAdd(buffer, offset, delta);
+  }
+
+  boolean compareAndSet(int offset, long expected, long value){
+    return LONGS.compareAndSet(buffer, offset, expected, value);
+  }
+
+  /**
+   * @return the mapped file.
+   */
+  public Path getPath() {
+    return path;
+  }
+
+  /**
+   * @return how many breakers the file holds.
+   */
+  public int getSlots() {
+    return slots;
+  }
+}
@@ -0,0 +1,404 @@
+package edu.ucsc.cb;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * replays traffic thru a breaker in simulated time, to pick its settings offline. A
+ * {@link Trace trace} (recorded, or {@link SyntheticTrace synthetic}) tells when every call
+ * starts, how long it takes and whether it fails; the breaker, built on a
+ * {@link ManualClock manual clock}, decides which calls go thru. Calls are events rather than
+ * threads: the clock jumps from one call's start (or completion) to the next, so a day of
+ * traffic replays in seconds, at millions of calls per second.
+ *
+ * <p>
+ * The {@link Report report} tells what the settings cost: calls turned down that would have
+ * succeeded, failures that leaked thru to the caller, and how long the breaker took to close
+ * again once it opened.
+ * </p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public final class Simulation {
+  private static final Exception FAILURE = new IllegalStateException("simulated failure");
+
+  private Simulation(){
+    throw new AssertionError("Error! This is a utility class.");
+  }
+
+  /**
+   * A sequence of calls, in the order they start.
+   */
+  public interface Trace {
+    /**
+     * fills in the next call of the trace.
+     *
+     * @param call the call to fill in; the same object is passed every time.
+     * @return {@code false} if the trace is over, {@code true} otherwise.
+     */
+    boolean next(Call call);
+  }
+
+  /**
+   * A call of a {@link Trace trace}. Times are in nanoseconds, from the start of the trace.
+   */
+  public static final class Call {
+    private long    startTime;
+    private long    latency;
+    private boolean failed;
+
+    public void set(long startTime, long latency, boolean failed){
+      this.startTime  = startTime;
+      this.latency    = latency;
+      this.failed     = failed;
+    }
+
+    public long getStartTime() {
+      return startTime;
+    }
+
+    public long getLatency() {
+      return latency;
+    }
+
+    public boolean isFailed() {
+      return failed;
+    }
+  }
+
+  /**
+   * replays a trace thru a breaker.
+   *
+   * @param trace the calls.
+   * @param breakers builds the breaker under test, given the simulation's clock; e.g.,
+   *    {@code clock -> newCircuitBreaker(config.toBuilder().clock(clock).build())}.
+   * @return what the breaker made of the trace.
+   * @throws IllegalArgumentException if the trace's calls are not in the order they start.
+   */
+  public static Report run(Trace trace, Function<? super Clock, ? extends CircuitBreaker<?>> breakers){
+    final ManualClock clock = new ManualClock(0L);
+    // generics are erased; the breaker is only handed back the simulation's own failure.
+    @SuppressWarnings("unchecked")
+    final CircuitBreaker<Exception> breaker = (CircuitBreaker<Exception>) breakers.apply(clock);
+
+    final long        startTime   = System.nanoTime();
+    final Completions pending     = new Completions();
+    final Call        call        = new Call();
+    final Report      report      = new Report();
+
+    long lastStartTime = 0L;
+    while (trace.next(call)){
+      if(call.startTime < lastStartTime) throw new IllegalArgumentException("calls must be in the order they start");
+      lastStartTime = call.startTime;
+
+      complete(pending, breaker, clock, call.startTime);
+      clock.set(call.startTime);
+
+      report.calls++;
+      if(call.failed) report.failures++;
+      final long permit;
+      try {
+        permit = breaker.callPermitted();
+      } catch (Exception rejected) {
+        report.rejectedCalls++;
+        if(!call.failed) report.wronglyRejectedCalls++;
+        continue;
+      }
+
+      if(call.failed) report.leakedFailures++;
+      pending.add(call.startTime + call.latency, call.latency, call.failed, permit);
+    }
+
+    complete(pending, breaker, clock, Long.MAX_VALUE);
+
+    final CircuitBreakerStatistics statistics = breaker.getStatistics();
+    report.openings         = statistics.getTransitions(CircuitBreakerStatus.OPENED);
+    report.timeOpened       = statistics.getTimeInStatus(CircuitBreakerStatus.OPENED);
+    report.avgRecoveryTime  = statistics.getAvgRecoveryTime();
+    report.simulatedTime    = clock.nanoTime();
+    report.elapsedTime      = System.nanoTime() - startTime;
+    return report;
+  }
+
+  /**
+   * records the outcome of every pending call that completes by the given time.
+   */
+  private static void complete(Completions pending, CircuitBreaker<Exception> breaker,
+      ManualClock clock, long until){
+    while (!pending.isEmpty() && pending.nextTime() <= until){
+      clock.set(pending.nextTime());
+      final long latency = pending.nextLatency();
+      if(pending.nextFailed()){
+        breaker.callFailed(pending.nextPermit(), FAILURE, latency);
+      } else {
+        breaker.callSucceeded(pending.nextPermit(), latency);
+      }
+
+      pending.remove();
+    }
+  }
+
+  /**
+   * @param startTimes when each call starts, in nanoseconds, in ascending order.
+   * @param latencies how long each call takes, in nanoseconds.
+   * @param failed whether each call fails.
+   * @return a trace replaying the given calls.
+   */
+  public static Trace replay(final long[] startTimes, final long[] latencies, final boolean[] failed){
+    if(startTimes.length != latencies.length || startTimes.length != failed.length){
+      throw new IllegalArgumentException("every call needs a start time, a latency and an outcome");
+    }
+
+    return new Trace() {
+      private int next = 0;
+
+      @Override public boolean next(Call call) {
+        if(next == startTimes.length) return false;
+
+        call.set(startTimes[next], latencies[next], failed[next]);
+        next++;
+        return true;
+      }
+    };
+  }
+
+  /**
+   * reads a recorded trace: one call per line, as {@code startTime,latency,failed}, with times
+   * in nanoseconds and {@code failed} either {@code true} or {@code false} (or 1 or 0). Blank
+   * lines and lines starting with {@code #} are skipped.
+   *
+   * @return a trace replaying the recorded calls.
+   * @throws IOException if the trace could not be read, or is malformed.
+   */
+  public static Trace read(Reader reader) throws IOException {
+    long[]    startTimes  = new long[1024];
+    long[]    latencies   = new long[1024];
+    boolean[] failed      = new boolean[1024];
+    int       calls       = 0;
+
+    final BufferedReader lines = new BufferedReader(reader);
+    for(String line = lines.readLine(); line != null; line = lines.readLine()){
+      line = line.trim();
+      if(line.isEmpty() || line.startsWith("#")) continue;
+
+      final String[] fields = line.split(",");
+      if(fields.length != 3) throw new IOException("malformed call: " + line);
+
+      if(calls == startTimes.length){
+        startTimes  = Arrays.copyOf(startTimes, calls * 2);
+        latencies   = Arrays.copyOf(latencies, calls * 2);
+        failed      = Arrays.copyOf(failed, calls * 2);
+      }
+
+      try {
+        startTimes[calls] = Long.parseLong(fields[0].trim());
+        latencies[calls]  = Long.parseLong(fields[1].trim());
+      } catch (NumberFormatException e) {
+        throw new IOException("malformed call: " + line, e);
+      }
+
+      final String outcome = fields[2].trim();
+      if("true".equalsIgnoreCase(outcome) || "1".equals(outcome)){
+        failed[calls] = true;
+      } else if("false".equalsIgnoreCase(outcome) || "0".equals(outcome)){
+        failed[calls] = false;
+      } else {
+        throw new IOException("malformed call: " + line);
+      }
+
+      calls++;
+    }
+
+    return replay(Arrays.copyOf(startTimes, calls), Arrays.copyOf(latencies, calls),
+        Arrays.copyOf(failed, calls));
+  }
+
+  /**
+   * What a breaker made of a trace. Times are in nanoseconds; simulated ones, unless said
+   * otherwise.
+   */
+  public static final class Report {
+    private long calls;
+    private long failures;
+    private long rejectedCalls;
+    private long wronglyRejectedCalls;
+    private long leakedFailures;
+    private long openings;
+    private long timeOpened;
+    private long avgRecoveryTime;
+    private long simulatedTime;
+    private long elapsedTime;
+
+    Report(){}
+
+    /**
+     * @return the number of calls in the trace.
+     */
+    public long getCalls() {
+      return calls;
+    }
+
+    /**
+     * @return the number of calls in the trace that fail, whether they went thru or not.
+     */
+    public long getFailures() {
+      return failures;
+    }
+
+    /**
+     * @return the number of calls the breaker turned down.
+     */
+    public long getRejectedCalls() {
+      return rejectedCalls;
+    }
+
+    /**
+     * @return the number of calls the breaker turned down that would have succeeded.
+     */
+    public long getWronglyRejectedCalls() {
+      return wronglyRejectedCalls;
+    }
+
+    /**
+     * @return the number of failed calls the breaker let thru.
+     */
+    public long getLeakedFailures() {
+      return leakedFailures;
+    }
+
+    /**
+     * @return the number of times the breaker opened (or reopened, after a failed trial call).
+     */
+    public long getOpenings() {
+      return openings;
+    }
+
+    /**
+     * @return how long the breaker was OPENED, all in all.
+     */
+    public long getTimeOpened() {
+      return timeOpened;
+    }
+
+    /**
+     * @return the average time from the breaker opening to closing again; -1 if it never did.
+     */
+    public long getAvgRecoveryTime() {
+      return avgRecoveryTime;
+    }
+
+    /**
+     * @return the simulated time from the start of the trace to the last call's completion.
+     */
+    public long getSimulatedTime() {
+      return simulatedTime;
+    }
+
+    /**
+     * @return the (real) time the simulation took.
+     */
+    public long getElapsedTime() {
+      return elapsedTime;
+    }
+
+    /**
+     * @return the number of calls simulated per (real) second.
+     */
+    public double getCallsPerSecond() {
+      return elapsedTime == 0 ? 0 : calls * (double) TimeUnit.SECONDS.toNanos(1) / elapsedTime;
+    }
+
+    @Override public String toString() {
+      return "Simulation report: " + calls + " calls (" + failures + " failing), "
+          + rejectedCalls + " rejected (" + wronglyRejectedCalls + " wrongly), "
+          + leakedFailures + " failures leaked, " + openings + " openings, "
+          + TimeUnit.NANOSECONDS.toMillis(timeOpened) + " ms opened, "
+          + (avgRecoveryTime < 0 ? "no recovery" : TimeUnit.NANOSECONDS.toMillis(avgRecoveryTime) + " ms to recover")
+          + "; " + TimeUnit.NANOSECONDS.toMillis(simulatedTime) + " ms simulated in "
+          + TimeUnit.NANOSECONDS.toMillis(elapsedTime) + " ms.";
+    }
+  }
+
+  /**
+   * the calls in flight, as a binary min-heap of completion times. Latencies (with a failed
+   * call's latency stored as its one's complement) and the calls' permits are kept alongside,
+   * in parallel arrays; none allocates once grown to the trace's peak concurrency.
+   */
+  private static final class Completions {
+    private long[]  times     = new long[256];
+    private long[]  latencies = new long[256];
+    private long[]  permits   = new long[256];
+    private int     size      = 0;
+
+    boolean isEmpty(){
+      return size == 0;
+    }
+
+    long nextTime(){
+      return times[0];
+    }
+
+    long nextLatency(){
+      final long latency = latencies[0];
+      return latency < 0 ? ~latency : latency;
+    }
+
+    boolean nextFailed(){
+      return latencies[0] < 0;
+    }
+
+    long nextPermit(){
+      return permits[0];
+    }
+
+    void add(long time, long latency, boolean failed, long permit){
+      if(size == times.length){
+        times     = Arrays.copyOf(times, size * 2);
+        latencies = Arrays.copyOf(latencies, size * 2);
+        permits   = Arrays.copyOf(permits, size * 2);
+      }
+
+      int idx = size++;
+      while (idx > 0){
+        final int parent = (idx - 1) >>> 1;
+        if(times[parent] <= time) break;
+
+        times[idx]      = times[parent];
+        latencies[idx]  = latencies[parent];
+        permits[idx]    = permits[parent];
+        idx = parent;
+      }
+
+      times[idx]      = time;
+      latencies[idx]  = failed ? ~latency : latency;
+      permits[idx]    = permit;
+    }
+
+    void remove(){
+      final long time     = times[--size];
+      final long latency  = latencies[size];
+      final long permit   = permits[size];
+
+      int idx = 0;
+      while (true){
+        int child = 2 * idx + 1;
+        if(child >= size) break;
+        if(child + 1 < size && times[child + 1] < times[child]) child++;
+        if(times[child] >= time) break;
+
+        times[idx]      = times[child];
+        latencies[idx]  = latencies[child];
+        permits[idx]    = permits[child];
+        idx = child;
+      }
+
+      times[idx]      = time;
+      latencies[idx]  = latency;
+      permits[idx]    = permit;
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package edu.ucsc.cb;
+
+/**
+ * A fixed-memory window of the most recent call outcomes. Implementations are preallocated
+ * and lock-free; recording an outcome costs a few atomic operations and never allocates.
+ *
+ * <p>
+ * A window {@link #snapshot() snapshot} packs the number of calls (high 32 bits) and failed
+ * calls (low 32 bits) into a single {@code long}; see {@link #calls(long)} and
+ * {@link #failures(long)}.
+ * </p>
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+interface SlidingWindow {
+  /**
+   * records the outcome of a call.
+   *
+   * @param failed {@code true} if the call failed, {@code false} otherwise.
+   */
+  void record(boolean failed);
+
+  /**
+   * records the outcomes of a batch of calls; its failures are the most recent outcomes.
+   *
+   * @param succeeded the number of calls that succeeded.
+   * @param failed the number of calls that failed.
+   */
+  void record(int succeeded, int failed);
+
+  /**
+   * @return the calls and failed calls currently in the window, packed into a {@code long}.
+   */
+  long snapshot();
+
+  /**
+   * forgets every outcome recorded so far.
+   */
+  void reset();
+
+  /**
+   * @return the window's capacity; i.e., number of calls or number of seconds.
+   */
+  int size();
+
+  static long pack(long calls, long failures){
+    return (calls << 32) + failures;
+  }
+
+  static int calls(long snapshot){
+    return (int) ((snapshot - failures(snapshot)) >>> 32);
+  }
+
+  static int failures(long snapshot){
+    // the low word is read as signed on purpose: concurrent recorders may leave it
+    // transiently negative (borrowing from the high word) when a slot is overwritten
+    // before its previous outcome was added.
+    return (int) snapshot;
+  }
+}
@@ -0,0 +1,106 @@
+package edu.ucsc.cb;
+
+import java.util.function.Supplier;
+
+/**
+ * failure-rate circuit breaker. the breaker opens once the percentage of failed calls in its
+ * {@link SlidingWindow sliding window} reaches a threshold, provided the window has seen a
+ * minimum number of calls. Unlike {@link DefaultCircuitBreaker}, a trickle of failures spread
+ * over a long time will never open it.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class SlidingWindowCircuitBreaker<E extends Exception> extends AbstractCircuitBreaker<E> {
+  private final SlidingWindow window;
+  private final float         failureRateThreshold;
+  private final int           minimumNumberOfCalls;
+
+  /**
+   * @param window the window of recent call outcomes.
+   * @param failureRateThreshold the percentage (0, 100] of failed calls that opens the breaker.
+   * @param minimumNumberOfCalls the number of calls the window must hold before the failure
+   *    rate is evaluated.
+   * @param retryThreshold how long the circuit breaker will wait until letting the call go thru.
+   * @param debug {@code true} if the breaker will display its activity messages. {@code false} otherwise.
+   */
+  SlidingWindowCircuitBreaker(SlidingWindow window, float failureRateThreshold,
+      int minimumNumberOfCalls, long retryThreshold, boolean debug){
+    this(window, failureRateThreshold, minimumNumberOfCalls, CircuitBreakerConfig.builder()
+        .retryThreshold(retryThreshold)
+        .debug(debug)
+        .build());
+  }
+
+  /**
+   * @param window the window of recent call outcomes.
+   * @param failureRateThreshold the percentage (0, 100] of failed calls that opens the breaker.
+   * @param minimumNumberOfCalls the number of calls the window must hold before the failure
+   *    rate is evaluated.
+   * @param settings the breaker's settings; its failed call threshold is not used.
+   */
+  SlidingWindowCircuitBreaker(SlidingWindow window, float failureRateThreshold,
+      int minimumNumberOfCalls, Supplier<CircuitBreakerConfig> settings){
+    super(settings);
+
+    if(failureRateThreshold <= 0 || failureRateThreshold > 100){
+      throw new IllegalArgumentException("failure rate threshold must be in (0, 100]");
+    }
+
+    if(minimumNumberOfCalls <= 0){
+      throw new IllegalArgumentException("minimum number of calls must be positive");
+    }
+
+    this.window               = window;
+    this.failureRateThreshold = failureRateThreshold;
+    this.minimumNumberOfCalls = minimumNumberOfCalls;
+  }
+
+  @Override protected void onCallSucceeded() {
+    window.record(false);
+  }
+
+  @Override protected boolean onCallFailed(E error) {
+    window.record(true);
+    return failureRateExceeded();
+  }
+
+  private boolean failureRateExceeded() {
+    final long snapshot = window.snapshot();
+    final int  calls    = SlidingWindow.calls(snapshot);
+    return calls >= minimumNumberOfCalls
+        && SlidingWindow.failures(snapshot) * 100.0f >= failureRateThreshold * calls;
+  }
+
+  @Override protected boolean onCallsCompleted(int succeeded, int failed, E error) {
+    window.record(succeeded, failed);
+    return failed > 0 && failureRateExceeded();
+  }
+
+  @Override protected void onReset() {
+    window.reset();
+  }
+
+  /**
+   * @return the fewest failed calls that can open this breaker.
+   */
+  @Override public long getFailedCallThreshold() {
+    return (long) Math.ceil(minimumNumberOfCalls * failureRateThreshold / 100.0f);
+  }
+
+  /**
+   * @return the percentage of failed calls that opens the breaker.
+   */
+  public float getFailureRateThreshold() {
+    return failureRateThreshold;
+  }
+
+  /**
+   * @return the current percentage of failed calls in the window, or {@code -1} if the
+   *    window has not seen enough calls yet.
+   */
+  public float getFailureRate() {
+    final long snapshot = window.snapshot();
+    final int  calls    = SlidingWindow.calls(snapshot);
+    return calls < minimumNumberOfCalls ? -1f : SlidingWindow.failures(snapshot) * 100.0f / calls;
+  }
+}
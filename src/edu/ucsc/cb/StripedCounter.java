@@ -0,0 +1,55 @@
+package edu.ucsc.cb;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A contention-free counter for breaker metrics. Increments are spread over per-thread cells
+ * (see {@link LongAdder}), so a breaker shared by every request thread does not turn its
+ * counters into a single, heavily contended cache line. Reading the counter sums all cells;
+ * therefore, reads are meant for threshold checks on failure paths and for metrics, not for
+ * every call.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public final class StripedCounter {
+  private final LongAdder cells = new LongAdder();
+
+  /**
+   * adds one to the counter.
+   */
+  public void increment(){
+    cells.increment();
+  }
+
+  /**
+   * @param delta the amount to be added to the counter.
+   */
+  public void add(long delta){
+    cells.add(delta);
+  }
+
+  /**
+   * @return the counter's current value. Increments made concurrently may be missed.
+   */
+  public long get(){
+    return cells.sum();
+  }
+
+  /**
+   * resets the counter to zero. Increments made concurrently may be lost.
+   */
+  public void reset(){
+    cells.reset();
+  }
+
+  /**
+   * @return the counter's value right before it was reset to zero.
+   */
+  public long getAndReset(){
+    return cells.sumThenReset();
+  }
+
+  @Override public String toString() {
+    return Long.toString(get());
+  }
+}
@@ -0,0 +1,165 @@
+package edu.ucsc.cb;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A made-up {@link Simulation.Trace trace}: calls arrive at random (a Poisson process with the
+ * given rate), take a log-normally distributed time (given by its median and 99th percentile),
+ * and fail at the given rate, except during outages, when they fail at the outage's rate. The
+ * trace is seeded, so the same settings always make the same trace; a trace is replayed once.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public final class SyntheticTrace implements Simulation.Trace {
+  private static final double Z_99 = 2.3263478740408408; // standard normal 99th percentile.
+
+  private final SplittableRandom  random;
+  private final long              calls;
+  private final double            meanInterArrivalTime;
+  private final double            medianLatency;
+  private final double            sigma;
+  private final double            errorRate;
+  private final long[]            outages;  // start and end times, in pairs, in nanoseconds.
+  private final double[]          outageErrorRates;
+
+  private long    generated = 0L;  // calls made so far.
+  private double  time      = 0.0;  // start time of the last call made.
+
+  private SyntheticTrace(Builder builder){
+    this.random               = new SplittableRandom(builder.seed);
+    this.calls                = builder.calls;
+    this.meanInterArrivalTime = TimeUnit.SECONDS.toNanos(1) / builder.callsPerSecond;
+    this.medianLatency        = builder.medianLatency;
+    this.sigma                = Math.log((double) builder.p99Latency / builder.medianLatency) / Z_99;
+    this.errorRate            = builder.errorRate;
+    this.outages              = Arrays.copyOf(builder.outages, 2 * builder.outageCount);
+    this.outageErrorRates     = Arrays.copyOf(builder.outageErrorRates, builder.outageCount);
+  }
+
+  /**
+   * @return a builder initialized with the default settings: a million calls, at ten thousand
+   *    calls per second, taking a millisecond (ten at the 99th percentile), none failing.
+   */
+  public static Builder builder(){
+    return new Builder();
+  }
+
+  @Override public boolean next(Simulation.Call call) {
+    if(generated == calls) return false;
+
+    generated++;
+    time += -Math.log(1.0 - random.nextDouble()) * meanInterArrivalTime;
+
+    final long   startTime  = (long) time;
+    final long   latency    = (long) (medianLatency * Math.exp(sigma * gaussian()));
+    final double failRate   = errorRate(startTime);
+    call.set(startTime, latency, failRate > 0 && random.nextDouble() < failRate);
+    return true;
+  }
+
+  private double errorRate(long startTime){
+    for(int idx = 0; idx < outageErrorRates.length; idx++){
+      if(startTime >= outages[2 * idx] && startTime < outages[2 * idx + 1]) return outageErrorRates[idx];
+    }
+
+    return errorRate;
+  }
+
+  /**
+   * @return a standard normal deviate (Box-Muller; one of the pair is thrown away).
+   */
+  private double gaussian(){
+    final double radius = Math.sqrt(-2.0 * Math.log(1.0 - random.nextDouble()));
+    return radius * Math.cos(2.0 * Math.PI * random.nextDouble());
+  }
+
+  /**
+   * Builds {@link SyntheticTrace} objects.
+   */
+  public static final class Builder {
+    private long      calls             = 1000000L;
+    private double    callsPerSecond    = 10000.0;
+    private long      medianLatency     = TimeUnit.MILLISECONDS.toNanos(1);
+    private long      p99Latency        = TimeUnit.MILLISECONDS.toNanos(10);
+    private double    errorRate         = 0.0;
+    private long      seed              = 42L;
+    private long[]    outages           = new long[8];
+    private double[]  outageErrorRates  = new double[4];
+    private int       outageCount       = 0;
+
+    Builder(){}
+
+    /**
+     * @param calls the number of calls in the trace.
+     * @param callsPerSecond how many calls start per (simulated) second, on average.
+     */
+    public Builder calls(long calls, double callsPerSecond){
+      if(calls < 0 || callsPerSecond <= 0) throw new IllegalArgumentException("calls and their rate must be positive");
+
+      this.calls          = calls;
+      this.callsPerSecond = callsPerSecond;
+      return this;
+    }
+
+    /**
+     * @param median the median time a call takes.
+     * @param p99 the time 99% of calls take at most; no less than the median.
+     * @param unit the unit of both times.
+     */
+    public Builder latency(long median, long p99, TimeUnit unit){
+      if(median <= 0 || p99 < median) throw new IllegalArgumentException("latencies must be positive, and the p99 no less than the median");
+
+      this.medianLatency  = unit.toNanos(median);
+      this.p99Latency     = unit.toNanos(p99);
+      return this;
+    }
+
+    /**
+     * @param errorRate the fraction [0, 1] of calls that fail outside outages.
+     */
+    public Builder errorRate(double errorRate){
+      if(errorRate < 0 || errorRate > 1) throw new IllegalArgumentException("error rate must be in [0, 1]");
+
+      this.errorRate = errorRate;
+      return this;
+    }
+
+    /**
+     * adds an outage: a window of (simulated) time during which calls fail at a higher rate.
+     *
+     * @param start when the outage starts, from the start of the trace.
+     * @param duration how long it lasts.
+     * @param unit the unit of both times.
+     * @param errorRate the fraction [0, 1] of calls that fail during the outage.
+     */
+    public Builder outage(long start, long duration, TimeUnit unit, double errorRate){
+      if(start < 0 || duration <= 0) throw new IllegalArgumentException("outages must start after the trace, and last");
+      if(errorRate < 0 || errorRate > 1) throw new IllegalArgumentException("error rate must be in [0, 1]");
+
+      if(outageCount == outageErrorRates.length){
+        outages           = Arrays.copyOf(outages, outages.length * 2);
+        outageErrorRates  = Arrays.copyOf(outageErrorRates, outageErrorRates.length * 2);
+      }
+
+      outages[2 * outageCount]      = unit.toNanos(start);
+      outages[2 * outageCount + 1]  = unit.toNanos(start) + unit.toNanos(duration);
+      outageErrorRates[outageCount] = errorRate;
+      outageCount++;
+      return this;
+    }
+
+    public Builder seed(long seed){
+      this.seed = seed;
+      return this;
+    }
+
+    /**
+     * @return a new trace.
+     */
+    public SyntheticTrace build(){
+      return new SyntheticTrace(this);
+    }
+  }
+}
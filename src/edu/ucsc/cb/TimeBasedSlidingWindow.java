@@ -0,0 +1,117 @@
+package edu.ucsc.cb;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link SlidingWindow window} holding the outcome of the calls made during the last
+ * {@code T} seconds, one bucket per second. Each bucket is a single {@code long} packing the
+ * second it belongs to (20 bits), its calls (22 bits) and its failed calls (22 bits), so
+ * recording an outcome is one CAS on one bucket. A bucket left behind by an earlier second is
+ * recycled by the first call that lands on it.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+class TimeBasedSlidingWindow implements SlidingWindow {
+  private static final long ONE_SECOND    = TimeUnit.SECONDS.toNanos(1);
+  private static final int  COUNT_BITS    = 22;
+  private static final long COUNT_MASK    = (1L << COUNT_BITS) - 1;
+  private static final long EPOCH_MASK    = (1L << (64 - 2 * COUNT_BITS)) - 1;
+
+  private final AtomicLongArray buckets;
+  private final Clock           clock;
+
+  TimeBasedSlidingWindow(int seconds){
+    this(seconds, Clock.SYSTEM);
+  }
+
+  TimeBasedSlidingWindow(int seconds, Clock clock){
+    if(seconds <= 0 || seconds > EPOCH_MASK) {
+      throw new IllegalArgumentException("window size must be between 1 and " + EPOCH_MASK + " seconds");
+    }
+
+    this.buckets = new AtomicLongArray(seconds);
+    this.clock   = clock;
+  }
+
+  @Override public void record(boolean failed) {
+    final long epoch  = currentEpoch();
+    final int  idx    = (int) Math.floorMod(epoch, (long) buckets.length());
+    final long tag    = epoch & EPOCH_MASK;
+
+    while (true){
+      final long current = buckets.get(idx);
+      final long next;
+      if(epochOf(current) == tag){
+        final long calls = callsOf(current);
+        if(calls == COUNT_MASK) return; // saturated; the rate is already well sampled.
+        next = bucket(tag, calls + 1, failuresOf(current) + (failed ? 1 : 0));
+      } else {
+        next = bucket(tag, 1, failed ? 1 : 0);
+      }
+
+      if(buckets.compareAndSet(idx, current, next)) return;
+    }
+  }
+
+  @Override public void record(int succeeded, int failed) {
+    final long epoch  = currentEpoch();
+    final int  idx    = (int) Math.floorMod(epoch, (long) buckets.length());
+    final long tag    = epoch & EPOCH_MASK;
+
+    while (true){
+      final long current  = buckets.get(idx);
+      final boolean same  = epochOf(current) == tag;
+      final long calls    = Math.min(COUNT_MASK, (same ? callsOf(current) : 0) + succeeded + failed);
+      final long failures = Math.min(calls, (same ? failuresOf(current) : 0) + failed);
+
+      if(buckets.compareAndSet(idx, current, bucket(tag, calls, failures))) return;
+    }
+  }
+
+  @Override public long snapshot() {
+    final long now      = currentEpoch() & EPOCH_MASK;
+    long calls          = 0;
+    long failures       = 0;
+    for(int idx = 0; idx < buckets.length(); idx++){
+      final long current = buckets.get(idx);
+      final long age     = (now - epochOf(current)) & EPOCH_MASK;
+      if(current != 0 && age < buckets.length()){
+        calls     += callsOf(current);
+        failures  += failuresOf(current);
+      }
+    }
+
+    return SlidingWindow.pack(Math.min(calls, Integer.MAX_VALUE), Math.min(failures, Integer.MAX_VALUE));
+  }
+
+  @Override public void reset() {
+    for(int idx = 0; idx < buckets.length(); idx++){
+      buckets.set(idx, 0L);
+    }
+  }
+
+  @Override public int size() {
+    return buckets.length();
+  }
+
+  private long currentEpoch(){
+    return clock.nanoTime() / ONE_SECOND;
+  }
+
+  private static long bucket(long epoch, long calls, long failures){
+    return (epoch << (2 * COUNT_BITS)) | (calls << COUNT_BITS) | failures;
+  }
+
+  private static long epochOf(long bucket){
+    return bucket >>> (2 * COUNT_BITS);
+  }
+
+  private static long callsOf(long bucket){
+    return (bucket >>> COUNT_BITS) & COUNT_MASK;
+  }
+
+  private static long failuresOf(long bucket){
+    return bucket & COUNT_MASK;
+  }
+}
@@ -0,0 +1,60 @@
+package edu.ucsc.cb;
+
+import static edu.ucsc.cb.CircuitBreakers.newAimdLimiter;
+import static edu.ucsc.cb.CircuitBreakers.newGradientLimiter;
+import java.util.concurrent.TimeUnit;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import org.junit.Test;
+
+/**
+ * ...
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class AdaptiveLimiterTest {
+  private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+  private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(100);
+
+  @Test public void testAimdLimitBacksOffOnFailuresAndGrowsUnderLoad() throws Exception {
+    final AdaptiveLimiter<RuntimeException> limiter = newAimdLimiter(10, 1, 100, 0.5, SLOW);
+    for (int idx = 0; idx < 10; idx++) {
+      limiter.callStarted();
+    }
+
+    try {
+      limiter.callStarted();
+      throw new AssertionError("limit should have been reached");
+    } catch (CallNotPermittedException expected) {
+      assertThat(limiter.getRejectedCalls(), equalTo(1L));
+    }
+
+    limiter.callFailed(new IllegalStateException());
+    assertThat(limiter.getLimit(), equalTo(5));
+
+    for (int idx = 0; idx < 9; idx++) {
+      limiter.callSucceeded(FAST);
+    }
+
+    assertThat(limiter.getLimit(), greaterThan(5));
+    assertThat(limiter.getConcurrentCalls(), equalTo(0));
+  }
+
+  @Test public void testGradientLimitShrinksAsLatencyBuildsUp() throws Exception {
+    final AdaptiveLimiter<RuntimeException> limiter = newGradientLimiter(20, 1, 100, 1.0, 1.0);
+    for (int idx = 0; idx < 20; idx++) {
+      limiter.callStarted();
+      limiter.callSucceeded(FAST);
+    }
+
+    final int unloaded = limiter.getLimit();
+    for (int idx = 0; idx < 5; idx++) {
+      limiter.callStarted();
+      limiter.callSucceeded(SLOW);
+    }
+
+    assertThat(limiter.getLimit(), lessThan(unloaded));
+  }
+}
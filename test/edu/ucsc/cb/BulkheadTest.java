@@ -0,0 +1,64 @@
+package edu.ucsc.cb;
+
+import static edu.ucsc.cb.CircuitBreakers.newBulkhead;
+import static edu.ucsc.cb.CircuitBreakers.newCircuitBreaker;
+import static edu.ucsc.cb.CircuitBreakers.safeguard;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import org.junit.Test;
+
+/**
+ * ...
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class BulkheadTest {
+  @Test public void testFullBulkheadRejectsCalls() throws Exception {
+    final Bulkhead bulkhead = newBulkhead(2);
+    assertThat(bulkhead.tryAcquire(), equalTo(true));
+    assertThat(bulkhead.tryAcquire(), equalTo(true));
+    assertThat(bulkhead.tryAcquire(), equalTo(false));
+    assertThat(bulkhead.getConcurrentCalls(), equalTo(2));
+    assertThat(bulkhead.getRejectedCalls(), equalTo(1L));
+
+    bulkhead.release();
+    assertThat(bulkhead.tryAcquire(), equalTo(true));
+  }
+
+  @Test public void testWaitingCallGetsReleasedPermit() throws Exception {
+    final Bulkhead bulkhead = newBulkhead(1, 5, TimeUnit.SECONDS);
+    bulkhead.acquire();
+
+    final Thread releaser = new Thread(new Runnable() {
+      @Override public void run() {
+        bulkhead.release();
+      }
+    });
+    releaser.start();
+
+    assertThat(bulkhead.tryAcquire(5, TimeUnit.SECONDS), equalTo(true));
+    releaser.join();
+  }
+
+  @Test public void testCallGoesThruBulkheadAndBreaker() throws Exception {
+    final Bulkhead bulkhead = newBulkhead(1);
+    final CircuitBreaker<RuntimeException> breaker = newCircuitBreaker(1, Long.MAX_VALUE / 2, false);
+    final String result = safeguard(new Callable<String>() {
+      @Override public String call() throws Exception {
+        assertThat(bulkhead.getConcurrentCalls(), equalTo(1));
+        try {
+          safeguard(this, "Error has occurred!", breaker, bulkhead);
+          throw new AssertionError("bulkhead should be full");
+        } catch (BulkheadFullException expected) {
+          return "One, two, three, four, etc.";
+        }
+      }
+    }, "Error has occurred!", breaker, bulkhead);
+
+    assertThat(result, equalTo("One, two, three, four, etc."));
+    assertThat(bulkhead.getConcurrentCalls(), equalTo(0));
+    assertThat(breaker.status(), equalTo(CircuitBreakerStatus.CLOSED));
+  }
+}
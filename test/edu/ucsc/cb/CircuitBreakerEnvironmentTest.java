@@ -0,0 +1,85 @@
+package edu.ucsc.cb;
+
+import static edu.ucsc.cb.CircuitBreakerEnvironmentProperties.FAILED_CALL_THRESHOLD;
+import static edu.ucsc.cb.CircuitBreakerEnvironmentProperties.RETRY_THRESHOLD;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import org.junit.Test;
+
+/**
+ * ...
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class CircuitBreakerEnvironmentTest {
+  @Test public void testLiveBreakerPicksUpEditedSettings() throws Exception {
+    final File directory = new File(System.getProperty("java.io.tmpdir"), "cb-" + System.nanoTime());
+    assertThat(directory.mkdirs(), equalTo(true));
+    final File file = new File(directory, "circuitbreaker.cfg");
+    write(file, 3);
+
+    final Properties defaults = new Properties();
+    defaults.setProperty(RETRY_THRESHOLD, "1000");
+    defaults.setProperty(FAILED_CALL_THRESHOLD, "1");
+    final CircuitBreakerEnvironment environment = new CircuitBreakerEnvironment(
+        new CircuitBreakerEnvironment.EnvironmentPropertiesConfiguration(defaults, file.getPath()));
+    final CircuitBreaker<RuntimeException> breaker = new DefaultCircuitBreaker<RuntimeException>(environment);
+    assertThat(breaker.getFailedCallThreshold(), equalTo(3L));
+
+    write(file, 7);
+    final long deadline = System.currentTimeMillis() + 10000;
+    while (breaker.getFailedCallThreshold() != 7L && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+
+    assertThat(breaker.getFailedCallThreshold(), equalTo(7L));
+
+    environment.close();
+    assertThat(file.delete() && directory.delete(), equalTo(true));
+  }
+
+  @Test public void testOnlyActualChangesAreFired() throws Exception {
+    final AtomicInteger changes = new AtomicInteger();
+    final CircuitBreakerEnvironment.AbstractEnvironmentConfiguration configuration =
+        new CircuitBreakerEnvironment.AbstractEnvironmentConfiguration() {
+          @Override protected void checkForPropertyChanges() {
+          }
+
+          @Override protected Properties getDefaults() {
+            return new Properties();
+          }
+
+          @Override public void setDefaultProperties(Properties defaults) {
+          }
+        };
+    configuration.addChangeListener(new Runnable() {
+      @Override public void run() {
+        changes.incrementAndGet();
+      }
+    });
+
+    configuration.setProperty(FAILED_CALL_THRESHOLD, "3");
+    configuration.setProperty(FAILED_CALL_THRESHOLD, "3");
+    configuration.setProperty(RETRY_THRESHOLD, null);
+    assertThat(changes.get(), equalTo(1));
+
+    configuration.setProperty(FAILED_CALL_THRESHOLD, "4");
+    configuration.setProperty(FAILED_CALL_THRESHOLD, null);
+    assertThat(changes.get(), equalTo(3));
+  }
+
+  private static void write(File file, long failedCallThreshold) throws IOException {
+    final Writer out = new FileWriter(file);
+    try {
+      out.write(RETRY_THRESHOLD + "=1000\n" + FAILED_CALL_THRESHOLD + "=" + failedCallThreshold + "\n");
+    } finally {
+      out.close();
+    }
+  }
+}
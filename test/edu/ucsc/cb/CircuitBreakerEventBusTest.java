@@ -0,0 +1,121 @@
+package edu.ucsc.cb;
+
+import static edu.ucsc.cb.CircuitBreakers.safeguard;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import org.junit.Test;
+
+/**
+ * ...
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class CircuitBreakerEventBusTest {
+  @Test public void testEventsAreDeliveredOffTheCallingThread() throws Exception {
+    final AbstractCircuitBreaker<RuntimeException> breaker = new DefaultCircuitBreaker<RuntimeException>(1, 10000000000L, false);
+    final List<CircuitBreakerEvent.Type> types   = new CopyOnWriteArrayList<CircuitBreakerEvent.Type>();
+    final List<Thread>                   threads = new CopyOnWriteArrayList<Thread>();
+    final CountDownLatch                 opened  = new CountDownLatch(1);
+
+    final CircuitBreakerEventListener listener = new CircuitBreakerEventListener() {
+      @Override public void onEvent(CircuitBreakerEvent event, boolean endOfBatch) {
+        if(event.getSource() != breaker) return;
+
+        types.add(event.getType());
+        threads.add(Thread.currentThread());
+        if(event.getToStatus() == CircuitBreakerStatus.OPENED
+            && event.getType() == CircuitBreakerEvent.Type.STATUS_CHANGED){
+          opened.countDown();
+        }
+      }
+    };
+
+    breaker.getEventBus().subscribe(listener);
+    try {
+      safeguard(new Callable<Integer>() {
+        @Override public Integer call() throws Exception {
+          return 1;
+        }
+      }, "", breaker);
+
+      try {
+        safeguard(new Callable<Integer>() {
+          @Override public Integer call() throws Exception {
+            throw new IllegalStateException("boom");
+          }
+        }, "", breaker);
+      } catch (IllegalStateException ignored){}
+
+      assertThat(opened.await(5, TimeUnit.SECONDS), equalTo(true));
+      assertThat(types.get(0), equalTo(CircuitBreakerEvent.Type.CALL_SUCCEEDED));
+      assertThat(types.get(1), equalTo(CircuitBreakerEvent.Type.CALL_FAILED));
+      assertThat(types.get(2), equalTo(CircuitBreakerEvent.Type.STATUS_CHANGED));
+      for(Thread each : threads){
+        assertThat(each, not(equalTo(Thread.currentThread())));
+      }
+    } finally {
+      breaker.getEventBus().unsubscribe(listener);
+    }
+  }
+
+  @Test public void testListenerFailuresArePublishedAsErrors() throws Exception {
+    final CircuitBreakerEventBus bus    = new CircuitBreakerEventBus(16);
+    final List<Exception>        errors = new CopyOnWriteArrayList<Exception>();
+    final CountDownLatch         failed = new CountDownLatch(1);
+
+    bus.subscribe(new CircuitBreakerEventListener() {
+      @Override public void onEvent(CircuitBreakerEvent event, boolean endOfBatch) {
+        throw new IllegalStateException("broken listener"); // fails at errors too.
+      }
+    });
+    bus.subscribe(new CircuitBreakerEventListener() {
+      @Override public void onEvent(CircuitBreakerEvent event, boolean endOfBatch) {
+        if(event.getType() != CircuitBreakerEvent.Type.ERROR) return;
+        errors.add(event.getError());
+        failed.countDown();
+      }
+    });
+
+    bus.publish(CircuitBreakerEvent.Type.CALL_FAILED, null, CircuitBreakerStatus.CLOSED,
+        CircuitBreakerStatus.CLOSED, CircuitBreakerEvent.NO_ELAPSED_TIME, null);
+
+    assertThat(failed.await(5, TimeUnit.SECONDS), equalTo(true));
+    Thread.sleep(50);
+    assertThat(errors.size(), equalTo(1));
+    assertThat(errors.get(0).getMessage(), equalTo("broken listener"));
+  }
+
+  @Test public void testSlowListenerMakesEventsDropInsteadOfBlocking() throws Exception {
+    final CircuitBreakerEventBus bus     = new CircuitBreakerEventBus(4);
+    final CountDownLatch         release = new CountDownLatch(1);
+
+    bus.publish(CircuitBreakerEvent.Type.CALL_FAILED, null, CircuitBreakerStatus.CLOSED,
+        CircuitBreakerStatus.CLOSED, CircuitBreakerEvent.NO_ELAPSED_TIME, null);
+    assertThat(bus.getPendingEvents(), equalTo(0L)); // nobody is listening.
+
+    bus.subscribe(new CircuitBreakerEventListener() {
+      @Override public void onEvent(CircuitBreakerEvent event, boolean endOfBatch) {
+        try {
+          release.await();
+        } catch (InterruptedException e){
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+
+    for(int idx = 0; idx < 10; idx++){
+      bus.publish(CircuitBreakerEvent.Type.CALL_FAILED, null, CircuitBreakerStatus.CLOSED,
+          CircuitBreakerStatus.CLOSED, CircuitBreakerEvent.NO_ELAPSED_TIME, null);
+    }
+
+    assertThat(bus.getPendingEvents(), equalTo(4L));
+    assertThat(bus.getDroppedEvents(), equalTo(6L));
+    release.countDown();
+  }
+}
@@ -0,0 +1,126 @@
+package edu.ucsc.cb;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import org.junit.Test;
+
+/**
+ * ...
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class CircuitBreakerMetricsTest {
+  @Test public void testPrometheusScrapeOverHttp() throws Exception {
+    final CircuitBreaker<RuntimeException> breaker = new DefaultCircuitBreaker<RuntimeException>(1, 1000000000L, false);
+    breaker.callStarted();
+    breaker.callSucceeded(2000000L);
+    breaker.callStarted();
+    breaker.callFailed(new IllegalStateException("down"), 1000000L);
+
+    final CircuitBreakerRegistry<String, RuntimeException> registry = new CircuitBreakerRegistry<String, RuntimeException>(
+        CircuitBreakerConfig.builder().build());
+    registry.get("inventory");
+
+    final CircuitBreakerMetrics metrics = new CircuitBreakerMetrics(0, TimeUnit.SECONDS);
+    metrics.register("payments \"eu\"", breaker);
+    metrics.register(registry);
+
+    final HttpServer server = PrometheusExporter.serve(metrics, new InetSocketAddress("127.0.0.1", 0));
+    try {
+      final URL url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/metrics");
+      final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+      assertThat(connection.getResponseCode(), equalTo(200));
+      assertThat(connection.getContentType(), equalTo(PrometheusExporter.CONTENT_TYPE));
+
+      final String text = read(connection.getInputStream());
+      assertThat(text, containsString("circuit_breaker_state{name=\"payments \\\"eu\\\"\",state=\"opened\"} 1"));
+      assertThat(text, containsString("circuit_breaker_state{name=\"inventory\",state=\"closed\"} 1"));
+      assertThat(text, containsString("circuit_breaker_calls_total{name=\"payments \\\"eu\\\"\",kind=\"failed\"} 1"));
+      assertThat(text, containsString("circuit_breaker_transitions_total{name=\"payments \\\"eu\\\"\",state=\"opened\"} 1"));
+      assertThat(text, containsString("circuit_breaker_call_latency_seconds{name=\"payments \\\"eu\\\"\",quantile=\"0.99\"}"));
+      assertThat(text, containsString("circuit_breaker_call_latency_seconds_sum{name=\"payments \\\"eu\\\"\"} 0.003\n"));
+      assertThat(text, containsString("circuit_breaker_call_latency_seconds_count{name=\"payments \\\"eu\\\"\"} 2\n"));
+      assertThat(text, containsString("circuit_breaker_call_latency_seconds_count{name=\"inventory\"} 0\n"));
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  @Test public void testNamesAreExportedOnce() throws Exception {
+    final CircuitBreakerConfig config = CircuitBreakerConfig.builder().build();
+    final CircuitBreakerRegistry<String, RuntimeException> first  = new CircuitBreakerRegistry<String, RuntimeException>(config);
+    final CircuitBreakerRegistry<String, RuntimeException> second = new CircuitBreakerRegistry<String, RuntimeException>(config);
+    final CircuitBreakerRegistry<String, RuntimeException> third  = new CircuitBreakerRegistry<String, RuntimeException>(config);
+    final CircuitBreaker<RuntimeException> orders = new DefaultCircuitBreaker<RuntimeException>(1, 1000000000L, false);
+    first.get("orders");
+    second.get("orders");
+    second.get("quotes");
+    third.get("quotes");
+
+    final CircuitBreakerMetrics metrics = new CircuitBreakerMetrics(0, TimeUnit.SECONDS);
+    metrics.register("orders", orders);
+    metrics.register(first);
+    metrics.register(second);
+    metrics.register("eu.", third);
+
+    final StringBuilder text = new StringBuilder();
+    metrics.export(new PrometheusExporter(text));
+    assertThat(metrics.snapshots().size(), equalTo(3));
+    assertThat(text.toString().split("circuit_breaker_slow_calls_total\\{name=\"orders\"\\}", -1).length, equalTo(2));
+    assertThat(text.toString().split("circuit_breaker_slow_calls_total\\{name=\"quotes\"\\}", -1).length, equalTo(2));
+    assertThat(text.toString(), containsString("circuit_breaker_slow_calls_total{name=\"eu.quotes\"} 0"));
+
+    orders.callFailed(orders.callPermitted(), new IllegalStateException("down"), 0L);
+    assertThat(metrics.snapshot("orders").getStatus(), equalTo(CircuitBreakerStatus.OPENED));
+  }
+
+  @Test public void testBreakersAreExportedAsMBeans() throws Exception {
+    final CircuitBreaker<RuntimeException> breaker = new DefaultCircuitBreaker<RuntimeException>(2, 1000000000L, false);
+    final CircuitBreakerMetrics metrics = new CircuitBreakerMetrics(0, TimeUnit.SECONDS);
+    metrics.register("orders", breaker);
+
+    final MBeanServer server   = ManagementFactory.getPlatformMBeanServer();
+    final JmxExporter exporter = new JmxExporter(metrics, server);
+    final ObjectName  name     = JmxExporter.objectName("orders");
+    metrics.export(exporter);
+    try {
+      breaker.callStarted();
+      breaker.callSucceeded();
+      assertThat(server.getAttribute(name, "Status"), equalTo((Object) "CLOSED"));
+      assertThat(server.getAttribute(name, "SuccessfulCalls"), equalTo((Object) 1L));
+
+      metrics.unregister("orders");
+      metrics.export(exporter);
+      assertThat(server.isRegistered(name), equalTo(false));
+    } finally {
+      exporter.close();
+    }
+  }
+
+  private static String read(InputStream in) throws Exception {
+    try {
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      final byte[] buffer = new byte[4096];
+      int read;
+      while ((read = in.read(buffer)) != -1){
+        out.write(buffer, 0, read);
+      }
+
+      return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    } finally {
+      in.close();
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package edu.ucsc.cb;
+
+import static edu.ucsc.cb.CircuitBreakers.newCircuitBreakerRegistry;
+import java.util.concurrent.TimeUnit;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import org.junit.Test;
+
+/**
+ * ...
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class CircuitBreakerRegistryTest {
+  @Test public void testBreakersAreCreatedOncePerKey() throws Exception {
+    final CircuitBreakerRegistry<String, RuntimeException> registry = newCircuitBreakerRegistry(
+        CircuitBreakerConfig.builder().build(), 0, TimeUnit.SECONDS);
+    final CircuitBreakerConfig custom = CircuitBreakerConfig.builder().failedCallThreshold(5).build();
+    registry.configure("billing", custom);
+
+    final CircuitBreaker<RuntimeException> search = registry.get("search");
+    assertThat(registry.get("search"), sameInstance(search));
+    assertThat(registry.get("billing").getFailedCallThreshold(), equalTo(5L));
+    assertThat(search.getFailedCallThreshold(), equalTo(1L));
+    assertThat(registry.size(), equalTo(2));
+  }
+
+  @Test public void testIdleClosedBreakersAreEvicted() throws Exception {
+    final CircuitBreakerRegistry<String, RuntimeException> registry = newCircuitBreakerRegistry(
+        CircuitBreakerConfig.builder().retryThreshold(Long.MAX_VALUE / 2).build(), 1, TimeUnit.NANOSECONDS);
+    registry.get("tenant-1");
+    final CircuitBreaker<RuntimeException> opened = registry.get("tenant-2");
+    opened.callStarted();
+    opened.callFailed(new IllegalStateException());
+
+    Thread.sleep(1);
+    registry.evictIdle();
+
+    assertThat(registry.find("tenant-1"), nullValue());
+    assertThat(registry.find("tenant-2"), not(nullValue()));
+  }
+
+  @Test public void testBreakersInUseAreNotEvicted() throws Exception {
+    final CircuitBreakerRegistry<String, RuntimeException> registry = newCircuitBreakerRegistry(
+        CircuitBreakerConfig.builder().build(), 200, TimeUnit.MILLISECONDS);
+    final CircuitBreaker<RuntimeException> search = registry.get("search");
+
+    // looked up all along, for longer than the idle timeout.
+    for(int idx = 0; idx < 15; idx++){
+      Thread.sleep(20);
+      registry.get("search");
+    }
+
+    registry.evictIdle();
+    assertThat(registry.find("search"), sameInstance(search));
+  }
+}
@@ -0,0 +1,133 @@
+package edu.ucsc.cb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import org.junit.Test;
+
+/**
+ * hammers a breaker from many threads and checks that every transition was made exactly once,
+ * and that no latency recorded concurrently is lost.
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class CircuitBreakerStressTest {
+  private static final int THREADS = 8;
+  private static final int CALLS   = 200000;
+
+  @Test public void testNoTransitionIsLost() throws Exception {
+    final CountingCircuitBreaker breaker = new CountingCircuitBreaker();
+    final CountDownLatch start = new CountDownLatch(1);
+    final List<Thread> threads = new ArrayList<Thread>();
+    for (int idx = 0; idx < THREADS; idx++) {
+      final Thread thread = new Thread(new Runnable() {
+        @Override public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+
+          final ThreadLocalRandom random = ThreadLocalRandom.current();
+          for (int call = 0; call < CALLS; call++) {
+            try {
+              breaker.callStarted();
+            } catch (CallNotPermittedException rejected) {
+              continue;
+            }
+
+            if (random.nextInt(4) == 0) {
+              breaker.callFailed(new IllegalStateException());
+            } else {
+              breaker.callSucceeded();
+            }
+          }
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+
+    start.countDown();
+    for (Thread each : threads) {
+      each.join();
+    }
+
+    final long opened     = breaker.closedToOpened.get() + breaker.halfOpenedToOpened.get();
+    final long halfOpened = breaker.openedToHalfOpened.get();
+    final long closed     = breaker.halfOpenedToClosed.get();
+    final long renewed    = breaker.halfOpenedRenewed.get();
+
+    assertThat(breaker.skippedEpochs.get(), equalTo(0L));
+    assertThat(closed > 0, equalTo(true));
+    assertThat(opened + halfOpened + closed + renewed, equalTo(breaker.transitions()));
+    assertThat(breaker.closedToOpened.get(), equalTo(closed + (breaker.status() == CircuitBreakerStatus.CLOSED ? 0 : 1)));
+    assertThat(halfOpened, equalTo(opened - (breaker.status() == CircuitBreakerStatus.OPENED ? 1 : 0)));
+  }
+
+  @Test public void testNoLatencyIsLost() throws Exception {
+    final LatencyHistogram latencies = new LatencyHistogram();
+    final CountDownLatch start = new CountDownLatch(1);
+    final List<Thread> threads = new ArrayList<Thread>();
+    for (int idx = 0; idx < THREADS; idx++) {
+      final Thread thread = new Thread(new Runnable() {
+        @Override public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+
+          for (int call = 0; call < CALLS; call++) {
+            latencies.record(1000L); // every thread hits the same bucket.
+          }
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+
+    start.countDown();
+    for (Thread each : threads) {
+      each.join();
+    }
+
+    assertThat(latencies.count(), equalTo((long) THREADS * CALLS));
+    assertThat(latencies.percentile(50), equalTo(LatencyHistogram.highestValueOf(LatencyHistogram.indexOf(1000L))));
+  }
+
+  static class CountingCircuitBreaker extends DefaultCircuitBreaker<RuntimeException> {
+    final AtomicLong closedToOpened     = new AtomicLong();
+    final AtomicLong openedToHalfOpened = new AtomicLong();
+    final AtomicLong halfOpenedToOpened = new AtomicLong();
+    final AtomicLong halfOpenedToClosed = new AtomicLong();
+    final AtomicLong halfOpenedRenewed  = new AtomicLong(); // half-open periods given up on.
+    final AtomicLong skippedEpochs      = new AtomicLong();
+
+    CountingCircuitBreaker() {
+      super(3, 1000L, 2, 2, false);
+    }
+
+    @Override void notifyStatusChange(State<RuntimeException> oldState, State<RuntimeException> newState) {
+      if (newState.epoch != oldState.epoch + 1) {
+        skippedEpochs.incrementAndGet();
+      }
+
+      if (oldState.status == CircuitBreakerStatus.CLOSED) {
+        closedToOpened.incrementAndGet();
+      } else if (oldState.status == CircuitBreakerStatus.OPENED) {
+        openedToHalfOpened.incrementAndGet();
+      } else if (newState.status == CircuitBreakerStatus.OPENED) {
+        halfOpenedToOpened.incrementAndGet();
+      } else if (newState.status == CircuitBreakerStatus.HALF_OPENED) {
+        halfOpenedRenewed.incrementAndGet();
+      } else {
+        halfOpenedToClosed.incrementAndGet();
+      }
+    }
+  }
+}
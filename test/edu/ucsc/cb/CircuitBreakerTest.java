@@ -2,10 +2,21 @@ package edu.ucsc.cb;
 
 import static edu.ucsc.cb.CircuitBreakers.newCircuitBreaker;
 import static edu.ucsc.cb.CircuitBreakers.safeguard;
+import static edu.ucsc.cb.CircuitBreakers.safeguardAsync;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.sameInstance;
+import java.util.function.Supplier;
 import org.junit.Test;
 
 /**
@@ -41,4 +52,418 @@ public class CircuitBreakerTest {
 
     assertThat(expectedBreaks.get(), equalTo(40));
   }
+
+  @Test public void testRejectedCallsShareOneStacklessException() throws Exception {
+    final CircuitBreaker<RuntimeException> breaker = newCircuitBreaker(1, Long.MAX_VALUE / 2, false);
+    breaker.callStarted();
+    breaker.callFailed(new IllegalStateException("down"));
+
+    final CallNotPermittedException first  = rejection(breaker);
+    final CallNotPermittedException second = rejection(breaker);
+
+    assertThat(first, sameInstance(second));
+    assertThat(first.getStackTrace().length, equalTo(0));
+  }
+
+  @Test public void testHalfOpenedBreakerHandsOutBoundedProbes() throws Exception {
+    final ManualClock clock = new ManualClock();
+    final CircuitBreaker<RuntimeException> breaker = newCircuitBreaker(CircuitBreakerConfig.builder()
+        .failedCallThreshold(1)
+        .retryThreshold(TimeUnit.SECONDS.toNanos(1))
+        .halfOpenPermits(2)
+        .successfulProbeThreshold(3)
+        .clock(clock)
+        .build());
+    breaker.callStarted();
+    breaker.callFailed(new IllegalStateException("down"));
+    assertThat(breaker.status(), equalTo(CircuitBreakerStatus.OPENED));
+    clock.advance(2, TimeUnit.SECONDS);
+
+    breaker.callStarted(); // first probe
+    breaker.callStarted(); // second probe
+    assertThat(breaker.status(), equalTo(CircuitBreakerStatus.HALF_OPENED));
+    rejection(breaker);
+
+    breaker.callSucceeded();
+    breaker.callSucceeded();
+    breaker.callStarted(); // third probe, after a permit was released
+    assertThat(breaker.status(), equalTo(CircuitBreakerStatus.HALF_OPENED));
+
+    breaker.callSucceeded();
+    assertThat(breaker.status(), equalTo(CircuitBreakerStatus.CLOSED));
+  }
+
+  @Test public void testCallsLetThruBeforeOpeningAreNotProbes() throws Exception {
+    final ManualClock clock = new ManualClock();
+    final CircuitBreaker<RuntimeException> breaker = newCircuitBreaker(CircuitBreakerConfig.builder()
+        .failedCallThreshold(1)
+        .retryThreshold(TimeUnit.SECONDS.toNanos(1))
+        .halfOpenPermits(1)
+        .successfulProbeThreshold(2)
+        .clock(clock)
+        .build());
+
+    final long straggler = breaker.callPermitted();
+    breaker.callFailed(breaker.callPermitted(), new IllegalStateException("down"), 0L);
+    clock.advance(2, TimeUnit.SECONDS);
+
+    final long probe = breaker.callPermitted();
+    assertThat(breaker.status(), equalTo(CircuitBreakerStatus.HALF_OPENED));
+
+    // neither returns the probe's permit nor counts toward closing the breaker.
+    breaker.callSucceeded(straggler, 0L);
+    rejection(breaker);
+
+    breaker.callSucceeded(probe, 0L);
+    assertThat(breaker.status(), equalTo(CircuitBreakerStatus.HALF_OPENED));
+    breaker.callSucceeded(breaker.callPermitted(), 0L);
+    assertThat(breaker.status(), equalTo(CircuitBreakerStatus.CLOSED));
+  }
+
+  @Test public void testProbeDyingOfAnErrorGivesItsPermitBack() throws Exception {
+    final ManualClock clock = new ManualClock();
+    final CircuitBreaker<RuntimeException> breaker = newCircuitBreaker(CircuitBreakerConfig.builder()
+        .failedCallThreshold(1)
+        .retryThreshold(TimeUnit.SECONDS.toNanos(1))
+        .clock(clock)
+        .build());
+
+    breaker.callFailed(breaker.callPermitted(), new IllegalStateException("down"), 0L);
+    clock.advance(2, TimeUnit.SECONDS);
+
+    try {
+      safeguard(new Callable<String>() {
+        @Override public String call() throws Exception {
+          throw new AssertionError("probe died");
+        }
+      }, "", breaker);
+      throw new IllegalStateException("the probe should have died");
+    } catch (AssertionError expected){
+      assertThat(expected.getMessage(), equalTo("probe died"));
+    }
+
+    assertThat(breaker.status(), equalTo(CircuitBreakerStatus.HALF_OPENED));
+    assertThat(safeguard(new Callable<String>() {
+      @Override public String call() throws Exception {
+        return "ok";
+      }
+    }, "", breaker), equalTo("ok"));
+    assertThat(breaker.status(), equalTo(CircuitBreakerStatus.CLOSED));
+  }
+
+  @Test public void testLostProbePermitsGoStaleAfterTheRetryThreshold() throws Exception {
+    final ManualClock clock = new ManualClock();
+    final CircuitBreaker<RuntimeException> breaker = newCircuitBreaker(CircuitBreakerConfig.builder()
+        .failedCallThreshold(1)
+        .retryThreshold(TimeUnit.SECONDS.toNanos(1))
+        .clock(clock)
+        .build());
+
+    breaker.callFailed(breaker.callPermitted(), new IllegalStateException("down"), 0L);
+    clock.advance(2, TimeUnit.SECONDS);
+
+    final long lost = breaker.callPermitted(); // never reported.
+    rejection(breaker);
+    clock.advance(2, TimeUnit.SECONDS);
+
+    final long probe = breaker.callPermitted();
+    assertThat(breaker.status(), equalTo(CircuitBreakerStatus.HALF_OPENED));
+
+    // the lost permit belongs to the earlier half-open period: it neither closes nor trips.
+    breaker.callFailed(lost, new IllegalStateException("late"), 0L);
+    assertThat(breaker.status(), equalTo(CircuitBreakerStatus.HALF_OPENED));
+    breaker.callSucceeded(probe, 0L);
+    assertThat(breaker.status(), equalTo(CircuitBreakerStatus.CLOSED));
+  }
+
+  @Test public void testBatchesAreAdmittedAndRecordedAtOnce() throws Exception {
+    final ManualClock clock = new ManualClock();
+    final CircuitBreaker<RuntimeException> breaker = newCircuitBreaker(CircuitBreakerConfig.builder()
+        .failedCallThreshold(10)
+        .retryThreshold(TimeUnit.SECONDS.toNanos(1))
+        .halfOpenPermits(4)
+        .successfulProbeThreshold(6)
+        .clock(clock)
+        .build());
+    assertThat(breaker.callsStarted(64), equalTo(64));
+
+    breaker.callsCompleted(60, 4, new IllegalStateException("down"));
+    assertThat(breaker.status(), equalTo(CircuitBreakerStatus.CLOSED));
+    breaker.callsCompleted(0, 6, new IllegalStateException("down"));
+    assertThat(breaker.status(), equalTo(CircuitBreakerStatus.OPENED));
+    assertThat(breaker.getStatistics().getSuccessfulCalls(), equalTo(60L));
+    assertThat(breaker.getStatistics().getFailedCalls(), equalTo(10L));
+    clock.advance(2, TimeUnit.SECONDS);
+
+    // a half-opened breaker lets in as many calls as it has probe permits.
+    assertThat(breaker.callsStarted(64), equalTo(4));
+    rejection(breaker);
+    breaker.callsCompleted(4, 0, null);
+    assertThat(breaker.status(), equalTo(CircuitBreakerStatus.HALF_OPENED));
+    assertThat(breaker.callsStarted(64), equalTo(4));
+    breaker.callsCompleted(2, 0, null);
+    assertThat(breaker.status(), equalTo(CircuitBreakerStatus.CLOSED));
+  }
+
+  @Test public void testClassifiedFailuresAreRethrownAsIs() throws Exception {
+    final CircuitBreaker<RuntimeException> breaker = newCircuitBreaker(CircuitBreakerConfig.builder()
+        .failedCallThreshold(2)
+        .exceptionClassifier(ExceptionClassifier.builder()
+            .ignore(IllegalArgumentException.class)
+            .countAsSuccess(UnsupportedOperationException.class)
+            .build())
+        .build());
+
+    final RuntimeException invalid = new NumberFormatException("invalid");
+    for(int idx = 0; idx < 5; idx++){
+      try {
+        safeguard(failing(invalid), "Error has occurred!", breaker);
+        throw new AssertionError("call should have failed");
+      } catch (NumberFormatException expected){
+        assertThat(expected, sameInstance(invalid));
+      }
+    }
+
+    assertThat(breaker.status(), equalTo(CircuitBreakerStatus.CLOSED));
+    assertThat(breaker.getStatistics().getIgnoredCalls(), equalTo(5L));
+    assertThat(breaker.getStatistics().getInFlightCalls(), equalTo(0L));
+
+    breaker.callStarted();
+    breaker.callFailed(new IllegalStateException("down"));
+    breaker.callStarted();
+    breaker.callFailed(new UnsupportedOperationException("not here")); // clears the failure.
+    breaker.callStarted();
+    breaker.callFailed(new IllegalStateException("down"));
+    assertThat(breaker.status(), equalTo(CircuitBreakerStatus.CLOSED));
+    assertThat(breaker.getStatistics().getSuccessfulCalls(), equalTo(1L));
+
+    // batches are classified alike.
+    breaker.callsStarted(6);
+    breaker.callsCompleted(0, 4, new IllegalArgumentException("invalid"));
+    breaker.callsCompleted(0, 2, new UnsupportedOperationException("not here"));
+    assertThat(breaker.status(), equalTo(CircuitBreakerStatus.CLOSED));
+    assertThat(breaker.getStatistics().getIgnoredCalls(), equalTo(9L));
+    assertThat(breaker.getStatistics().getSuccessfulCalls(), equalTo(3L));
+  }
+
+  @Test public void testFailedProbeReopensBreaker() throws Exception {
+    final CircuitBreaker<RuntimeException> breaker = newCircuitBreaker(1, 1L, 4, 2, false);
+    breaker.callStarted();
+    breaker.callFailed(new IllegalStateException("down"));
+
+    breaker.callStarted();
+    breaker.callSucceeded();
+    breaker.callStarted();
+    breaker.callFailed(new IllegalStateException("still down"));
+
+    assertThat(breaker.status(), equalTo(CircuitBreakerStatus.OPENED));
+  }
+
+  @Test public void testStatisticsTrackCallsTransitionsAndLatencies() throws Exception {
+    final CircuitBreaker<RuntimeException> breaker = newCircuitBreaker(2, 1L, false);
+    final CircuitBreakerStatistics statistics = breaker.getStatistics();
+    assertThat(statistics.getLatency(50), equalTo(-1L));
+    assertThat(statistics.getAvgRecoveryTime(), equalTo(-1L));
+
+    for(int idx = 1; idx <= 100; idx++){
+      breaker.callStarted();
+      breaker.callSucceeded(idx * 1000L);
+    }
+
+    breaker.callStarted();
+    assertThat(statistics.getInFlightCalls(), equalTo(0L)); // nothing guards this call.
+    breaker.callFailed(new IllegalStateException("down"), 1000L);
+    breaker.callStarted();
+    breaker.callFailed(new IllegalStateException("down"), 1000L);
+    assertThat(breaker.status(), equalTo(CircuitBreakerStatus.OPENED));
+
+    breaker.callStarted();  // trial call
+    breaker.callSucceeded();
+    assertThat(breaker.status(), equalTo(CircuitBreakerStatus.CLOSED));
+
+    assertThat(breaker.getStatistics(), sameInstance(statistics));
+    assertThat(statistics.getSuccessfulCalls(), equalTo(101L));
+    assertThat(statistics.getFailedCalls(), equalTo(2L));
+    assertThat(statistics.getInFlightCalls(), equalTo(0L));
+    assertThat(statistics.getFailureRate(), equalTo(200f / 103));
+    assertThat(statistics.getTransitions(CircuitBreakerStatus.OPENED), equalTo(1L));
+    assertThat(statistics.getTransitions(CircuitBreakerStatus.HALF_OPENED), equalTo(1L));
+    assertThat(statistics.getTransitions(CircuitBreakerStatus.CLOSED), equalTo(1L));
+    assertThat(statistics.getAvgRecoveryTime() >= 0, equalTo(true));
+    assertThat(statistics.getTimeInStatus(CircuitBreakerStatus.CLOSED) > 0, equalTo(true));
+
+    // latencies are kept within 1/16th of their value.
+    assertThat(Math.abs(statistics.getLatency(50) - 49000L) <= 49000L / 16, equalTo(true));
+    assertThat(Math.abs(statistics.getLatency(99) - 99000L) <= 99000L / 16, equalTo(true));
+    assertThat(Math.abs(statistics.getLatency(99.9) - 100000L) <= 100000L / 16, equalTo(true));
+  }
+
+  @Test public void testGuardedCallsAreCountedInFlight() throws Exception {
+    final CircuitBreaker<RuntimeException> breaker = newCircuitBreaker(1, 1L, false);
+    final CircuitBreakerStatistics statistics = breaker.getStatistics();
+
+    assertThat(safeguard(new Callable<Long>() {
+      @Override public Long call() throws Exception {
+        return statistics.getInFlightCalls();
+      }
+    }, "", breaker), equalTo(1L));
+    assertThat(statistics.getInFlightCalls(), equalTo(0L));
+
+    final CompletableFuture<String> pending = new CompletableFuture<String>();
+    final CompletableFuture<String> result  = safeguardAsync(new Supplier<CompletionStage<String>>() {
+      @Override public CompletionStage<String> get() {
+        return pending;
+      }
+    }, breaker);
+    assertThat(statistics.getInFlightCalls(), equalTo(1L));
+    pending.complete("ok");
+    assertThat(result.get(), equalTo("ok"));
+    assertThat(statistics.getInFlightCalls(), equalTo(0L));
+  }
+
+  @Test public void testExecutorCallTimesOut() throws Exception {
+    final CircuitBreaker<RuntimeException> breaker = newCircuitBreaker(1, Long.MAX_VALUE / 2, false);
+    final CountDownLatch interrupted = new CountDownLatch(1);
+    final Callable<String> never = new Callable<String>() {
+      @Override public String call() throws Exception {
+        try {
+          new CountDownLatch(1).await();
+        } catch (InterruptedException e) {
+          interrupted.countDown();
+        }
+        return "too late";
+      }
+    };
+
+    try {
+      CircuitBreakers.circuitBreak(never, breaker, 20, TimeUnit.MILLISECONDS);
+      throw new AssertionError("call should have timed out");
+    } catch (Exception expected) {
+      assertThat(expected, instanceOf(TimeoutException.class));
+    }
+
+    assertThat(interrupted.await(5, TimeUnit.SECONDS), equalTo(true));
+    assertThat(breaker.status(), equalTo(CircuitBreakerStatus.OPENED));
+    assertThat(CircuitBreakers.safeguard(new Callable<String>() {
+      @Override public String call() throws Exception {
+        return "on time";
+      }
+    }, newCircuitBreaker(1, 1L, false), 5, TimeUnit.SECONDS), equalTo("on time"));
+  }
+
+  @Test public void testAsyncCallsRecordOutcomeOnCompletion() throws Exception {
+    final CircuitBreaker<RuntimeException> breaker = newCircuitBreaker(1, Long.MAX_VALUE / 2, false);
+    final CompletableFuture<String> pending = new CompletableFuture<String>();
+    final CompletableFuture<String> result  = safeguardAsync(new Supplier<CompletionStage<String>>() {
+      @Override public CompletionStage<String> get() {
+        return pending;
+      }
+    }, breaker);
+
+    assertThat(result.isDone(), equalTo(false));
+    pending.completeExceptionally(new IllegalStateException("down"));
+    assertThat(result.isCompletedExceptionally(), equalTo(true));
+    assertThat(breaker.status(), equalTo(CircuitBreakerStatus.OPENED));
+
+    final CompletableFuture<String> rejected = safeguardAsync(new Supplier<CompletionStage<String>>() {
+      @Override public CompletionStage<String> get() {
+        throw new AssertionError("call should have been rejected");
+      }
+    }, breaker);
+
+    try {
+      rejected.get();
+      throw new AssertionError("call should have been rejected");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause(), instanceOf(CallNotPermittedException.class));
+    }
+  }
+
+  @Test public void testSlowCallRateOpensBreaker() throws Exception {
+    final CircuitBreaker<RuntimeException> breaker = newCircuitBreaker(CircuitBreakerConfig.builder()
+        .failedCallThreshold(Long.MAX_VALUE)
+        .slowCalls(TimeUnit.MILLISECONDS.toNanos(100), 50.0f)
+        .slowCallWindow(10, 4)
+        .build());
+
+    for (int idx = 0; idx < 7; idx++) { // 3 out of 7 calls are slow
+      breaker.callStarted();
+      breaker.callSucceeded(TimeUnit.MILLISECONDS.toNanos(idx < 4 ? 1 : 500));
+    }
+
+    assertThat(breaker.status(), equalTo(CircuitBreakerStatus.CLOSED));
+
+    breaker.callStarted();
+    breaker.callSucceeded(TimeUnit.MILLISECONDS.toNanos(500));
+
+    assertThat(breaker.status(), equalTo(CircuitBreakerStatus.OPENED));
+  }
+
+  @Test public void testAsyncCallTimesOut() throws Exception {
+    final CircuitBreaker<RuntimeException> breaker = newCircuitBreaker(1, Long.MAX_VALUE / 2, false);
+    final CompletableFuture<String> never = new CompletableFuture<String>();
+    final CompletableFuture<String> result = safeguardAsync(new Supplier<CompletionStage<String>>() {
+      @Override public CompletionStage<String> get() {
+        return never;
+      }
+    }, breaker, 10, TimeUnit.MILLISECONDS);
+
+    try {
+      result.get(5, TimeUnit.SECONDS);
+      throw new AssertionError("call should have timed out");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause(), instanceOf(TimeoutException.class));
+    }
+
+    try {
+      never.get(5, TimeUnit.SECONDS);
+      throw new AssertionError("timed out call should have been cancelled");
+    } catch (CancellationException expected) {
+      assertThat(breaker.status(), equalTo(CircuitBreakerStatus.OPENED));
+    }
+  }
+
+  @Test public void testLongestRetryThresholdNeverRetries() throws Exception {
+    final ManualClock clock = new ManualClock();
+    clock.advance(1, TimeUnit.SECONDS);
+    final CircuitBreaker<RuntimeException> breaker = newCircuitBreaker(CircuitBreakerConfig.builder()
+        .failedCallThreshold(1)
+        .retryThreshold(Long.MAX_VALUE)
+        .clock(clock)
+        .build());
+    breaker.callStarted();
+    breaker.callFailed(new IllegalStateException("down"));
+
+    clock.advance(365, TimeUnit.DAYS);
+    rejection(breaker);
+    assertThat(breaker.status(), equalTo(CircuitBreakerStatus.OPENED));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testZeroFailedCallThresholdIsRefused() throws Exception {
+    CircuitBreakerConfig.builder().failedCallThreshold(0).build();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeRetryThresholdIsRefused() throws Exception {
+    CircuitBreakerConfig.builder().retryThreshold(-1L).build();
+  }
+
+  private static CallNotPermittedException rejection(CircuitBreaker<RuntimeException> breaker) {
+    try {
+      breaker.callStarted();
+    } catch (CallNotPermittedException e) {
+      return e;
+    }
+
+    throw new AssertionError("call should have been rejected");
+  }
+
+  private static Callable<String> failing(final RuntimeException failure) {
+    return new Callable<String>() {
+      @Override public String call() throws Exception {
+        throw failure;
+      }
+    };
+  }
 }
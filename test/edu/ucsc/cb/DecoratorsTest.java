@@ -0,0 +1,76 @@
+package edu.ucsc.cb;
+
+import static edu.ucsc.cb.RetryPolicyTest.failingTimes;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import org.junit.Test;
+
+/**
+ * ...
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class DecoratorsTest {
+  @Test public void testDecoratedCallIsRetriedThruBreakerAndBulkhead() throws Exception {
+    final CircuitBreaker<RuntimeException> breaker = new DefaultCircuitBreaker<RuntimeException>(10, 1000000000L, false);
+    final Bulkhead bulkhead = CircuitBreakers.newBulkhead(1);
+    final AtomicInteger attempts = new AtomicInteger();
+    final Callable<String> call = Decorators.of(failingTimes(2, attempts))
+        .withBulkhead(bulkhead)
+        .withRetry(RetryPolicy.builder().maxAttempts(3).backoff(0, 0, TimeUnit.MILLISECONDS).build())
+        .withCircuitBreaker(breaker)
+        .build();
+
+    assertThat(call.call(), equalTo("ok"));
+    assertThat(attempts.get(), equalTo(3));
+    assertThat(breaker.getStatistics().getFailedCalls(), equalTo(2L));
+    assertThat(breaker.getStatistics().getSuccessfulCalls(), equalTo(1L));
+    assertThat(bulkhead.getConcurrentCalls(), equalTo(0));
+
+    // the invoker is reusable.
+    assertThat(call.call(), equalTo("ok"));
+    assertThat(attempts.get(), equalTo(4));
+  }
+
+  @Test public void testTimedOutAndRejectedCallsFallBack() throws Exception {
+    final CircuitBreaker<RuntimeException> breaker = new DefaultCircuitBreaker<RuntimeException>(1, 1000000000L, false);
+    final AtomicInteger attempts = new AtomicInteger();
+    final Callable<String> call = Decorators.of(new Callable<String>() {
+      @Override public String call() throws Exception {
+        attempts.incrementAndGet();
+        Thread.sleep(TimeUnit.SECONDS.toMillis(10));
+        return "late";
+      }
+    }).withCircuitBreaker(breaker)
+      .withTimeout(10, TimeUnit.MILLISECONDS)
+      .withFallback(new Function<Exception, String>() {
+        @Override public String apply(Exception error) {
+          return error.getClass().getSimpleName();
+        }
+      })
+      .build();
+
+    assertThat(call.call(), equalTo("TimeoutException"));
+    assertThat(breaker.status(), equalTo(CircuitBreakerStatus.OPENED));
+
+    // the breaker is open now; the call is turned down without being made.
+    assertThat(call.call(), equalTo("CallNotPermittedException"));
+    assertThat(attempts.get(), equalTo(1));
+  }
+
+  @Test public void testUndecoratedFailureIsRethrownUnchanged() throws Exception {
+    final AtomicInteger attempts = new AtomicInteger();
+    try {
+      Decorators.of(failingTimes(1, attempts)).build().call();
+      throw new AssertionError("call should have failed");
+    } catch (Exception expected){
+      assertThat(expected, instanceOf(IllegalStateException.class));
+    }
+  }
+}
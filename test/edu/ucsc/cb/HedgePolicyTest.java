@@ -0,0 +1,129 @@
+package edu.ucsc.cb;
+
+import static edu.ucsc.cb.CircuitBreakers.hedge;
+import static edu.ucsc.cb.CircuitBreakers.hedgeAsync;
+import static edu.ucsc.cb.CircuitBreakers.newCircuitBreaker;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import org.junit.Test;
+
+/**
+ * ...
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class HedgePolicyTest {
+  @Test public void testSlowCallIsHedgedAndLoserCancelled() throws Exception {
+    final CircuitBreaker<RuntimeException> breaker = new DefaultCircuitBreaker<RuntimeException>(10, 1000000000L, false);
+    final HedgePolicy policy = HedgePolicy.builder()
+        .delay(1, 1, 1, TimeUnit.MILLISECONDS)
+        .build();
+
+    final CompletableFuture<String> slow = new CompletableFuture<String>();
+    final AtomicInteger attempts = new AtomicInteger();
+    final CompletableFuture<String> result = hedgeAsync(new Supplier<CompletionStage<String>>() {
+      @Override public CompletionStage<String> get() {
+        return attempts.incrementAndGet() == 1 ? slow : CompletableFuture.completedFuture("hedge");
+      }
+    }, breaker, policy);
+
+    assertThat(result.get(1, TimeUnit.SECONDS), equalTo("hedge"));
+    assertThat(attempts.get(), equalTo(2));
+    assertThat(slow.isCancelled(), equalTo(true));
+    // losing the race is neither a success nor a failure.
+    assertThat(breaker.getStatistics().getSuccessfulCalls(), equalTo(1L));
+    assertThat(breaker.getStatistics().getFailedCalls(), equalTo(0L));
+    assertThat(breaker.getStatistics().getIgnoredCalls(), equalTo(1L));
+  }
+
+  @Test public void testBudgetCapsHedges() throws Exception {
+    final CircuitBreaker<RuntimeException> breaker = new DefaultCircuitBreaker<RuntimeException>(10, 1000000000L, false);
+    final HedgePolicy policy = HedgePolicy.builder()
+        .delay(1, 1, 1, TimeUnit.MILLISECONDS)
+        .budget(new RetryBudget(0.1, 1))
+        .build();
+
+    final AtomicInteger attempts = new AtomicInteger();
+    for(int idx = 0; idx < 2; idx++){
+      final CompletableFuture<String> slow = new CompletableFuture<String>();
+      final CompletableFuture<String> result = hedgeAsync(new Supplier<CompletionStage<String>>() {
+        @Override public CompletionStage<String> get() {
+          attempts.incrementAndGet();
+          return slow;
+        }
+      }, breaker, policy);
+
+      Thread.sleep(20);
+      slow.complete("ok");
+      assertThat(result.get(1, TimeUnit.SECONDS), equalTo("ok"));
+    }
+
+    // a full bucket pays for the first call's hedge; the second call's deposit is not enough.
+    assertThat(attempts.get(), equalTo(3));
+  }
+
+  @Test public void testBlockingHedgeInterruptsLoser() throws Exception {
+    final CircuitBreaker<RuntimeException> breaker = new DefaultCircuitBreaker<RuntimeException>(10, 1000000000L, false);
+    final HedgePolicy policy = HedgePolicy.builder()
+        .delay(5, 1, 5, TimeUnit.MILLISECONDS)
+        .build();
+
+    final CountDownLatch interrupted = new CountDownLatch(1);
+    final AtomicInteger attempts = new AtomicInteger();
+    final String result = hedge(new Callable<String>() {
+      @Override public String call() throws Exception {
+        if(attempts.incrementAndGet() > 1) return "hedge";
+
+        try {
+          Thread.sleep(10000);
+          return "slow";
+        } catch (InterruptedException e) {
+          interrupted.countDown();
+          throw e;
+        }
+      }
+    }, breaker, policy);
+
+    assertThat(result, equalTo("hedge"));
+    assertThat(interrupted.await(1, TimeUnit.SECONDS), equalTo(true));
+  }
+
+  @Test public void testDelayFollowsTrackedLatency() throws Exception {
+    final ManualClock clock = new ManualClock();
+    final CircuitBreaker<RuntimeException> breaker = newCircuitBreaker(CircuitBreakerConfig.builder()
+        .failedCallThreshold(10)
+        .retryThreshold(1000000000L)
+        .clock(clock)
+        .build());
+    final HedgePolicy policy = HedgePolicy.builder()
+        .percentile(99)
+        .delay(3, 1, 2, TimeUnit.SECONDS)
+        .refreshInterval(200, TimeUnit.MILLISECONDS)
+        .build();
+
+    // no latency tracked yet: the initial delay, capped at the max.
+    assertThat(policy.delay(breaker), equalTo(TimeUnit.SECONDS.toNanos(2)));
+
+    for(int idx = 0; idx < 100; idx++){
+      breaker.callStarted();
+      breaker.callSucceeded(TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    // still cached until the refresh interval goes by.
+    assertThat(policy.delay(breaker), equalTo(TimeUnit.SECONDS.toNanos(2)));
+
+    clock.advance(199, TimeUnit.MILLISECONDS);
+    assertThat(policy.delay(breaker), equalTo(TimeUnit.SECONDS.toNanos(2)));
+
+    clock.advance(1, TimeUnit.MILLISECONDS);
+    // a millisecond at the 99th percentile: raised to the min.
+    assertThat(policy.delay(breaker), equalTo(TimeUnit.SECONDS.toNanos(1)));
+  }
+}
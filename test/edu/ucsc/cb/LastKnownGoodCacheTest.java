@@ -0,0 +1,119 @@
+package edu.ucsc.cb;
+
+import static edu.ucsc.cb.CircuitBreakers.circuitBreak;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import org.junit.Test;
+
+/**
+ * ...
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class LastKnownGoodCacheTest {
+  @Test public void testOpenedBreakerAnswersFromCacheOrFallback() throws Exception {
+    final CircuitBreaker<RuntimeException> breaker = new DefaultCircuitBreaker<RuntimeException>(1, Long.MAX_VALUE / 2, false);
+    final LastKnownGoodCache<String, String> cache = new LastKnownGoodCache<String, String>(10, 1, TimeUnit.MINUTES);
+    final Function<Exception, String> fallback = new Function<Exception, String>() {
+      @Override public String apply(Exception error) {
+        return "default";
+      }
+    };
+
+    assertThat(circuitBreak("fr", answer("bonjour"), breaker, cache, fallback), equalTo("bonjour"));
+    assertThat(circuitBreak("es", failure(), breaker, cache, fallback), equalTo("default"));
+    assertThat(breaker.status(), equalTo(CircuitBreakerStatus.OPENED));
+
+    // the breaker turns these down; the call is not even made.
+    assertThat(circuitBreak("fr", failure(), breaker, cache, fallback), equalTo("bonjour"));
+    assertThat(circuitBreak("de", failure(), breaker, cache, fallback), equalTo("default"));
+    assertThat(circuitBreak(failure(), breaker, fallback), equalTo("default"));
+
+    assertThat(breaker.getStatistics().getCacheHits(), equalTo(1L));
+    assertThat(breaker.getStatistics().getCacheMisses(), equalTo(2L));
+    assertThat(breaker.getStatistics().getRejectedCalls(), equalTo(3L));
+  }
+
+  @Test public void testCacheIsBoundedByEntriesWeightAndAge() throws Exception {
+    final ManualClock clock = new ManualClock();
+    final LastKnownGoodCache<Integer, String> cache = new LastKnownGoodCache<Integer, String>(3, 10,
+        new ToLongFunction<String>() {
+          @Override public long applyAsLong(String value) {
+            return value.length();
+          }
+        }, 50, TimeUnit.MILLISECONDS, clock);
+
+    cache.put(1, "a");
+    cache.put(2, "b");
+    cache.put(3, "c");
+    assertThat(cache.get(1), equalTo("a")); // read, so it gets a second chance.
+    cache.put(4, "d");
+    assertThat(cache.size(), equalTo(3));
+    assertThat(cache.get(2), nullValue());
+
+    cache.put(5, "0123456789");
+    assertThat(cache.weight(), equalTo(10L));
+    assertThat(cache.get(1), nullValue());
+    assertThat(cache.get(5), equalTo("0123456789"));
+
+    clock.advance(49, TimeUnit.MILLISECONDS);
+    assertThat(cache.get(5), equalTo("0123456789"));
+    clock.advance(1, TimeUnit.MILLISECONDS);
+    assertThat(cache.get(5), nullValue());
+  }
+
+  @Test public void testWeightStaysExactUnderConcurrentPutsAndEvictions() throws Exception {
+    final LastKnownGoodCache<Integer, String> cache = new LastKnownGoodCache<Integer, String>(4, 1000,
+        new ToLongFunction<String>() {
+          @Override public long applyAsLong(String value) {
+            return value.length();
+          }
+        }, 1, TimeUnit.MINUTES);
+
+    final Thread[] writers = new Thread[4];
+    for(int idx = 0; idx < writers.length; idx++){
+      final int writer = idx;
+      writers[idx] = new Thread(new Runnable() {
+        @Override public void run() {
+          for(int put = 0; put < 20000; put++){
+            cache.put(put % 8, "abcdefgh".substring(0, 1 + (put + writer) % 8));
+          }
+        }
+      });
+      writers[idx].start();
+    }
+
+    for(Thread each : writers){
+      each.join();
+    }
+
+    long cached = 0;
+    for(int key = 0; key < 8; key++){
+      final String value = cache.get(key);
+      if(value != null) cached += value.length();
+    }
+
+    assertThat(cache.weight(), equalTo(cached));
+  }
+
+  private static Callable<String> answer(final String value){
+    return new Callable<String>() {
+      @Override public String call() throws Exception {
+        return value;
+      }
+    };
+  }
+
+  private static Callable<String> failure(){
+    return new Callable<String>() {
+      @Override public String call() throws Exception {
+        throw new IllegalStateException("down");
+      }
+    };
+  }
+}
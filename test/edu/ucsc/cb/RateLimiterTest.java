@@ -0,0 +1,59 @@
+package edu.ucsc.cb;
+
+import static edu.ucsc.cb.CircuitBreakers.newRateLimiter;
+import static edu.ucsc.cb.CircuitBreakers.safeguard;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import org.junit.Test;
+
+/**
+ * ...
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class RateLimiterTest {
+  @Test public void testBurstIsLetThruThenCallsAreRejected() throws Exception {
+    final RateLimiter limiter = newRateLimiter(1, 3);
+    assertThat(limiter.tryAcquire(), equalTo(true));
+    assertThat(limiter.tryAcquire(), equalTo(true));
+    assertThat(limiter.tryAcquire(), equalTo(true));
+    assertThat(limiter.tryAcquire(), equalTo(false));
+    assertThat(limiter.getRejectedCalls(), equalTo(1L));
+    assertThat(limiter.getAvailablePermits(), equalTo(0));
+  }
+
+  @Test public void testBoundedWaitGetsNextSlot() throws Exception {
+    final RateLimiter limiter = newRateLimiter(100, 1); // a slot every 10 milliseconds.
+    assertThat(limiter.tryAcquire(), equalTo(true));
+
+    final long start = System.nanoTime();
+    assertThat(limiter.tryAcquire(1, TimeUnit.SECONDS), equalTo(true));
+    assertThat(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(5), equalTo(true));
+
+    // the next slot is 10 milliseconds away; waiting 1 nanosecond is not enough.
+    assertThat(limiter.tryAcquire(1, TimeUnit.NANOSECONDS), equalTo(false));
+  }
+
+  @Test public void testCallOverRateDoesNotReachBreaker() throws Exception {
+    final RateLimiter limiter = newRateLimiter(1, 1);
+    final CircuitBreaker<RuntimeException> breaker = new DefaultCircuitBreaker<RuntimeException>(1, Long.MAX_VALUE / 2, false);
+    final Callable<String> call = new Callable<String>() {
+      @Override public String call() throws Exception {
+        return "One, two, three, four, etc.";
+      }
+    };
+
+    assertThat(safeguard(call, "Error has occurred!", breaker, limiter), equalTo("One, two, three, four, etc."));
+    try {
+      safeguard(call, "Error has occurred!", breaker, limiter);
+      throw new AssertionError("rate limit should have been exceeded");
+    } catch (RateLimitExceededException expected){
+      assertThat(expected.getStackTrace().length, equalTo(0));
+    }
+
+    assertThat(breaker.status(), equalTo(CircuitBreakerStatus.CLOSED));
+    assertThat(breaker.getStatistics().getSuccessfulCalls(), equalTo(1L));
+  }
+}
@@ -0,0 +1,104 @@
+package edu.ucsc.cb;
+
+import static edu.ucsc.cb.CircuitBreakers.retry;
+import static edu.ucsc.cb.CircuitBreakers.retryAsync;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import org.junit.Test;
+
+/**
+ * ...
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class RetryPolicyTest {
+  @Test public void testCallIsRetriedUntilItSucceeds() throws Exception {
+    final CircuitBreaker<RuntimeException> breaker = new DefaultCircuitBreaker<RuntimeException>(10, 1000000000L, false);
+    final AtomicInteger attempts = new AtomicInteger();
+    final RetryPolicy policy = RetryPolicy.builder()
+        .maxAttempts(4)
+        .backoff(1, 5, TimeUnit.MILLISECONDS)
+        .jitter(RetryPolicy.Jitter.DECORRELATED)
+        .build();
+
+    assertThat(retry(failingTimes(2, attempts), breaker, policy), equalTo("ok"));
+    assertThat(attempts.get(), equalTo(3));
+  }
+
+  @Test public void testRetriesStopOnceBreakerOpens() throws Exception {
+    final CircuitBreaker<RuntimeException> breaker = new DefaultCircuitBreaker<RuntimeException>(2, 1000000000L, false);
+    final AtomicInteger attempts = new AtomicInteger();
+    final RetryPolicy policy = RetryPolicy.builder()
+        .maxAttempts(10)
+        .backoff(0, 0, TimeUnit.MILLISECONDS)
+        .build();
+
+    try {
+      retry(failingTimes(100, attempts), breaker, policy);
+      throw new AssertionError("call should have failed");
+    } catch (IllegalStateException expected){
+      assertThat(attempts.get(), equalTo(2));
+      assertThat(breaker.status(), equalTo(CircuitBreakerStatus.OPENED));
+    }
+  }
+
+  @Test public void testBudgetCapsRetries() throws Exception {
+    final RetryBudget budget = new RetryBudget(0.5, 1);
+    final RetryPolicy policy = RetryPolicy.builder()
+        .maxAttempts(5)
+        .backoff(0, 0, TimeUnit.MILLISECONDS)
+        .budget(budget)
+        .build();
+
+    final AtomicInteger attempts = new AtomicInteger();
+    try {
+      retry(failingTimes(100, attempts), new DefaultCircuitBreaker<RuntimeException>(100, 1000000000L, false), policy);
+      throw new AssertionError("call should have failed");
+    } catch (IllegalStateException expected){
+      // a full bucket holds one retry; the call's own deposit is half of another.
+      assertThat(attempts.get(), equalTo(2));
+      assertThat(budget.getAvailableRetries(), equalTo(0L));
+    }
+  }
+
+  @Test public void testAsyncCallIsRetriedOnSharedScheduler() throws Exception {
+    final CircuitBreaker<RuntimeException> breaker = new DefaultCircuitBreaker<RuntimeException>(10, 1000000000L, false);
+    final AtomicInteger attempts = new AtomicInteger();
+    final RetryPolicy policy = RetryPolicy.builder()
+        .maxAttempts(3)
+        .backoff(1, 5, TimeUnit.MILLISECONDS)
+        .build();
+
+    final CompletableFuture<String> result = retryAsync(new Supplier<CompletionStage<String>>() {
+      @Override public CompletionStage<String> get() {
+        final CompletableFuture<String> attempt = new CompletableFuture<String>();
+        if(attempts.incrementAndGet() < 3){
+          attempt.completeExceptionally(new IllegalStateException("down"));
+        } else {
+          attempt.complete("ok");
+        }
+
+        return attempt;
+      }
+    }, breaker, policy);
+
+    assertThat(result.get(5, TimeUnit.SECONDS), equalTo("ok"));
+    assertThat(attempts.get(), equalTo(3));
+  }
+
+  // shared with DecoratorsTest.
+  static Callable<String> failingTimes(final int failures, final AtomicInteger attempts){
+    return new Callable<String>() {
+      @Override public String call() throws Exception {
+        if(attempts.incrementAndGet() <= failures) throw new IllegalStateException("down");
+        return "ok";
+      }
+    };
+  }
+}
@@ -0,0 +1,158 @@
+package edu.ucsc.cb;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * ...
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class SharedCircuitBreakerTest {
+  private Path path;
+
+  @Before public void setUp() throws Exception {
+    path = Files.createTempDirectory("cb").resolve("breakers.state");
+  }
+
+  @After public void tearDown() throws Exception {
+    Files.deleteIfExists(path);
+    Files.deleteIfExists(path.getParent());
+  }
+
+  @Test public void testFailuresAddUpAcrossMappings() throws Exception {
+    final CircuitBreakerConfig config = CircuitBreakerConfig.builder()
+        .failedCallThreshold(4)
+        .retryThreshold(60000000000L)
+        .build();
+
+    // each mapping stands for a process of its own.
+    final CircuitBreaker<RuntimeException> first  = new SharedCircuitBreaker<RuntimeException>(
+        SharedStateFile.open(path, 16), "quotes", config);
+    final CircuitBreaker<RuntimeException> second = new SharedCircuitBreaker<RuntimeException>(
+        SharedStateFile.open(path, 16), "quotes", config);
+    final CircuitBreaker<RuntimeException> other  = new SharedCircuitBreaker<RuntimeException>(
+        SharedStateFile.open(path, 16), "prices", config);
+
+    for(int idx = 0; idx < 2; idx++){
+      first.callStarted();
+      first.callFailed(new IllegalStateException("down"));
+      second.callStarted();
+      second.callFailed(new IllegalStateException("down"));
+    }
+
+    assertThat(first.status(), equalTo(CircuitBreakerStatus.OPENED));
+    assertThat(second.status(), equalTo(CircuitBreakerStatus.OPENED));
+    assertThat(other.status(), equalTo(CircuitBreakerStatus.CLOSED));
+
+    try {
+      second.callStarted();
+      throw new AssertionError("call should have been rejected");
+    } catch (CallNotPermittedException expected){
+      assertThat(second.getStatistics().getRejectedCalls(), equalTo(1L));
+    }
+
+    // a restarted process starts warm.
+    final SharedStateFile reopened = SharedStateFile.open(path, 1);
+    assertThat(reopened.getSlots(), equalTo(16));
+    assertThat(new SharedCircuitBreaker<RuntimeException>(reopened, "quotes", config).status(),
+        equalTo(CircuitBreakerStatus.OPENED));
+  }
+
+  @Test public void testHalfOpenedBreakerClosesOnSuccessfulProbe() throws Exception {
+    final ManualClock clock = new ManualClock();
+    final CircuitBreakerConfig config = CircuitBreakerConfig.builder()
+        .failedCallThreshold(1)
+        .retryThreshold(TimeUnit.MINUTES.toNanos(15))
+        .clock(clock)
+        .build();
+
+    final SharedCircuitBreaker<RuntimeException> breaker = new SharedCircuitBreaker<RuntimeException>(
+        SharedStateFile.open(path, 4), "quotes", config);
+
+    final long straggler = breaker.callPermitted();
+    breaker.callStarted();
+    breaker.callFailed(new IllegalStateException("down"));
+    assertThat(breaker.status(), equalTo(CircuitBreakerStatus.OPENED));
+
+    clock.advance(15, TimeUnit.MINUTES);
+    final long probe = breaker.callPermitted();
+    assertThat(breaker.status(), equalTo(CircuitBreakerStatus.HALF_OPENED));
+
+    // a call let thru before the breaker opened proves nothing about the recovery.
+    breaker.callSucceeded(straggler, 0L);
+    assertThat(breaker.status(), equalTo(CircuitBreakerStatus.HALF_OPENED));
+
+    breaker.callSucceeded(probe, 0L);
+    assertThat(breaker.status(), equalTo(CircuitBreakerStatus.CLOSED));
+    assertThat(breaker.getFailedCalls(), equalTo(0L));
+    assertThat(breaker.getStatistics().getTransitions(CircuitBreakerStatus.CLOSED), equalTo(1L));
+  }
+
+  @Test public void testPermitOfADeadProcessGoesStale() throws Exception {
+    final ManualClock clock = new ManualClock();
+    final CircuitBreakerConfig config = CircuitBreakerConfig.builder()
+        .failedCallThreshold(1)
+        .retryThreshold(TimeUnit.SECONDS.toNanos(1))
+        .clock(clock)
+        .build();
+
+    final SharedCircuitBreaker<RuntimeException> dead = new SharedCircuitBreaker<RuntimeException>(
+        SharedStateFile.open(path, 4), "quotes", config);
+    dead.callFailed(dead.callPermitted(), new IllegalStateException("down"), 0L);
+    clock.advance(2, TimeUnit.SECONDS);
+    final long lost = dead.callPermitted(); // its process dies before reporting the call.
+
+    // a restarted process sees the breaker HALF_OPENED, with no permit left.
+    final SharedCircuitBreaker<RuntimeException> restarted = new SharedCircuitBreaker<RuntimeException>(
+        SharedStateFile.open(path, 4), "quotes", config);
+    try {
+      restarted.callStarted();
+      throw new AssertionError("call should have been rejected");
+    } catch (CallNotPermittedException expected){
+      assertThat(restarted.status(), equalTo(CircuitBreakerStatus.HALF_OPENED));
+    }
+
+    clock.advance(2, TimeUnit.SECONDS);
+    final long probe = restarted.callPermitted();
+    assertThat(probe == lost, equalTo(false));
+
+    dead.callFailed(lost, new IllegalStateException("late"), 0L);
+    assertThat(restarted.status(), equalTo(CircuitBreakerStatus.HALF_OPENED));
+    restarted.callSucceeded(probe, 0L);
+    assertThat(restarted.status(), equalTo(CircuitBreakerStatus.CLOSED));
+  }
+
+  @Test public void testLongestRetryThresholdNeverRetries() throws Exception {
+    final ManualClock clock = new ManualClock();
+    final CircuitBreakerConfig config = CircuitBreakerConfig.builder()
+        .failedCallThreshold(1)
+        .retryThreshold(Long.MAX_VALUE)
+        .clock(clock)
+        .build();
+
+    final SharedCircuitBreaker<RuntimeException> breaker = new SharedCircuitBreaker<RuntimeException>(
+        SharedStateFile.open(path, 4), "quotes", config);
+    breaker.callFailed(breaker.callPermitted(), new IllegalStateException("down"), 0L);
+
+    clock.advance(365, TimeUnit.DAYS);
+    try {
+      breaker.callStarted();
+      throw new AssertionError("call should have been rejected");
+    } catch (CallNotPermittedException expected){
+      assertThat(breaker.status(), equalTo(CircuitBreakerStatus.OPENED));
+    }
+  }
+
+  @Test(expected = java.io.IOException.class)
+  public void testForeignFileIsRefused() throws Exception {
+    Files.write(path, new byte[128]);
+    SharedStateFile.open(path, 4);
+  }
+}
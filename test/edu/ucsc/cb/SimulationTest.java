@@ -0,0 +1,102 @@
+package edu.ucsc.cb;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import org.junit.Test;
+
+/**
+ * ...
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class SimulationTest {
+  @Test public void testManualClockSkipsRetryThreshold() throws Exception {
+    final ManualClock clock = new ManualClock();
+    final CircuitBreaker<RuntimeException> breaker = CircuitBreakers.newCircuitBreaker(
+        CircuitBreakerConfig.builder()
+            .failedCallThreshold(1)
+            .retryThreshold(TimeUnit.MINUTES.toNanos(15))
+            .clock(clock)
+            .build());
+
+    breaker.callStarted();
+    breaker.callFailed(new IllegalStateException("down"));
+
+    clock.advance(14, TimeUnit.MINUTES);
+    try {
+      breaker.callStarted();
+      throw new AssertionError("call should have been rejected");
+    } catch (CallNotPermittedException expected){
+      assertThat(breaker.status(), equalTo(CircuitBreakerStatus.OPENED));
+    }
+
+    clock.advance(1, TimeUnit.MINUTES);
+    breaker.callStarted();
+    breaker.callSucceeded();
+    assertThat(breaker.status(), equalTo(CircuitBreakerStatus.CLOSED));
+    assertThat(breaker.getStatistics().getAvgRecoveryTime(), equalTo(TimeUnit.MINUTES.toNanos(15)));
+  }
+
+  @Test public void testSimulationReportsOutageCosts() throws Exception {
+    final SyntheticTrace trace = SyntheticTrace.builder()
+        .calls(1000000, 10000)
+        .errorRate(0.001)
+        .outage(20, 20, TimeUnit.SECONDS, 1.0)
+        .build();
+
+    final Simulation.Report report = Simulation.run(trace, new Function<Clock, CircuitBreaker<?>>() {
+      @Override public CircuitBreaker<?> apply(Clock clock) {
+        return CircuitBreakers.newCircuitBreaker(CircuitBreakerConfig.builder()
+            .failedCallThreshold(5)
+            .retryThreshold(TimeUnit.SECONDS.toNanos(1))
+            .clock(clock)
+            .build());
+      }
+    });
+
+    assertThat(report.getCalls(), equalTo(1000000L));
+    assertThat(report.getSimulatedTime(), greaterThan(TimeUnit.SECONDS.toNanos(99)));
+    // about 200k calls fail during the outage; the breaker turns most of them down.
+    assertThat(report.getRejectedCalls(), greaterThan(190000L));
+    assertThat(report.getLeakedFailures(), lessThan(report.getFailures() / 10));
+    assertThat(report.getAvgRecoveryTime(), greaterThan(TimeUnit.SECONDS.toNanos(20)));
+    assertThat(report.getAvgRecoveryTime(), lessThan(TimeUnit.SECONDS.toNanos(22)));
+  }
+
+  @Test public void testRecordedTraceIsReplayed() throws Exception {
+    final Simulation.Trace trace = Simulation.read(new StringReader(
+        "# start,latency,failed\n"
+        + "0,10,true\n"
+        + "5,10,false\n"
+        + "20,10,false\n"
+        + "1000000000,10,false\n"));
+
+    final Simulation.Report report = Simulation.run(trace, new Function<Clock, CircuitBreaker<?>>() {
+      @Override public CircuitBreaker<?> apply(Clock clock) {
+        return CircuitBreakers.newCircuitBreaker(CircuitBreakerConfig.builder()
+            .failedCallThreshold(1)
+            .retryThreshold(100)
+            .clock(clock)
+            .build());
+      }
+    });
+
+    // the first call fails at 10ns; the third is turned down; the last one is a probe.
+    assertThat(report.getCalls(), equalTo(4L));
+    assertThat(report.getLeakedFailures(), equalTo(1L));
+    assertThat(report.getRejectedCalls(), equalTo(1L));
+    assertThat(report.getWronglyRejectedCalls(), equalTo(1L));
+    assertThat(report.getAvgRecoveryTime(), equalTo(1000000000L - 10L + 10L));
+  }
+
+  @Test(expected = IOException.class)
+  public void testUnknownOutcomeIsMalformed() throws Exception {
+    Simulation.read(new StringReader("0,10,yes\n"));
+  }
+}
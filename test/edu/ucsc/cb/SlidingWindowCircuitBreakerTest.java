@@ -0,0 +1,72 @@
+package edu.ucsc.cb;
+
+import static edu.ucsc.cb.CircuitBreakers.newCountBasedCircuitBreaker;
+import static edu.ucsc.cb.CircuitBreakers.newTimeBasedCircuitBreaker;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import org.junit.Test;
+
+/**
+ * ...
+ *
+ * @author hsanchez@cs.ucsc.edu (Huascar A. Sanchez)
+ */
+public class SlidingWindowCircuitBreakerTest {
+  @Test public void testLowFailureRateKeepsBreakerClosed() throws Exception {
+    final CircuitBreaker<RuntimeException> breaker = newCountBasedCircuitBreaker(100, 10, 50.0f, Long.MAX_VALUE / 2, false);
+    for (int idx = 0; idx < 10000; idx++) { // one failure every 100 calls
+      breaker.callStarted();
+      if (idx % 100 == 0) {
+        breaker.callFailed(new IllegalStateException());
+      } else {
+        breaker.callSucceeded();
+      }
+    }
+
+    assertThat(breaker.status(), equalTo(CircuitBreakerStatus.CLOSED));
+  }
+
+  @Test public void testHighFailureRateOpensBreaker() throws Exception {
+    final CircuitBreaker<RuntimeException> breaker = newTimeBasedCircuitBreaker(10, 10, 50.0f, Long.MAX_VALUE / 2, false);
+    for (int idx = 0; idx < 9; idx++) { // below the minimum number of calls
+      breaker.callStarted();
+      breaker.callFailed(new IllegalStateException());
+    }
+
+    assertThat(breaker.status(), equalTo(CircuitBreakerStatus.CLOSED));
+
+    breaker.callStarted();
+    breaker.callFailed(new IllegalStateException());
+
+    assertThat(breaker.status(), equalTo(CircuitBreakerStatus.OPENED));
+  }
+
+  @Test public void testCountBasedWindowForgetsOldestOutcomes() throws Exception {
+    final CountBasedSlidingWindow window = new CountBasedSlidingWindow(4);
+    window.record(true);
+    window.record(true);
+    for (int idx = 0; idx < 3; idx++) {
+      window.record(false);
+    }
+
+    assertThat(SlidingWindow.calls(window.snapshot()), equalTo(4));
+    assertThat(SlidingWindow.failures(window.snapshot()), equalTo(1));
+
+    window.reset();
+
+    assertThat(window.snapshot(), equalTo(0L));
+  }
+
+  @Test public void testBatchesAreRecordedAtOnce() throws Exception {
+    final CountBasedSlidingWindow window = new CountBasedSlidingWindow(4);
+    window.record(3, 3); // only the last four outcomes fit.
+    assertThat(SlidingWindow.calls(window.snapshot()), equalTo(4));
+    assertThat(SlidingWindow.failures(window.snapshot()), equalTo(3));
+
+    final CircuitBreaker<RuntimeException> breaker = newTimeBasedCircuitBreaker(10, 10, 50.0f, Long.MAX_VALUE / 2, false);
+    breaker.callsCompleted(6, 4, new IllegalStateException());
+    assertThat(breaker.status(), equalTo(CircuitBreakerStatus.CLOSED));
+    breaker.callsCompleted(0, 2, new IllegalStateException());
+    assertThat(breaker.status(), equalTo(CircuitBreakerStatus.OPENED));
+  }
+}